@@ -0,0 +1,114 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GUI -> TcpServer 명령 병합 단계 (spring-app의 CommandCoalescer와 같은 규칙).
+ * - 도어/인증 명령은 즉시 전송
+ * - RGB_SET은 창(window)마다 최신 값 하나만 전송
+ * - LED_ON, LED_ON 같은 반복 명령은 dedupe 창 안에서 무시
+ */
+public class CommandCoalescer {
+
+    private static final long WINDOW_MS = 50;
+    private static final long DEDUPE_MS = 1000;
+    private static final Set<String> SAFETY = Set.of("UNLOCK", "LOCK", "REQ_FACE_UNLOCK", "PROMPT_AUTH", "REGISTER_FACE");
+    private static final Map<String, String> STATE_GROUPS = Map.of(
+            "LED_ON", "LED", "LED_OFF", "LED",
+            "FAN_ON", "FAN", "FAN_OFF", "FAN",
+            "RGB_ON", "RGB", "RGB_OFF", "RGB",
+            "LIGHT_SLEEP", "LIGHT", "LIGHT_WARM", "LIGHT");
+
+    private final TcpServer server;
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "command-coalescer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public CommandCoalescer(TcpServer server) {
+        this.server = server;
+    }
+
+    public void submit(String cmd) {
+        String kind = kindOf(cmd);
+        if (SAFETY.contains(kind)) {
+            server.sendCommand(cmd);
+        } else if (kind.equals("RGB_SET")) {
+            latestWins(slot(kind), cmd);
+        } else if (STATE_GROUPS.containsKey(kind)) {
+            dedupe(slot(STATE_GROUPS.get(kind)), cmd);
+        } else {
+            server.sendCommand(cmd);
+        }
+    }
+
+    // 병합되거나 무시된 명령 수
+    public long getCoalesced() { return coalesced.get(); }
+    public long getSuppressed() { return suppressed.get(); }
+
+    private Slot slot(String key) {
+        return slots.computeIfAbsent(key, k -> new Slot());
+    }
+
+    private void latestWins(Slot slot, String cmd) {
+        synchronized (slot) {
+            if (slot.windowOpen) {
+                if (slot.pending != null) coalesced.incrementAndGet();
+                slot.pending = cmd;
+                return;
+            }
+            slot.windowOpen = true;
+        }
+        server.sendCommand(cmd);
+        timer.schedule(() -> closeWindow(slot), WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void closeWindow(Slot slot) {
+        String next;
+        synchronized (slot) {
+            next = slot.pending;
+            slot.pending = null;
+            if (next == null) {
+                slot.windowOpen = false;
+                return;
+            }
+        }
+        server.sendCommand(next);
+        timer.schedule(() -> closeWindow(slot), WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void dedupe(Slot slot, String cmd) {
+        long now = System.currentTimeMillis();
+        synchronized (slot) {
+            if (cmd.equals(slot.lastSent) && now - slot.lastSentAt < DEDUPE_MS) {
+                suppressed.incrementAndGet();
+                return;
+            }
+            slot.lastSent = cmd;
+            slot.lastSentAt = now;
+        }
+        server.sendCommand(cmd);
+    }
+
+    private static String kindOf(String cmd) {
+        String trimmed = cmd.trim();
+        int space = trimmed.indexOf(' ');
+        return (space < 0 ? trimmed : trimmed.substring(0, space)).toUpperCase(Locale.ROOT);
+    }
+
+    private static class Slot {
+        boolean windowOpen;
+        String pending;
+        String lastSent;
+        long lastSentAt;
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * GUI 화면에 보여줄 최신 값 모음 (뷰 모델).
+ * - 수신 스레드는 set*()으로 최신 값만 덮어쓰고 바로 반환 (락/EDT 작업 없음)
+ * - EDT의 Swing Timer가 프레임마다 take*()로 바뀐 값만 가져가 라벨에 반영
+ * - 화면에 반영되기 전에 덮어쓰인 값은 병합(coalesced)으로 센다
+ * - 추이 차트용 값은 병합하지 않고 채널별 SampleRing에 모두 쌓음
+ */
+public class DashboardModel {
+
+    public static final int CHART_POINTS = 4096;
+
+    public final SampleRing gasTrend = new SampleRing(CHART_POINTS);
+    public final SampleRing humiTrend = new SampleRing(CHART_POINTS);
+    public final SampleRing dustTrend = new SampleRing(CHART_POINTS);
+    public final SampleRing pirTrend = new SampleRing(CHART_POINTS);
+
+    private final AtomicReference<SensorReading> sensor = new AtomicReference<>();
+    private final AtomicReference<String> door = new AtomicReference<>();
+    private final AtomicReference<String> led = new AtomicReference<>();
+    // 프레임 사이에 UNLOCKED가 지나가도 잠금 해제 사실은 놓치지 않도록 따로 기록
+    private volatile boolean unlockedSeen;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+
+    /** 센서 수신 스레드 하나에서만 호출 (SampleRing은 단일 writer) */
+    public void setSensor(SensorReading reading) {
+        if (reading.has(SensorReading.GAS)) gasTrend.add(reading.getGas());
+        if (reading.has(SensorReading.HUMI)) humiTrend.add(reading.getHumi());
+        if (reading.has(SensorReading.PM10)) dustTrend.add(reading.getPm10());
+        if (reading.has(SensorReading.PIR)) pirTrend.add(reading.getPir());
+        offer(sensor, reading);
+    }
+
+    public void setDoor(String normalized) {
+        if (normalized.equals("UNLOCKED")) unlockedSeen = true;
+        offer(door, normalized);
+    }
+
+    public void setLed(String status) {
+        offer(led, status);
+    }
+
+    private <T> void offer(AtomicReference<T> slot, T value) {
+        received.incrementAndGet();
+        if (slot.getAndSet(value) != null) coalesced.incrementAndGet();
+    }
+
+    /** 지난 프레임 이후 바뀐 값, 없으면 null (EDT 전용) */
+    public SensorReading takeSensor() {
+        return sensor.getAndSet(null);
+    }
+
+    public String takeDoor() {
+        return door.getAndSet(null);
+    }
+
+    public String takeLed() {
+        return led.getAndSet(null);
+    }
+
+    public boolean isUnlockedSeen() {
+        return unlockedSeen;
+    }
+
+    public void frameRendered() {
+        frames.incrementAndGet();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    /** 화면에 그려지기 전에 새 값으로 덮어쓰인 업데이트 수 */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getFrames() {
+        return frames.get();
+    }
+}
@@ -11,9 +11,10 @@ public class Main {
         TcpServer commandServer = new TcpServer(COMMAND_PORT);
         SensorTcpServer sensorServer = new SensorTcpServer(SENSOR_PORT);
         DoorlockServer doorlockServer = new DoorlockServer(DOOR_PORT);
+        VoiceChannel voice = new VoiceChannel("127.0.0.1", WHISPER_PORT);
 
         // 2) GUI 생성
-        SmartHomeGUI gui = new SmartHomeGUI(commandServer, sensorServer, doorlockServer);
+        SmartHomeGUI gui = new SmartHomeGUI(commandServer, sensorServer, doorlockServer, voice);
         gui.showWindow();
 
         // 3) 서버 실행
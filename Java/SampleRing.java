@@ -0,0 +1,44 @@
+/**
+ * 고정 크기 double[] 링 버퍼 (센서 추이 차트용).
+ * - 쓰는 스레드는 하나(센서 수신 스레드)라고 가정, add()는 배열 한 칸 + volatile 카운트 갱신뿐
+ * - 읽는 쪽(EDT)은 copyLatest()로 자기 배열에 복사해서 그림 -> 프레임마다 객체 생성 없음
+ */
+public class SampleRing {
+
+    private final double[] values;
+    private final int mask;
+    private volatile long count;
+
+    /** capacity는 2의 거듭제곱으로 올림 */
+    public SampleRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.values = new double[size];
+        this.mask = size - 1;
+    }
+
+    public void add(double value) {
+        long c = count;
+        values[(int) (c & mask)] = value;
+        count = c + 1;
+    }
+
+    /** 지금까지 넣은 값의 수 (새 값이 들어왔는지 확인용) */
+    public long count() {
+        return count;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    /** 최근 값을 오래된 것부터 into에 복사하고 개수를 반환 */
+    public int copyLatest(double[] into) {
+        long c = count;
+        int n = (int) Math.min(Math.min(c, values.length), into.length);
+        long start = c - n;
+        for (int i = 0; i < n; i++) {
+            into[i] = values[(int) ((start + i) & mask)];
+        }
+        return n;
+    }
+}
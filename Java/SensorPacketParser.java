@@ -0,0 +1,99 @@
+/**
+ * 키 기반 SENSOR 패킷 파서 (split/HashMap 없이 한 번에 읽는다).
+ * 예: SENSOR GAS=123 METHAN=1 TEMP=25.50 HUMI=36.70 PM1=7 PM25=5 PM10=8 PIR=0
+ * 필드 순서가 바뀌어도 되고, 모르는 키는 건너뛴다.
+ * spring-app의 com.smarthome.web.sensor.SensorPacketParser와 같은 알고리즘.
+ */
+public final class SensorPacketParser {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private SensorPacketParser() {
+    }
+
+    public static boolean parse(CharSequence line, SensorReading into) {
+        into.clear();
+        int end = line.length();
+        if (end < 6 || !regionEquals(line, 0, 6, "SENSOR")) return false;
+        int i = 6;
+
+        while (i < end) {
+            while (i < end && line.charAt(i) == ' ') i++;
+            int keyStart = i;
+            while (i < end && line.charAt(i) != '=' && line.charAt(i) != ' ') i++;
+            if (i >= end || line.charAt(i) != '=') continue;
+            int field = fieldOf(line, keyStart, i - keyStart);
+            i++;
+
+            boolean negative = false;
+            if (i < end && line.charAt(i) == '-') {
+                negative = true;
+                i++;
+            }
+            long mantissa = 0;
+            int scale = 0;
+            int digits = 0;
+            boolean fraction = false;
+            for (; i < end && line.charAt(i) != ' '; i++) {
+                char c = line.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        digits++;
+                        if (fraction) scale++;
+                    }
+                } else if (c == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    digits = 0;
+                    while (i < end && line.charAt(i) != ' ') i++;
+                    break;
+                }
+            }
+            if (field == 0 || digits == 0) continue;
+
+            double value = mantissa / POW10[scale];
+            if (negative) value = -value;
+            store(into, field, value);
+        }
+        return into.fieldMask != 0;
+    }
+
+    private static void store(SensorReading r, int field, double value) {
+        switch (field) {
+            case SensorReading.GAS: r.gas = (int) value; break;
+            case SensorReading.METHAN: r.methan = (int) value; break;
+            case SensorReading.TEMP: r.temp = value; break;
+            case SensorReading.HUMI: r.humi = value; break;
+            case SensorReading.PM1: r.pm1 = (int) value; break;
+            case SensorReading.PM25: r.pm25 = (int) value; break;
+            case SensorReading.PM10: r.pm10 = (int) value; break;
+            case SensorReading.PIR: r.pir = (int) value; break;
+            default: return;
+        }
+        r.fieldMask |= field;
+    }
+
+    private static int fieldOf(CharSequence s, int off, int len) {
+        if (regionEquals(s, off, len, "GAS")) return SensorReading.GAS;
+        if (regionEquals(s, off, len, "METHAN")) return SensorReading.METHAN;
+        if (regionEquals(s, off, len, "TEMP")) return SensorReading.TEMP;
+        if (regionEquals(s, off, len, "HUMI")) return SensorReading.HUMI;
+        if (regionEquals(s, off, len, "PM1")) return SensorReading.PM1;
+        if (regionEquals(s, off, len, "PM25")) return SensorReading.PM25;
+        if (regionEquals(s, off, len, "PM10")) return SensorReading.PM10;
+        if (regionEquals(s, off, len, "PIR")) return SensorReading.PIR;
+        return 0;
+    }
+
+    private static boolean regionEquals(CharSequence s, int off, int len, String key) {
+        if (len != key.length()) return false;
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(off + i) != key.charAt(i)) return false;
+        }
+        return true;
+    }
+}
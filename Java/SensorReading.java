@@ -0,0 +1,44 @@
+/**
+ * SENSOR 패킷 한 줄을 primitive 필드로 담는 값 객체.
+ * spring-app의 com.smarthome.web.sensor.SensorReading과 같은 구성.
+ */
+public class SensorReading {
+
+    public static final int GAS = 1;
+    public static final int METHAN = 1 << 1;
+    public static final int TEMP = 1 << 2;
+    public static final int HUMI = 1 << 3;
+    public static final int PM1 = 1 << 4;
+    public static final int PM25 = 1 << 5;
+    public static final int PM10 = 1 << 6;
+    public static final int PIR = 1 << 7;
+
+    int gas;
+    int methan;
+    double temp;
+    double humi;
+    int pm1;
+    int pm25;
+    int pm10;
+    int pir;
+    int fieldMask;
+
+    public int getGas() { return gas; }
+    public int getMethan() { return methan; }
+    public double getTemp() { return temp; }
+    public double getHumi() { return humi; }
+    public int getPm1() { return pm1; }
+    public int getPm25() { return pm25; }
+    public int getPm10() { return pm10; }
+    public int getPir() { return pir; }
+
+    public boolean has(int field) {
+        return (fieldMask & field) != 0;
+    }
+
+    public void clear() {
+        gas = methan = pm1 = pm25 = pm10 = pir = 0;
+        temp = humi = 0;
+        fieldMask = 0;
+    }
+}
@@ -17,7 +17,7 @@ public class SensorTcpServer {
 
     // GUI에 센서 값 전달을 위한 콜백
     public interface SensorListener {
-        void onSensorUpdate(String gas, String temp, String dust, int pir);
+        void onSensorUpdate(SensorReading reading);
     }
 
     public void addSensorListener(SensorListener listener) {
@@ -52,23 +52,17 @@ public class SensorTcpServer {
         }
     }
 
-    // SENSOR 메시지 파싱
+    // SENSOR 메시지 파싱 (키 기반, 필드 순서 무관)
     private void parseSensorPacket(String msg) {
-        try {
-            // 예: SENSOR GAS=123 METHAN=1 TEMP=25.50 HUMI=36.70 PM1=7 PM25=5 PM10=8 PIR=0
-            String[] p = msg.split(" ");
-
-            String gas  = p[1].split("=")[1];
-            String temp = p[3].split("=")[1];
-            String dust = p[7].split("=")[1];
-            int pir = Integer.parseInt(p[8].split("=")[1]);
-
-            if (sensorListener != null) {
-                sensorListener.onSensorUpdate(gas, temp, dust, pir);
-            }
+        // 예: SENSOR GAS=123 METHAN=1 TEMP=25.50 HUMI=36.70 PM1=7 PM25=5 PM10=8 PIR=0
+        SensorReading reading = new SensorReading();
+        if (!SensorPacketParser.parse(msg, reading)) {
+            System.out.println("[JAVA] 센서 파싱 오류: " + msg);
+            return;
+        }
 
-        } catch (Exception e) {
-            System.out.println("[JAVA] 센서 파싱 오류: " + e);
+        if (sensorListener != null) {
+            sensorListener.onSensorUpdate(reading);
         }
     }
 }
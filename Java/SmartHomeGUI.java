@@ -11,11 +11,23 @@ public class SmartHomeGUI {
     private final TcpServer commandServer;
     private final SensorTcpServer sensorServer;
     private final DoorlockServer doorlockServer;
-
-    private JLabel lblGas, lblTemp, lblDust, lblPir, lblDoorlock, lblLedStatus;
+    // 버튼/슬라이더 명령은 병합 단계를 거쳐 전송
+    private final CommandCoalescer commands;
+    // 음성 서버 상시 연결
+    private final VoiceChannel voice;
+
+    // 수신 스레드는 모델에 최신 값만 쓰고, 화면은 FRAME_MS마다 한 번 갱신
+    private final DashboardModel model = new DashboardModel();
+    private static final int FRAME_MS = 16;
+    private static final int CHART_HEIGHT = 36;
+
+    private JLabel lblGas, lblTemp, lblDust, lblPir, lblDoorlock, lblLedStatus, lblUpdateStats;
+    private final List<SparklineChart> charts = new ArrayList<>();
     private final AtomicBoolean voiceRecording = new AtomicBoolean(false);
     private final List<JComponent> gatedControls = new ArrayList<>();
-    private boolean unlockedOnce = false;
+    // EDT에서 바꾸고 센서 스레드(handlePirAuth)에서 읽음
+    private volatile boolean unlockedOnce = false;
+    private long shownReceived = -1;
     private long lastPirTriggerMs = 0L;
     private static final long PIR_COOLDOWN_MS = 5000;
 
@@ -27,10 +39,13 @@ public class SmartHomeGUI {
     private static final Color TOSS_BLUE = new Color(49, 130, 246);
     private static final Color TOSS_RED = new Color(255, 80, 80);
 
-    public SmartHomeGUI(TcpServer commandServer, SensorTcpServer sensorServer, DoorlockServer doorlockServer) {
+    public SmartHomeGUI(TcpServer commandServer, SensorTcpServer sensorServer, DoorlockServer doorlockServer,
+                        VoiceChannel voice) {
         this.commandServer = commandServer;
         this.sensorServer = sensorServer;
         this.doorlockServer = doorlockServer;
+        this.commands = new CommandCoalescer(commandServer);
+        this.voice = voice;
     }
 
     private void registerControl(JComponent component) {
@@ -69,14 +84,14 @@ public class SmartHomeGUI {
         sensorGrid.setBackground(BG_COLOR);
         sensorGrid.setAlignmentX(Component.LEFT_ALIGNMENT);
 
-        lblTemp = createSensorCard(sensorGrid, "온습도 센서", "HUMI: ---", "\uD83D\uDCA7");
-        lblGas = createSensorCard(sensorGrid, "가스 센서", "GAS: ---", "\uD83D\uDD25");
-        lblDust = createSensorCard(sensorGrid, "미세먼지", "DUST: ---", "\uD83D\uDCA8");
-        lblPir = createSensorCard(sensorGrid, "모션 감지", "PIR: ---", "\uD83C\uDFC3");
+        lblTemp = createSensorCard(sensorGrid, "온습도 센서", "HUMI: ---", "\uD83D\uDCA7", model.humiTrend, TOSS_BLUE);
+        lblGas = createSensorCard(sensorGrid, "가스 센서", "GAS: ---", "\uD83D\uDD25", model.gasTrend, TOSS_RED);
+        lblDust = createSensorCard(sensorGrid, "미세먼지", "DUST: ---", "\uD83D\uDCA8", model.dustTrend, TEXT_SECONDARY);
+        lblPir = createSensorCard(sensorGrid, "모션 감지", "PIR: ---", "\uD83C\uDFC3", model.pirTrend, TOSS_RED);
         lblDoorlock = createSensorCard(sensorGrid, "도어락", "DOOR: ---", "\uD83D\uDEAA");
         lblLedStatus = createSensorCard(sensorGrid, "조명 제어", "LED: OFF", "\uD83D\uDCA1");
 
-        sensorGrid.setMaximumSize(new Dimension(Integer.MAX_VALUE, 350));
+        sensorGrid.setMaximumSize(new Dimension(Integer.MAX_VALUE, 420));
         mainContent.add(sensorGrid);
         mainContent.add(Box.createVerticalStrut(30));
 
@@ -95,29 +110,29 @@ public class SmartHomeGUI {
         // 조명/가전 제어
         addButton(buttonPanel, "LED ON", TOSS_BLUE, e -> {
             updateLedStatus("LED: ON");
-            commandServer.sendCommand("LED_ON");
+            commands.submit("LED_ON");
         });
         addButton(buttonPanel, "LED OFF", new Color(200, 200, 200), e -> {
             updateLedStatus("LED: OFF");
-            commandServer.sendCommand("LED_OFF");
+            commands.submit("LED_OFF");
         });
-        addButton(buttonPanel, "FAN ON", TOSS_BLUE, e -> commandServer.sendCommand("FAN_ON"));
-        addButton(buttonPanel, "FAN OFF", new Color(200, 200, 200), e -> commandServer.sendCommand("FAN_OFF"));
-        addButton(buttonPanel, "SLEEP MODE", new Color(100, 100, 150), e -> commandServer.sendCommand("LIGHT_SLEEP"));
-        addButton(buttonPanel, "WARM MODE", new Color(255, 180, 50), e -> commandServer.sendCommand("LIGHT_WARM"));
+        addButton(buttonPanel, "FAN ON", TOSS_BLUE, e -> commands.submit("FAN_ON"));
+        addButton(buttonPanel, "FAN OFF", new Color(200, 200, 200), e -> commands.submit("FAN_OFF"));
+        addButton(buttonPanel, "SLEEP MODE", new Color(100, 100, 150), e -> commands.submit("LIGHT_SLEEP"));
+        addButton(buttonPanel, "WARM MODE", new Color(255, 180, 50), e -> commands.submit("LIGHT_WARM"));
         addButton(buttonPanel, "RGB ON", new Color(255, 100, 200), e -> {
             updateLedStatus("LED: RGB");
-            commandServer.sendCommand("RGB_ON");
+            commands.submit("RGB_ON");
         });
         addButton(buttonPanel, "RGB OFF", new Color(200, 200, 200), e -> {
             updateLedStatus("LED: OFF");
-            commandServer.sendCommand("RGB_OFF");
+            commands.submit("RGB_OFF");
         });
 
         // 잠금 상태에서도 접근 가능한 버튼
-        addButton(buttonPanel, "얼굴로 열기", new Color(0, 180, 0), e -> commandServer.sendCommand("REQ_FACE_UNLOCK"), false);
+        addButton(buttonPanel, "얼굴로 열기", new Color(0, 180, 0), e -> commands.submit("REQ_FACE_UNLOCK"), false);
         addButton(buttonPanel, "얼굴 등록", new Color(50, 50, 50), e -> {
-            commandServer.sendCommand("REGISTER_FACE");
+            commands.submit("REGISTER_FACE");
             JOptionPane.showMessageDialog(frame, "PC 카메라를 봐주세요.\n's' 키로 저장!");
         }, false);
 
@@ -128,27 +143,18 @@ public class SmartHomeGUI {
         // 음성 버튼
         ModernButton btnVoice = new ModernButton("\uD83C\uDFA4 음성 인식", TOSS_BLUE);
         btnVoice.addActionListener(e -> {
-            new Thread(() -> {
-                try {
-                    if (!voiceRecording.get()) {
-                        sendVoiceCommand("START_RECORDING");
-                        voiceRecording.set(true);
-                        SwingUtilities.invokeLater(() -> {
-                            btnVoice.setText("\u23F9 인식 중지");
-                            btnVoice.setBackgroundColor(TOSS_RED);
-                        });
-                    } else {
-                        sendVoiceCommand("STOP_RECORDING");
-                        voiceRecording.set(false);
-                        SwingUtilities.invokeLater(() -> {
-                            btnVoice.setText("\uD83C\uDFA4 음성 인식");
-                            btnVoice.setBackgroundColor(TOSS_BLUE);
-                        });
-                    }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                }
-            }).start();
+            // send()는 큐에 넣기만 하므로 EDT에서 바로 호출해도 됨
+            if (!voiceRecording.get()) {
+                voice.send("START_RECORDING");
+                voiceRecording.set(true);
+                btnVoice.setText("\u23F9 인식 중지");
+                btnVoice.setBackgroundColor(TOSS_RED);
+            } else {
+                voice.send("STOP_RECORDING");
+                voiceRecording.set(false);
+                btnVoice.setText("\uD83C\uDFA4 음성 인식");
+                btnVoice.setBackgroundColor(TOSS_BLUE);
+            }
         });
 
         JPanel voicePanel = new JPanel(new GridLayout(1, 1));
@@ -183,7 +189,7 @@ public class SmartHomeGUI {
         btnApply.setPreferredSize(new Dimension(100, 30));
         btnApply.addActionListener(e -> {
             updateLedStatus("LED: RGB");
-            commandServer.sendCommand("RGB_SET " + sR.getValue() + " " + sG.getValue() + " " + sB.getValue());
+            commands.submit("RGB_SET " + sR.getValue() + " " + sG.getValue() + " " + sB.getValue());
         });
         rgbPanel.add(Box.createVerticalStrut(10));
         rgbPanel.add(btnApply);
@@ -195,6 +201,14 @@ public class SmartHomeGUI {
         registerControl(btnApply);
 
         mainContent.add(rgbPanel);
+        mainContent.add(Box.createVerticalStrut(10));
+
+        // 화면 갱신 통계: 받은 업데이트 / 화면 반영 전에 병합된 업데이트
+        lblUpdateStats = new JLabel("업데이트 0 · 병합 0");
+        lblUpdateStats.setFont(new Font("맑은 고딕", Font.PLAIN, 11));
+        lblUpdateStats.setForeground(TEXT_SECONDARY);
+        lblUpdateStats.setAlignmentX(Component.LEFT_ALIGNMENT);
+        mainContent.add(lblUpdateStats);
 
         JScrollPane scrollPane = new JScrollPane(mainContent);
         scrollPane.setBorder(null);
@@ -202,6 +216,7 @@ public class SmartHomeGUI {
         frame.add(scrollPane, BorderLayout.CENTER);
 
         setupListeners();
+        new Timer(FRAME_MS, e -> render()).start();
         frame.setVisible(true);
     }
 
@@ -220,10 +235,16 @@ public class SmartHomeGUI {
     }
 
     private void updateLedStatus(String status) {
-        SwingUtilities.invokeLater(() -> lblLedStatus.setText(status));
+        model.setLed(status);
     }
 
     private JLabel createSensorCard(JPanel parent, String title, String initVal, String icon) {
+        return createSensorCard(parent, title, initVal, icon, null, null);
+    }
+
+    // trend가 있으면 카드 아래쪽에 추이 차트를 붙임
+    private JLabel createSensorCard(JPanel parent, String title, String initVal, String icon,
+                                    SampleRing trend, Color trendColor) {
         RoundPanel card = new RoundPanel();
         card.setLayout(new BorderLayout());
         card.setBackground(CARD_COLOR);
@@ -237,20 +258,19 @@ public class SmartHomeGUI {
         valueLbl.setHorizontalAlignment(SwingConstants.RIGHT);
         card.add(titleLbl, BorderLayout.NORTH);
         card.add(valueLbl, BorderLayout.CENTER);
+        if (trend != null) {
+            SparklineChart chart = new SparklineChart(trend, trendColor, CHART_HEIGHT);
+            charts.add(chart);
+            card.add(chart, BorderLayout.SOUTH);
+        }
         parent.add(card);
         return valueLbl;
     }
 
     private void setupListeners() {
-        sensorServer.addSensorListener((gas, temp, dust, pir) -> {
-            SwingUtilities.invokeLater(() -> {
-                lblGas.setText("GAS: " + gas);
-                lblTemp.setText("HUMI: " + temp + "%");
-                lblDust.setText("DUST: " + dust + " ug/m^3");
-                lblPir.setText("PIR: " + (pir == 1 ? "Motion" : "No Motion"));
-                lblPir.setForeground(pir == 1 ? TOSS_RED : TEXT_PRIMARY);
-            });
-            handlePirAuth(pir);
+        sensorServer.addSensorListener(reading -> {
+            model.setSensor(reading);
+            handlePirAuth(reading.getPir());
         });
 
         doorlockServer.addDoorlockListener(this::handleDoorEvent);
@@ -266,8 +286,8 @@ public class SmartHomeGUI {
         if (now - lastPirTriggerMs < PIR_COOLDOWN_MS) return;
         lastPirTriggerMs = now;
         // mimic Spring web flow: prompt auth + request face unlock
-        commandServer.sendCommand("PROMPT_AUTH");
-        commandServer.sendCommand("REQ_FACE_UNLOCK");
+        commands.submit("PROMPT_AUTH");
+        commands.submit("REQ_FACE_UNLOCK");
         System.out.println("[JAVA] PIR detected -> auth flow triggered");
     }
 
@@ -311,29 +331,53 @@ public class SmartHomeGUI {
     }
 
     private void handleDoorEvent(String event) {
-        String normalized = normalizeDoorEvent(event);
-        SwingUtilities.invokeLater(() -> {
-            lblDoorlock.setText("DOOR: " + normalized);
-            if (normalized.equals("UNLOCKED")) {
+        model.setDoor(normalizeDoorEvent(event));
+    }
+
+    // Swing Timer(EDT)에서 호출: 지난 프레임 이후 바뀐 라벨만 다시 그림
+    private void render() {
+        SensorReading reading = model.takeSensor();
+        if (reading != null) {
+            int pir = reading.getPir();
+            lblGas.setText("GAS: " + reading.getGas());
+            lblTemp.setText("HUMI: " + reading.getHumi() + "%");
+            lblDust.setText("DUST: " + reading.getPm10() + " ug/m^3");
+            lblPir.setText("PIR: " + (pir == 1 ? "Motion" : "No Motion"));
+            lblPir.setForeground(pir == 1 ? TOSS_RED : TEXT_PRIMARY);
+        }
+
+        String door = model.takeDoor();
+        if (door != null) {
+            lblDoorlock.setText("DOOR: " + door);
+            if (door.equals("UNLOCKED")) {
                 lblDoorlock.setForeground(TOSS_BLUE);
-                if (!unlockedOnce) {
-                    unlockedOnce = true;
-                    setControlsEnabled(true);
-                }
-            } else if (normalized.equals("LOCKED")) {
+            } else if (door.equals("LOCKED")) {
                 lblDoorlock.setForeground(TEXT_PRIMARY);
             } else {
                 lblDoorlock.setForeground(TOSS_RED);
             }
-        });
-    }
+        }
+        if (!unlockedOnce && model.isUnlockedSeen()) {
+            unlockedOnce = true;
+            setControlsEnabled(true);
+        }
 
-    private void sendVoiceCommand(String msg) throws Exception {
-        java.net.Socket s = new java.net.Socket("127.0.0.1", 40191);
-        java.io.PrintWriter out = new java.io.PrintWriter(s.getOutputStream(), true);
-        out.println(msg);
-        out.close();
-        s.close();
+        for (SparklineChart chart : charts) {
+            chart.refreshIfChanged();
+        }
+
+        String led = model.takeLed();
+        if (led != null) {
+            lblLedStatus.setText(led);
+        }
+
+        long received = model.getReceived();
+        if (received != shownReceived) {
+            shownReceived = received;
+            model.frameRendered();
+            lblUpdateStats.setText("업데이트 " + received + " · 병합 " + model.getCoalesced()
+                    + " · 프레임 " + model.getFrames());
+        }
     }
 
     static class RoundPanel extends JPanel {
@@ -0,0 +1,89 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * 센서 카드 하단의 추이(sparkline) 차트.
+ * - SampleRing의 최근 값을 미리 잡아둔 배열에 복사해서 그림 (차트 라이브러리 없음)
+ * - 점이 픽셀보다 많으면 픽셀 열마다 최소/최대 두 점으로 줄여 drawPolyline 한 번에 그림
+ * - 좌표 배열은 크기가 바뀔 때만 새로 만들고, 평소 프레임에는 객체를 만들지 않음
+ * - 안티앨리어싱/굵은 선은 촘촘한 선에서 40배쯤 느려서 1px 기본 선으로 그림
+ */
+public class SparklineChart extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+    private static final Stroke LINE = new BasicStroke(1f);
+
+    private final SampleRing ring;
+    private final Color color;
+    private final double[] samples;
+    private int[] xs = new int[0];
+    private int[] ys = new int[0];
+    private long paintedCount = -1;
+
+    public SparklineChart(SampleRing ring, Color color, int height) {
+        this.ring = ring;
+        this.color = color;
+        this.samples = new double[ring.capacity()];
+        setOpaque(false);
+        setPreferredSize(new Dimension(10, height));
+    }
+
+    /** 마지막으로 그린 뒤 새 값이 들어왔으면 다시 그리기 요청 (EDT) */
+    public void refreshIfChanged() {
+        if (ring.count() != paintedCount) repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        paintedCount = ring.count();
+        int n = ring.copyLatest(samples);
+        int w = getWidth();
+        int h = getHeight();
+        if (n < 2 || w < 2 || h < 2) return;
+
+        double min = samples[0];
+        double max = samples[0];
+        for (int i = 1; i < n; i++) {
+            double v = samples[i];
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+        double range = max - min;
+        if (range == 0) range = 1;
+
+        int columns = Math.min(w, n);
+        if (xs.length < columns * 2) {
+            xs = new int[columns * 2];
+            ys = new int[columns * 2];
+        }
+        int top = 2;
+        double scale = (h - 4) / range;
+        int points = 0;
+        for (int col = 0; col < columns; col++) {
+            int from = (int) ((long) col * n / columns);
+            int to = (int) ((long) (col + 1) * n / columns);
+            double lo = samples[from];
+            double hi = lo;
+            for (int i = from + 1; i < to; i++) {
+                double v = samples[i];
+                if (v < lo) lo = v;
+                if (v > hi) hi = v;
+            }
+            int x = columns == 1 ? 0 : col * (w - 1) / (columns - 1);
+            int yHi = top + (int) ((max - hi) * scale);
+            int yLo = top + (int) ((max - lo) * scale);
+            // 직전 점과 이어지도록 위아래 순서를 번갈아 둠
+            boolean up = (col & 1) == 0;
+            xs[points] = x;
+            ys[points++] = up ? yLo : yHi;
+            xs[points] = x;
+            ys[points++] = up ? yHi : yLo;
+        }
+
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2.setStroke(LINE);
+        g2.setColor(color);
+        g2.drawPolyline(xs, ys, points);
+    }
+}
@@ -7,16 +7,37 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Multi-client TCP command server (Spring replacement).
- * - Broadcasts incoming commands to other clients.
+ * - Forwards incoming commands to other clients.
  * - Notifies GUI via CommandListener.
+ * - Routing: a client may register with "HELLO <id> [ROOM=<room>] [CAPS=LED,FAN]".
+ *   "TO <target> <cmd>" addresses a device id, "room:<room>" or "*" (everyone).
+ *   Without a target, registered devices only get commands their CAPS cover;
+ *   unregistered clients get everything, as before.
  */
 public class TcpServer {
 
     private final int port;
     private final List<PrintWriter> clients = Collections.synchronizedList(new ArrayList<>());
+    private final Map<PrintWriter, Device> devices = new ConcurrentHashMap<>();
+
+    private static final Map<String, String> CAPABILITY_BY_KIND = Map.ofEntries(
+            Map.entry("LED_ON", "LED"), Map.entry("LED_OFF", "LED"),
+            Map.entry("FAN_ON", "FAN"), Map.entry("FAN_OFF", "FAN"),
+            Map.entry("RGB_SET", "RGB"), Map.entry("RGB_ON", "RGB"), Map.entry("RGB_OFF", "RGB"),
+            Map.entry("LIGHT_SLEEP", "LIGHT"), Map.entry("LIGHT_WARM", "LIGHT"),
+            Map.entry("UNLOCK", "DOOR"), Map.entry("LOCK", "DOOR"),
+            Map.entry("REQ_FACE_UNLOCK", "FACE"), Map.entry("REGISTER_FACE", "FACE"),
+            Map.entry("PROMPT_AUTH", "FACE"));
+
+    private record Device(String id, String room, Set<String> caps) {
+    }
     private CommandListener commandListener;
 
     public TcpServer(int port) {
@@ -61,26 +82,60 @@ public class TcpServer {
             while ((line = in.readLine()) != null) {
                 String cmd = line.trim();
                 if (cmd.isEmpty()) continue;
+                if (cmd.regionMatches(true, 0, "HELLO ", 0, 6)) {
+                    register(writer, cmd);
+                    continue;
+                }
+                String target = null;
+                if (cmd.regionMatches(true, 0, "TO ", 0, 3)) {
+                    String[] parts = cmd.split("\\s+", 3);
+                    if (parts.length < 3) continue;
+                    target = parts[1];
+                    cmd = parts[2];
+                }
                 System.out.println("[JAVA] Command received: " + cmd);
                 if (commandListener != null) {
                     commandListener.onCommand(cmd);
                 }
-                broadcast(cmd, writer);
+                route(target, cmd, writer);
             }
         } catch (IOException ignored) {
         } finally {
             clients.remove(writer);
+            devices.remove(writer);
             System.out.println("[JAVA] Command client disconnected");
             try { clientSocket.close(); } catch (Exception ignored) {}
         }
     }
 
-    // Broadcast to all clients (except sender when provided)
-    private void broadcast(String cmd, PrintWriter sender) {
+    private void register(PrintWriter writer, String hello) {
+        String[] parts = hello.split("\\s+");
+        if (parts.length < 2) return;
+        String room = null;
+        Set<String> caps = Set.of();
+        for (int i = 2; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            if (eq < 0) continue;
+            String key = parts[i].substring(0, eq).toUpperCase(Locale.ROOT);
+            String value = parts[i].substring(eq + 1);
+            if (key.equals("ROOM") && !value.isEmpty()) room = value.toLowerCase(Locale.ROOT);
+            else if (key.equals("CAPS")) caps = Set.of(value.toUpperCase(Locale.ROOT).split(","));
+        }
+        String id = parts[1];
+        devices.values().removeIf(d -> d.id().equals(id));
+        devices.put(writer, new Device(id, room, caps));
+        System.out.println("[JAVA] Device registered: " + id + (room != null ? " (" + room + ")" : ""));
+    }
+
+    // Deliver to the clients selected by target (except sender when provided)
+    private void route(String target, String cmd, PrintWriter sender) {
+        String kind = cmd.split(" ", 2)[0].toUpperCase(Locale.ROOT);
+        String capability = CAPABILITY_BY_KIND.get(kind);
         synchronized (clients) {
             for (PrintWriter out : new ArrayList<>(clients)) {
+                if (out == sender || !matches(devices.get(out), target, capability)) continue;
                 try {
-                    if (out != sender) out.println(cmd);
+                    out.println(cmd);
                 } catch (Exception e) {
                     clients.remove(out);
                 }
@@ -88,8 +143,24 @@ public class TcpServer {
         }
     }
 
-    // Send command originated from GUI to every client
+    private static boolean matches(Device device, String target, String capability) {
+        if (target == null) {
+            return device == null || capability == null || device.caps().isEmpty() || device.caps().contains(capability);
+        }
+        if (target.equals("*")) return true;
+        if (device == null) return false;
+        if (target.regionMatches(true, 0, "room:", 0, 5)) {
+            return target.substring(5).equalsIgnoreCase(device.room());
+        }
+        return target.equals(device.id());
+    }
+
+    // Send command originated from GUI; capability routing, or "*" for everyone
     public void sendCommand(String cmd) {
-        broadcast(cmd, null);
+        route(null, cmd, null);
+    }
+
+    public void sendCommand(String target, String cmd) {
+        route(target, cmd, null);
     }
 }
@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 음성 서버(Python, 40191)로 가는 상시 연결 (spring-app의 VoiceClient와 같은 방식).
+ * - send()는 큐에 넣기만 하고 바로 반환 (버튼 스레드가 소켓 연결을 기다리지 않음)
+ * - 끊기면 지수 백오프로 재연결, 그동안 최대 MAX_PENDING개 보관 (넘치면 오래된 것부터 버림)
+ * - 연결/전송 지연은 stats()로 확인
+ */
+public class VoiceChannel {
+
+    private static final int MAX_PENDING = 32;
+    private static final int CONNECT_TIMEOUT_MS = 1000;
+    private static final long BACKOFF_MIN_MS = 100;
+    private static final long BACKOFF_MAX_MS = 5000;
+    private static final long IDLE_CHECK_MS = 500;
+
+    private final InetSocketAddress address;
+    private final LinkedBlockingDeque<Pending> pending = new LinkedBlockingDeque<>(MAX_PENDING);
+    private final ByteBuffer probe = ByteBuffer.allocate(256);
+    private final Thread writer;
+    private volatile SocketChannel channel;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private volatile long lastConnectMicros;
+    private volatile long lastSendMicros;
+    private volatile long maxSendMicros;
+
+    public VoiceChannel(String host, int port) {
+        this.address = new InetSocketAddress(host, port);
+        this.writer = new Thread(this::run, "voice-channel");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void send(String msg) {
+        Pending p = new Pending(msg, System.nanoTime());
+        while (!pending.offerLast(p)) {
+            if (pending.pollFirst() != null) dropped.incrementAndGet();
+        }
+        // 재연결 대기 중이면 바로 다시 시도
+        if (channel == null) LockSupport.unpark(writer);
+    }
+
+    public boolean isConnected() {
+        return channel != null;
+    }
+
+    public String stats() {
+        return String.format("connected=%s sent=%d pending=%d dropped=%d reconnects=%d connect=%dus send=%dus (max %dus)",
+                isConnected(), sent.get(), pending.size(), dropped.get(), reconnects.get(),
+                lastConnectMicros, lastSendMicros, maxSendMicros);
+    }
+
+    private void run() {
+        long backoff = BACKOFF_MIN_MS;
+        boolean connectedBefore = false;
+        while (true) {
+            if (channel == null) {
+                if (!connect()) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(
+                            backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1)));
+                    backoff = Math.min(BACKOFF_MAX_MS, backoff * 2);
+                    continue;
+                }
+                if (connectedBefore) {
+                    reconnects.incrementAndGet();
+                    System.out.println("[JAVA] Voice channel reconnected");
+                }
+                connectedBefore = true;
+                backoff = BACKOFF_MIN_MS;
+            }
+            Pending next;
+            try {
+                next = pending.pollFirst(IDLE_CHECK_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!peerOpen()) {
+                disconnect();
+                requeue(next);
+                continue;
+            }
+            if (next == null) continue;
+            try {
+                write(next.msg);
+                long micros = (System.nanoTime() - next.queuedAt) / 1000;
+                lastSendMicros = micros;
+                if (micros > maxSendMicros) maxSendMicros = micros;
+                sent.incrementAndGet();
+            } catch (IOException e) {
+                disconnect();
+                requeue(next);
+            }
+        }
+    }
+
+    private boolean connect() {
+        long start = System.nanoTime();
+        SocketChannel ch = null;
+        try {
+            ch = SocketChannel.open();
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ch.socket().connect(address, CONNECT_TIMEOUT_MS);
+            ch.configureBlocking(false);
+            lastConnectMicros = (System.nanoTime() - start) / 1000;
+            channel = ch;
+            return true;
+        } catch (IOException e) {
+            if (ch != null) {
+                try { ch.close(); } catch (IOException ignored) {}
+            }
+            return false;
+        }
+    }
+
+    // 논블로킹 read가 -1이면 서버가 연결을 닫은 것 (Python 재시작 등)
+    private boolean peerOpen() {
+        try {
+            probe.clear();
+            return channel.read(probe) >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void write(String msg) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((msg + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            if (channel.write(line) == 0) Thread.onSpinWait();
+        }
+    }
+
+    private void requeue(Pending p) {
+        if (p != null && !pending.offerFirst(p)) dropped.incrementAndGet();
+    }
+
+    private void disconnect() {
+        SocketChannel ch = channel;
+        channel = null;
+        if (ch != null) {
+            try { ch.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private static final class Pending {
+        final String msg;
+        final long queuedAt;
+
+        Pending(String msg, long queuedAt) {
+            this.msg = msg;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
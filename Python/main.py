@@ -393,6 +393,24 @@ def listen_door_events():
                 pass
 threading.Thread(target=listen_door_events, daemon=True).start()
 
+def handle_voice_client(c):
+    # 연결 하나로 여러 줄을 받음 (Java/Spring은 연결을 유지하고, 예전 클라이언트는 한 줄 보내고 끊음)
+    buf = ""
+    try:
+        while True:
+            data = c.recv(1024)
+            if not data: break
+            buf += data.decode(errors="ignore")
+            while "\n" in buf:
+                line, buf = buf.split("\n", 1)
+                d = line.strip()
+                if d == "START_RECORDING": start_recording()
+                elif d == "STOP_RECORDING": stop_recording_and_process()
+        if buf.strip() == "START_RECORDING": start_recording()
+        elif buf.strip() == "STOP_RECORDING": stop_recording_and_process()
+    except: pass
+    finally: c.close()
+
 def listen_voice_server():
     s = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
     s.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
@@ -401,10 +419,8 @@ def listen_voice_server():
     while True:
         try:
             c, _ = s.accept()
-            d = c.recv(1024).decode().strip()
-            if d == "START_RECORDING": start_recording()
-            elif d == "STOP_RECORDING": stop_recording_and_process()
-            c.close()
+            c.setsockopt(socket.IPPROTO_TCP, socket.TCP_NODELAY, 1)
+            threading.Thread(target=handle_voice_client, args=(c,), daemon=True).start()
         except: pass
 threading.Thread(target=listen_voice_server, daemon=True).start()
 
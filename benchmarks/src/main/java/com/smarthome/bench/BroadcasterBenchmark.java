@@ -0,0 +1,68 @@
+package com.smarthome.bench;
+
+import com.smarthome.web.sensor.SensorPacketParser;
+import com.smarthome.web.sensor.SensorReading;
+import com.smarthome.web.ws.OverflowPolicy;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WebSocketBroadcaster#send(String, Object)}: one serialization plus a queue
+ * offer per session. Sessions discard what they are sent, so this measures the
+ * caller's cost rather than socket writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcasterBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int sessions;
+
+    private WebSocketBroadcaster broadcaster;
+    private Map<String, Object> frame;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        broadcaster = new WebSocketBroadcaster(256, OverflowPolicy.DROP_OLDEST, 5000, 4, new SimpleMeterRegistry());
+        for (int i = 0; i < sessions; i++) {
+            broadcaster.register(new NoopWebSocketSession("s" + i));
+        }
+        SensorReading reading = new SensorReading();
+        byte[] line = "SENSOR GAS=123 METHAN=1 TEMP=25.50 HUMI=36.70 PM1=7 PM25=5 PM10=8 PIR=0"
+                .getBytes(StandardCharsets.UTF_8);
+        SensorPacketParser.parse(line, 0, line.length, reading);
+        reading.setOrigin("127.0.0.1:50000", System.currentTimeMillis());
+        frame = Map.of("type", "sensor", "payload", reading);
+    }
+
+    @Benchmark
+    public void sendSensorFrame() {
+        broadcaster.send("sensor", frame);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broadcaster.shutdown();
+    }
+}
@@ -0,0 +1,143 @@
+package com.smarthome.bench;
+
+import com.smarthome.web.bus.EventBus;
+import com.smarthome.web.journal.EventJournal;
+import com.smarthome.web.shadow.DeviceShadow;
+import com.smarthome.web.tcp.CommandAckTracker;
+import com.smarthome.web.tcp.DeviceRegistry;
+import com.smarthome.web.tcp.TcpCommandServer;
+import com.smarthome.web.tcp.TcpConnection;
+import com.smarthome.web.tcp.TcpEventLoop;
+import com.smarthome.web.ws.OverflowPolicy;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwarding one command from a sender to every other client over loopback:
+ * the gateway's {@code TcpCommandServer.forwardToOthers} against the standalone
+ * GUI's {@code TcpServer.route}. Each operation ends when all clients have
+ * read the line. Both methods are private (and {@code TcpServer} lives in the
+ * default package), so they are reached through reflection once in setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandFanOutBenchmark {
+
+    private static final String COMMAND = "RGB_SET 255 128 0";
+
+    @Param({"1", "100", "1000"})
+    public int clients;
+
+    private TcpEventLoop eventLoop;
+    private CommandAckTracker ackTracker;
+    private WebSocketBroadcaster broadcaster;
+    private LoopbackClients gatewayClients;
+    private MethodHandle forwardToOthers;
+    private TcpCommandServer gateway;
+    private TcpConnection gatewaySender;
+
+    private LoopbackClients legacyClients;
+    private MethodHandle legacyRoute;
+    private Object legacy;
+    private PrintWriter legacySender;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        broadcaster = new WebSocketBroadcaster(256, OverflowPolicy.DROP_OLDEST, 5000, 4, registry);
+        eventLoop = new TcpEventLoop(1, registry);
+        ackTracker = new CommandAckTracker(broadcaster, 500, 2);
+        EventJournal journal = new EventJournal(false, "target/journal", 1 << 20, 1, 100, broadcaster, registry);
+        gateway = new TcpCommandServer(eventLoop, broadcaster, journal, new DeviceShadow(broadcaster), ackTracker,
+                new DeviceRegistry(), new EventBus(1024, registry), registry, 0);
+        int port = LoopbackClients.freePort();
+        eventLoop.bind(port, gateway);
+        gatewayClients = new LoopbackClients(port, clients + 1);
+        List<TcpConnection> connected = (List<TcpConnection>) field(TcpCommandServer.class, "clients").get(gateway);
+        LoopbackClients.await(() -> connected.size() == clients + 1);
+        gatewaySender = connected.get(0);
+        forwardToOthers = handle(TcpCommandServer.class, "forwardToOthers",
+                String.class, String.class, TcpConnection.class);
+
+        Class<?> tcpServer = Class.forName("TcpServer");
+        int legacyPort = LoopbackClients.freePort();
+        Constructor<?> constructor = tcpServer.getConstructor(int.class);
+        legacy = constructor.newInstance(legacyPort);
+        tcpServer.getMethod("start").invoke(legacy);
+        LoopbackClients.await(() -> {
+            try (java.net.Socket probe = new java.net.Socket("127.0.0.1", legacyPort)) {
+                return true;
+            } catch (java.io.IOException e) {
+                return false;
+            }
+        });
+        List<PrintWriter> writers = (List<PrintWriter>) field(tcpServer, "clients").get(legacy);
+        LoopbackClients.await(writers::isEmpty);
+        legacyClients = new LoopbackClients(legacyPort, clients + 1);
+        LoopbackClients.await(() -> writers.size() == clients + 1);
+        legacySender = writers.get(0);
+        legacyRoute = handle(tcpServer, "route", String.class, String.class, PrintWriter.class);
+    }
+
+    @Benchmark
+    public void gatewayForwardToOthers() throws Throwable {
+        long target = gatewayClients.lines() + clients;
+        forwardToOthers.invoke(gateway, (String) null, COMMAND, gatewaySender);
+        gatewayClients.awaitLines(target);
+    }
+
+    @Benchmark
+    public void legacyRoute() throws Throwable {
+        long target = legacyClients.lines() + clients;
+        legacyRoute.invoke(legacy, (String) null, COMMAND, legacySender);
+        legacyClients.awaitLines(target);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        gatewayClients.close();
+        legacyClients.close();
+        eventLoop.shutdown();
+        ackTracker.shutdown();
+        broadcaster.shutdown();
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    private static MethodHandle handle(Class<?> type, String name, Class<?>... params) throws Exception {
+        Method method = type.getDeclaredMethod(name, params);
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method);
+    }
+}
@@ -0,0 +1,65 @@
+package com.smarthome.bench;
+
+import com.smarthome.web.bus.EventBus;
+import com.smarthome.web.sensor.SensorPacketParser;
+import com.smarthome.web.sensor.SensorReading;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EventBus#publishSensor}: what the sensor I/O thread pays per reading now
+ * that journaling, fan-out and analytics run as bus stages. The stages here do
+ * nothing, so at full rate the producer also measures waiting on a full ring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBusBenchmark {
+
+    @Param({"1", "4"})
+    public int stages;
+
+    private EventBus bus;
+    private SensorReading reading;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bus = new EventBus(65536, new SimpleMeterRegistry());
+        for (int i = 0; i < stages; i++) {
+            bus.addStage("noop-" + i, (event, endOfBatch) -> { });
+        }
+        reading = new SensorReading();
+        byte[] line = "SENSOR GAS=123 METHAN=1 TEMP=25.50 HUMI=36.70 PM1=7 PM25=5 PM10=8 PIR=0"
+                .getBytes(StandardCharsets.UTF_8);
+        SensorPacketParser.parse(line, 0, line.length, reading);
+        reading.setOrigin("127.0.0.1:50000", System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public void publishSensor() {
+        bus.publishSensor(reading);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bus.shutdown();
+    }
+}
@@ -0,0 +1,190 @@
+package com.smarthome.bench;
+
+import com.smarthome.web.sensor.SensorPacketParser;
+import com.smarthome.web.sensor.SensorReading;
+import com.smarthome.web.ws.BinaryProtocol;
+import com.smarthome.web.ws.OverflowPolicy;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Bytes per {@code sensor} frame for a full-frame, a delta and a binary session,
+ * with and without per-message deflate. Boards random-walk like loadsim's and the frames are
+ * shaped like {@code SensorConflator}'s; the simulated clock runs {@code speedup}
+ * times faster than real time, and the keyframe interval is scaled to match.
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar com.smarthome.bench.FrameSizeReport [boards] [seconds] [speedup]
+ * </pre>
+ */
+public final class FrameSizeReport {
+
+    private static final int FLUSH_HZ = 10;
+    private static final long KEYFRAME_MS = 5000;
+
+    private FrameSizeReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int boards = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 120;
+        int speedup = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        Meter full = new Meter();
+        Meter delta = new Meter();
+        Meter binary = new Meter();
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster(1 << 16, OverflowPolicy.DROP_OLDEST,
+                KEYFRAME_MS / speedup, 4, new SimpleMeterRegistry());
+        broadcaster.register(new NoopWebSocketSession("full", null, full::accept), false);
+        broadcaster.register(new NoopWebSocketSession("delta", null, delta::accept), true);
+        broadcaster.register(new NoopWebSocketSession("binary", BinaryProtocol.SUBPROTOCOL, binary::accept), false);
+
+        Random random = new Random(42);
+        Board[] board = new Board[boards];
+        for (int i = 0; i < boards; i++) board[i] = new Board("10.0.0." + (i + 2) + ":" + (40000 + i), random);
+
+        // every board reports once a second, spread over the ticks of that second
+        int ticks = seconds * FLUSH_HZ;
+        long tickNanos = TimeUnit.SECONDS.toNanos(1) / FLUSH_HZ / speedup;
+        long sent = 0;
+        long started = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            long simulatedMs = tick * 1000L / FLUSH_HZ;
+            Map<String, SensorReading> sources = new LinkedHashMap<>();
+            SensorReading newest = null;
+            for (int i = tick % FLUSH_HZ; i < boards; i += FLUSH_HZ) {
+                newest = board[i].next(1_700_000_000_000L + simulatedMs + i);
+                sources.put(newest.getSource(), newest);
+            }
+            if (newest != null) {
+                Map<String, Object> frame = new LinkedHashMap<>();
+                frame.put("type", "sensor");
+                frame.put("payload", newest);
+                frame.put("sources", sources);
+                broadcaster.sendSensor(sources, newest, frame);
+                sent++;
+            }
+            TimeUnit.NANOSECONDS.sleep(started + (tick + 1) * tickNanos - System.nanoTime());
+        }
+        while (full.frames() < sent || delta.frames() < sent || binary.frames() < sent) {
+            Thread.sleep(10);
+        }
+        broadcaster.shutdown();
+
+        System.out.printf(Locale.ROOT, "# %d boards at 1 Hz, %d flushes/s, %d s simulated, keyframe every %d ms%n",
+                boards, FLUSH_HZ, seconds, KEYFRAME_MS);
+        System.out.printf(Locale.ROOT, "%-22s %8s %12s %12s %8s%n", "mode", "frames", "payload B", "wire B", "vs full");
+        double base = full.wire(false);
+        row("full", full.frames(), full.perFrame(full.raw, full.frames()), full.wire(false), base);
+        row("full + deflate", full.frames(), full.perFrame(full.deflated, full.frames()), full.wire(true), base);
+        row("delta", delta.frames(), delta.perFrame(delta.raw, delta.frames()), delta.wire(false), base);
+        row("delta + deflate", delta.frames(), delta.perFrame(delta.deflated, delta.frames()), delta.wire(true), base);
+        row("binary", binary.frames(), binary.perFrame(binary.raw, binary.frames()), binary.wire(false), base);
+        row("binary + deflate", binary.frames(), binary.perFrame(binary.deflated, binary.frames()),
+                binary.wire(true), base);
+    }
+
+    private static void row(String mode, long frames, double payload, double wire, double base) {
+        System.out.printf(Locale.ROOT, "%-22s %8d %12.1f %12.1f %7.1fx%n", mode, frames, payload, wire,
+                base / wire);
+    }
+
+    /** Sizes of what one session was sent, raw and as permessage-deflate would carry it. */
+    private static final class Meter {
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final byte[] out = new byte[64 * 1024];
+        long frames;
+        long raw;
+        long deflated;
+        long rawHeaders;
+        long deflatedHeaders;
+
+        synchronized void accept(WebSocketMessage<?> message) {
+            byte[] payload;
+            if (message instanceof BinaryMessage bin) {
+                ByteBuffer buffer = bin.getPayload().duplicate();
+                payload = new byte[buffer.remaining()];
+                buffer.get(payload);
+            } else {
+                payload = message.getPayload().toString().getBytes(StandardCharsets.UTF_8);
+            }
+            // one compression context for the session, flushed per message, without the 00 00 ff ff tail
+            deflater.setInput(payload);
+            int n = 0;
+            do {
+                n += deflater.deflate(out, n, out.length - n, Deflater.SYNC_FLUSH);
+            } while (n == out.length);
+            int compressed = n - 4;
+            frames++;
+            raw += payload.length;
+            deflated += compressed;
+            rawHeaders += header(payload.length);
+            deflatedHeaders += header(compressed);
+        }
+
+        synchronized long frames() {
+            return frames;
+        }
+
+        synchronized double perFrame(long bytes, long count) {
+            return count == 0 ? 0 : (double) bytes / count;
+        }
+
+        synchronized double wire(boolean compressed) {
+            return perFrame(compressed ? deflated + deflatedHeaders : raw + rawHeaders, frames);
+        }
+
+        /** Unmasked server-to-client frame header. */
+        private static int header(int length) {
+            return length < 126 ? 2 : length < 65536 ? 4 : 10;
+        }
+    }
+
+    /** Random walk over the ranges loadsim's boards use. */
+    private static final class Board {
+
+        private final String address;
+        private final Random random;
+        private double gas = 120;
+        private double temp = 24;
+        private double humi = 45;
+        private double pm10 = 20;
+
+        Board(String address, Random random) {
+            this.address = address;
+            this.random = random;
+        }
+
+        SensorReading next(long ts) {
+            gas = clamp(gas + random.nextGaussian() * 3, 50, 400);
+            temp = clamp(temp + random.nextGaussian() * 0.05, 15, 35);
+            humi = clamp(humi + random.nextGaussian() * 0.2, 20, 80);
+            pm10 = clamp(pm10 + random.nextGaussian(), 0, 150);
+            int g = (int) gas;
+            int pm25 = (int) (pm10 * 0.7);
+            byte[] line = String.format(Locale.ROOT,
+                    "SENSOR GAS=%d METHAN=%d TEMP=%.2f HUMI=%.2f PM1=%d PM25=%d PM10=%d PIR=%d",
+                    g, g / 100, temp, humi, pm25 / 2, pm25, (int) pm10, random.nextInt(10) == 0 ? 1 : 0)
+                    .getBytes(StandardCharsets.UTF_8);
+            SensorReading reading = new SensorReading();
+            SensorPacketParser.parse(line, 0, line.length, reading);
+            reading.setOrigin(address, ts);
+            return reading;
+        }
+
+        private static double clamp(double v, double min, double max) {
+            return Math.max(min, Math.min(max, v));
+        }
+    }
+}
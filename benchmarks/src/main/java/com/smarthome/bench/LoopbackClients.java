@@ -0,0 +1,97 @@
+package com.smarthome.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * N loopback client sockets drained by one selector thread, which counts the
+ * lines it receives. Fan-out benchmarks wait on that count so every operation
+ * covers delivery to all clients, not just queueing.
+ */
+final class LoopbackClients implements AutoCloseable {
+
+    private final List<SocketChannel> channels = new ArrayList<>();
+    private final Selector selector;
+    private final AtomicLong lines = new AtomicLong();
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+    LoopbackClients(int port, int count) throws IOException {
+        selector = Selector.open();
+        for (int i = 0; i < count; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            channels.add(channel);
+        }
+        drainer = new Thread(this::drain, "bench-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    long lines() {
+        return lines.get();
+    }
+
+    void awaitLines(long target) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (lines.get() < target) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("lines were not delivered");
+            Thread.onSpinWait();
+        }
+    }
+
+    private void drain() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (running) {
+                if (selector.select(100) == 0) continue;
+                for (SelectionKey key : selector.selectedKeys()) {
+                    buffer.clear();
+                    int n = ((SocketChannel) key.channel()).read(buffer);
+                    if (n < 0) {
+                        key.cancel();
+                        continue;
+                    }
+                    int newlines = 0;
+                    for (int i = 0; i < n; i++) {
+                        if (buffer.get(i) == '\n') newlines++;
+                    }
+                    if (newlines > 0) lines.addAndGet(newlines);
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        running = false;
+        drainer.join(1000);
+        for (SocketChannel channel : channels) channel.close();
+        selector.close();
+    }
+
+    static int freePort() throws IOException {
+        try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static void await(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) throw new IllegalStateException("clients did not connect");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.smarthome.bench;
+
+import com.smarthome.web.sensor.SensorPacketParser;
+import com.smarthome.web.sensor.SensorReading;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key-based {@link SensorPacketParser} against the split-based parser it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorPacketParserBenchmark {
+
+    private final String line = "SENSOR GAS=123 METHAN=1 TEMP=25.50 HUMI=36.70 PM1=7 PM25=5 PM10=8 PIR=0";
+    private final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+    private final SensorReading reading = new SensorReading();
+
+    @Benchmark
+    public SensorReading keyBased() {
+        SensorPacketParser.parse(bytes, 0, bytes.length, reading);
+        return reading;
+    }
+
+    @Benchmark
+    public Map<String, Object> legacySplit() {
+        String msg = new String(bytes, 0, bytes.length, StandardCharsets.UTF_8);
+        Map<String, Object> map = new HashMap<>();
+        String[] parts = msg.split(" ");
+        map.put("gas", parts[1].split("=")[1]);
+        map.put("temp", parts[3].split("=")[1]);
+        map.put("dust", parts[7].split("=")[1]);
+        map.put("pir", Integer.parseInt(parts[8].split("=")[1]));
+        return map;
+    }
+}
@@ -0,0 +1,137 @@
+package com.smarthome.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarthome.web.sensor.SensorPacketParser;
+import com.smarthome.web.sensor.SensorReading;
+import com.smarthome.web.ws.BinaryProtocol;
+import com.smarthome.web.ws.FramePool;
+import com.smarthome.web.ws.PooledFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON text frames against {@link BinaryProtocol} frames: encoding a {@code sensor}
+ * frame of {@code sources} readings the way the broadcaster does, decoding it the
+ * way a dashboard would, and decoding a client {@code command} the way
+ * {@code ControlWebSocketHandler} does. Frame sizes go to stdout at setup;
+ * {@code FrameSizeReport} has them over a whole stream, with deflate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"1", "10"})
+    public int sources;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final FramePool pool = new FramePool(4096, 16);
+    private final SensorReading decoded = new SensorReading();
+    private Map<String, SensorReading> bySource;
+    private SensorReading newest;
+    private Map<String, Object> frame;
+    private String sensorJson;
+    private ByteBuffer sensorBinary;
+    private final String commandJson = "{\"type\":\"command\",\"command\":\"LED_ON\",\"target\":\"room:living\"}";
+    private final ByteBuffer commandBinary = BinaryProtocol.command("room:living", "LED_ON");
+
+    @Setup
+    public void setUp() throws Exception {
+        bySource = new LinkedHashMap<>();
+        for (int i = 0; i < sources; i++) {
+            byte[] line = ("SENSOR GAS=" + (120 + i) + " METHAN=1 TEMP=25.50 HUMI=36.70 PM1=7 PM25=5 PM10=8 PIR=0")
+                    .getBytes(StandardCharsets.UTF_8);
+            SensorReading reading = new SensorReading();
+            SensorPacketParser.parse(line, 0, line.length, reading);
+            reading.setOrigin("192.168.0." + (10 + i) + ":5" + (1000 + i), 1_700_000_000_000L + i);
+            bySource.put(reading.getSource(), reading);
+            newest = reading;
+        }
+        frame = new LinkedHashMap<>();
+        frame.put("type", "sensor");
+        frame.put("payload", newest);
+        frame.put("sources", bySource);
+        sensorJson = mapper.writeValueAsString(frame);
+        PooledFrame binary = BinaryProtocol.sensor(pool, bySource, newest);
+        sensorBinary = ByteBuffer.allocate(binary.length()).put(binary.payload());
+        sensorBinary.flip();
+        binary.release();
+        System.out.printf("%nsensor frame, %d readings: json %d B, binary %d B; command: json %d B, binary %d B%n",
+                sources, sensorJson.getBytes(StandardCharsets.UTF_8).length, sensorBinary.remaining(),
+                commandJson.length(), commandBinary.remaining());
+    }
+
+    @Benchmark
+    public byte[] encodeSensorJson() throws Exception {
+        // the container encodes the String to UTF-8 when it writes the text frame
+        return mapper.writeValueAsString(frame).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int encodeSensorBinary() {
+        PooledFrame binary = BinaryProtocol.sensor(pool, bySource, newest);
+        int length = binary.length();
+        binary.release();
+        return length;
+    }
+
+    @Benchmark
+    public void decodeSensorJson(Blackhole bh) throws Exception {
+        JsonNode root = mapper.readTree(sensorJson);
+        for (JsonNode reading : root.path("sources")) {
+            bh.consume(reading.path("gas").asInt());
+            bh.consume(reading.path("temp").asDouble());
+            bh.consume(reading.path("pm10").asInt());
+            bh.consume(reading.path("pir").asInt());
+            bh.consume(reading.path("source").asText());
+        }
+    }
+
+    @Benchmark
+    public void decodeSensorBinary(Blackhole bh) {
+        ByteBuffer in = sensorBinary.duplicate();
+        in.get();
+        int n = in.getShort() & 0xFFFF;
+        for (int i = 0; i < n; i++) {
+            BinaryProtocol.readReading(in, decoded);
+            bh.consume(decoded.getGas());
+            bh.consume(decoded.getTemp());
+            bh.consume(decoded.getPm10());
+            bh.consume(decoded.getPir());
+            bh.consume(decoded.getSource());
+        }
+    }
+
+    @Benchmark
+    public void decodeCommandJson(Blackhole bh) throws Exception {
+        JsonNode root = mapper.readTree(commandJson);
+        bh.consume(root.path("type").asText(""));
+        bh.consume(root.hasNonNull("target") ? root.get("target").asText() : null);
+        bh.consume(root.path("command").asText(""));
+    }
+
+    @Benchmark
+    public BinaryProtocol.Command decodeCommandBinary() {
+        return BinaryProtocol.readCommand(commandBinary.duplicate());
+    }
+}
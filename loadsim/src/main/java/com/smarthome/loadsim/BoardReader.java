@@ -0,0 +1,56 @@
+package com.smarthome.loadsim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+/** Reads every board's command connection on one selector thread. */
+final class BoardReader implements Runnable {
+
+    private final Selector selector;
+    private volatile boolean running = true;
+
+    BoardReader(List<SimulatedBoard> boards) throws IOException {
+        this.selector = Selector.open();
+        for (SimulatedBoard board : boards) {
+            board.commandChannel().register(selector, SelectionKey.OP_READ, board);
+        }
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try {
+            while (running) {
+                if (selector.select(100) == 0) continue;
+                for (SelectionKey key : selector.selectedKeys()) {
+                    buffer.clear();
+                    int n;
+                    try {
+                        n = ((SocketChannel) key.channel()).read(buffer);
+                    } catch (IOException e) {
+                        n = -1;
+                    }
+                    if (n < 0) {
+                        key.cancel();
+                        continue;
+                    }
+                    buffer.flip();
+                    ((SimulatedBoard) key.attachment()).onCommandBytes(buffer);
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            try { selector.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,116 @@
+package com.smarthome.loadsim;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One dashboard tab on {@code /ws}. Frames are classified with plain string
+ * scanning, which is enough for the gateway's compact Jackson output.
+ */
+final class DashboardClient implements WebSocket.Listener {
+
+    private static final String[] COMMANDS = {"LED_ON", "LED_OFF", "FAN_ON", "FAN_OFF"};
+
+    private final SimStats stats;
+    private final StringBuilder partial = new StringBuilder();
+    private WebSocket socket;
+
+    DashboardClient(SimStats stats) {
+        this.stats = stats;
+    }
+
+    void connect(HttpClient client, URI uri) {
+        socket = client.newWebSocketBuilder()
+                .connectTimeout(java.time.Duration.ofSeconds(5))
+                .buildAsync(uri, this)
+                .orTimeout(10, TimeUnit.SECONDS)
+                .join();
+    }
+
+    void sendCommand() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        String json = r.nextInt(3) == 0
+                ? "{\"type\":\"rgb\",\"r\":" + r.nextInt(256) + ",\"g\":" + r.nextInt(256) + ",\"b\":" + r.nextInt(256) + "}"
+                : "{\"type\":\"command\",\"command\":\"" + COMMANDS[r.nextInt(COMMANDS.length)] + "\"}";
+        synchronized (this) {
+            // the WebSocket API allows one outstanding send at a time
+            socket.sendText(json, true).join();
+        }
+        stats.webCommandsSent.incrementAndGet();
+    }
+
+    void close() {
+        if (socket != null) socket.abort();
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            onFrame(partial.toString());
+            partial.setLength(0);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        stats.dashboardsClosed.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        stats.dashboardsClosed.incrementAndGet();
+    }
+
+    private void onFrame(String json) {
+        stats.framesAtDashboards.incrementAndGet();
+        String type = stringField(json, "type");
+        if (type == null) return;
+        switch (type) {
+            case "from_python" -> {
+                long age = Probe.ageMicros(json, -1);
+                if (age >= 0) {
+                    stats.probesAtDashboards.incrementAndGet();
+                    stats.boardToDashboard.record(age);
+                }
+            }
+            case "sensor" -> {
+                stats.sensorFramesAtDashboards.incrementAndGet();
+                long ts = longField(json, "ts");
+                if (ts > 0) stats.sensorStaleness.record((System.currentTimeMillis() - ts) * 1000);
+            }
+            case "door_event" -> stats.doorEventsAtDashboards.incrementAndGet();
+            default -> {
+            }
+        }
+    }
+
+    private static String stringField(String json, String name) {
+        String key = "\"" + name + "\":\"";
+        int start = json.indexOf(key);
+        if (start < 0) return null;
+        start += key.length();
+        int end = json.indexOf('"', start);
+        return end < 0 ? null : json.substring(start, end);
+    }
+
+    private static long longField(String json, String name) {
+        String key = "\"" + name + "\":";
+        int i = json.indexOf(key);
+        if (i < 0) return -1;
+        i += key.length();
+        long v = 0;
+        int digits = 0;
+        for (; i < json.length() && Character.isDigit(json.charAt(i)); i++, digits++) {
+            v = v * 10 + (json.charAt(i) - '0');
+        }
+        return digits == 0 ? -1 : v;
+    }
+}
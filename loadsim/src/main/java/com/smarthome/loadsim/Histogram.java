@@ -0,0 +1,64 @@
+package com.smarthome.loadsim;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of microsecond values, four sub-buckets per
+ * power of two (same layout as the gateway's ack latency histogram).
+ */
+final class Histogram {
+
+    private static final int BUCKETS = 4 * 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long micros) {
+        long v = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(v));
+        total.incrementAndGet();
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    long count() {
+        return total.get();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    long percentile(double q) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return lowerBound(i);
+        }
+        return max.get();
+    }
+
+    /** {@code p50/p90/p99/max} in milliseconds. */
+    String describe() {
+        if (count() == 0) return "-";
+        return String.format("p50 %.2f  p90 %.2f  p99 %.2f  max %.2f ms",
+                percentile(0.5) / 1000.0, percentile(0.9) / 1000.0, percentile(0.99) / 1000.0, max() / 1000.0);
+    }
+
+    private static int indexOf(long v) {
+        if (v < 4) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (msb - 2)) & 3;
+        return Math.min(BUCKETS - 1, 4 * (msb - 1) + sub);
+    }
+
+    private static long lowerBound(int index) {
+        if (index < 4) return index;
+        int msb = index / 4 + 1;
+        return (4L + index % 4) << (msb - 2);
+    }
+}
@@ -0,0 +1,177 @@
+package com.smarthome.loadsim;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Drives spring-app (or the standalone GUI {@code Main}) with simulated POP boards
+ * and dashboard clients, then prints delivery counts and latencies.
+ * <pre>
+ *   java -jar loadsim/target/loadsim.jar --boards 200 --sensor-hz 5 --ws 20 --duration 60
+ * </pre>
+ */
+public final class LoadSimulator {
+
+    private final SimOptions options;
+    private final SimStats stats = new SimStats();
+    private final List<SimulatedBoard> boards = new ArrayList<>();
+    private final List<DashboardClient> dashboards = new ArrayList<>();
+    private final ScheduledExecutorService scheduler;
+
+    private LoadSimulator(SimOptions options) {
+        this.options = options;
+        int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        this.scheduler = Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "loadsim");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        SimOptions options;
+        try {
+            options = SimOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            if (!e.getMessage().isEmpty()) System.err.println(e.getMessage());
+            System.err.print(SimOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        new LoadSimulator(options).run();
+    }
+
+    private void run() throws Exception {
+        connectBoards();
+        BoardReader reader = new BoardReader(boards);
+        Thread readerThread = new Thread(reader, "loadsim-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        HttpClient http = HttpClient.newHttpClient();
+        connectDashboards(http);
+        System.out.printf(Locale.ROOT, "connected %d boards, %d dashboards; running %ds%n",
+                boards.size(), dashboards.size(), options.durationSeconds());
+
+        for (SimulatedBoard board : boards) {
+            schedule(board, SimulatedBoard::sendSensor, options.sensorHz());
+            schedule(board, SimulatedBoard::sendDoorEvent, options.doorPerMinute() / 60.0);
+            schedule(board, SimulatedBoard::sendProbe, options.probeHz());
+        }
+        for (DashboardClient dashboard : dashboards) {
+            schedule(dashboard, DashboardClient::sendCommand, options.webCommandHz());
+        }
+
+        long started = System.nanoTime();
+        for (int s = 1; s <= options.durationSeconds(); s++) {
+            TimeUnit.NANOSECONDS.sleep(started + TimeUnit.SECONDS.toNanos(s) - System.nanoTime());
+            if (s % 5 == 0 || s == options.durationSeconds()) progress(s);
+        }
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        TimeUnit.SECONDS.sleep(options.drainSeconds());
+
+        report((System.nanoTime() - started) / 1e9);
+        reader.stop();
+        dashboards.forEach(DashboardClient::close);
+        boards.forEach(SimulatedBoard::close);
+    }
+
+    private void connectBoards() {
+        for (int i = 0; i < options.boards(); i++) {
+            try {
+                boards.add(new SimulatedBoard(i, options, stats));
+            } catch (IOException e) {
+                stats.connectFailures.incrementAndGet();
+                if (stats.connectFailures.get() == 1) System.err.println("board connect failed: " + e);
+            }
+        }
+    }
+
+    private void connectDashboards(HttpClient http) {
+        ExecutorService connector = Executors.newFixedThreadPool(Math.max(1, Math.min(16, options.dashboards())));
+        List<DashboardClient> pending = new ArrayList<>();
+        List<java.util.concurrent.Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < options.dashboards(); i++) {
+            DashboardClient client = new DashboardClient(stats);
+            pending.add(client);
+            futures.add(connector.submit(() -> client.connect(http, options.wsUri())));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+                dashboards.add(pending.get(i));
+            } catch (Exception e) {
+                stats.connectFailures.incrementAndGet();
+                if (stats.connectFailures.get() == 1) System.err.println("dashboard connect failed: " + e.getCause());
+            }
+        }
+        connector.shutdown();
+    }
+
+    /** Fixed-rate task with a random phase so boards do not fire in lockstep. */
+    private <T> void schedule(T target, Consumer<T> action, double hz) {
+        if (hz <= 0) return;
+        long periodMicros = Math.max(1, (long) (1_000_000 / hz));
+        long phase = ThreadLocalRandom.current().nextLong(periodMicros);
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                action.accept(target);
+            } catch (RuntimeException e) {
+                stats.writeFailures.incrementAndGet();
+            }
+        }, phase, periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void progress(int second) {
+        System.out.printf(Locale.ROOT, "t=%3ds  sent sensor=%d door=%d probe=%d web=%d  ws frames=%d  board->ws %s%n",
+                second, stats.sensorLinesSent.get(), stats.doorEventsSent.get(), stats.probesSent.get(),
+                stats.webCommandsSent.get(), stats.framesAtDashboards.get(), stats.boardToDashboard.describe());
+    }
+
+    private void report(double seconds) {
+        long probes = stats.probesSent.get();
+        long expectedAtBoards = probes * Math.max(0, boards.size() - 1);
+        long expectedAtDashboards = probes * dashboards.size();
+        long expectedDoor = stats.doorEventsSent.get() * dashboards.size();
+
+        System.out.println();
+        System.out.println("=== load simulator report ===");
+        System.out.printf(Locale.ROOT, "target            %s (ws %s)%n", options.host(),
+                dashboards.isEmpty() ? "off" : options.wsUri());
+        System.out.printf(Locale.ROOT, "clients           %d boards, %d dashboards, %d connect failures, %d closed dashboards%n",
+                boards.size(), dashboards.size(), stats.connectFailures.get(), stats.dashboardsClosed.get());
+        System.out.printf(Locale.ROOT, "elapsed           %.1fs%n", seconds);
+        System.out.printf(Locale.ROOT, "sent              sensor %d (%.0f/s)  door %d  probes %d  web commands %d  write failures %d%n",
+                stats.sensorLinesSent.get(), stats.sensorLinesSent.get() / seconds, stats.doorEventsSent.get(),
+                probes, stats.webCommandsSent.get(), stats.writeFailures.get());
+        System.out.printf(Locale.ROOT, "board -> board    %s  %s%n",
+                delivery(stats.probesAtBoards.get(), expectedAtBoards), stats.boardToBoard.describe());
+        System.out.printf(Locale.ROOT, "web -> boards     %d commands delivered%n", stats.commandsAtBoards.get());
+        if (!dashboards.isEmpty()) {
+            System.out.printf(Locale.ROOT, "board -> ws       %s  %s%n",
+                    delivery(stats.probesAtDashboards.get(), expectedAtDashboards), stats.boardToDashboard.describe());
+            System.out.printf(Locale.ROOT, "door -> ws        %s%n", delivery(stats.doorEventsAtDashboards.get(), expectedDoor));
+            System.out.printf(Locale.ROOT, "sensor frames     %d (%.1f/s per dashboard)  staleness %s%n",
+                    stats.sensorFramesAtDashboards.get(),
+                    stats.sensorFramesAtDashboards.get() / seconds / dashboards.size(),
+                    stats.sensorStaleness.describe());
+            System.out.printf(Locale.ROOT, "ws frames total   %d%n", stats.framesAtDashboards.get());
+        }
+    }
+
+    private static String delivery(long received, long expected) {
+        if (expected == 0) return "n/a";
+        double lossPct = 100.0 * Math.max(0, expected - received) / expected;
+        return String.format(Locale.ROOT, "%d/%d delivered (%.2f%% lost)", received, expected, lossPct);
+    }
+}
@@ -0,0 +1,37 @@
+package com.smarthome.loadsim;
+
+/**
+ * Timestamped command a board sends on the command port. The gateway forwards
+ * it to every other board and echoes it to dashboards as {@code from_python},
+ * so both paths can be timed against the sender's {@link System#nanoTime()}.
+ */
+final class Probe {
+
+    static final String PREFIX = "SIM_PING ";
+
+    private Probe() {
+    }
+
+    static String format(int board, long seq) {
+        return PREFIX + board + " " + seq + " " + System.nanoTime();
+    }
+
+    /**
+     * Microseconds since the probe in {@code text} was sent, or -1 if it is not a
+     * probe or was sent by {@code ownBoard}. {@code text} may be a whole JSON frame.
+     */
+    static long ageMicros(String text, int ownBoard) {
+        int start = text.indexOf(PREFIX);
+        if (start < 0) return -1;
+        int end = start + PREFIX.length();
+        while (end < text.length() && text.charAt(end) != '"') end++;
+        String[] parts = text.substring(start + PREFIX.length(), end).trim().split(" ");
+        if (parts.length < 3) return -1;
+        try {
+            if (Integer.parseInt(parts[0]) == ownBoard) return -1;
+            return (System.nanoTime() - Long.parseLong(parts[2])) / 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
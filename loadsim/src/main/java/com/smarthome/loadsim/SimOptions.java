@@ -0,0 +1,83 @@
+package com.smarthome.loadsim;
+
+import java.net.URI;
+
+/** Command-line options; every rate is per board or per dashboard client. */
+record SimOptions(String host,
+                  int commandPort,
+                  int sensorPort,
+                  int doorPort,
+                  int boards,
+                  double sensorHz,
+                  double doorPerMinute,
+                  double probeHz,
+                  int dashboards,
+                  URI wsUri,
+                  double webCommandHz,
+                  int durationSeconds,
+                  int drainSeconds) {
+
+    static final String USAGE = """
+            usage: java -jar loadsim.jar [options]
+              --host HOST            gateway host (127.0.0.1)
+              --command-port N       command port (39186)
+              --sensor-port N        sensor port (39187)
+              --door-port N          door event port (39189)
+              --boards N             simulated POP boards (10)
+              --sensor-hz R          SENSOR lines per second per board (1)
+              --door-per-min R       LOCKED/UNLOCKED events per minute per board (2)
+              --probe-hz R           timestamped probe commands per second per board (1)
+              --ws N                 dashboard WebSocket clients, 0 for the standalone GUI (5)
+              --ws-url URL           dashboard endpoint (ws://HOST:8080/ws)
+              --web-command-hz R     LED/FAN/RGB commands per second per dashboard client (0)
+              --duration S           seconds of load (30)
+              --drain S              seconds to wait for in-flight traffic afterwards (2)
+            """;
+
+    static SimOptions parse(String[] args) {
+        String host = "127.0.0.1";
+        int commandPort = 39186;
+        int sensorPort = 39187;
+        int doorPort = 39189;
+        int boards = 10;
+        double sensorHz = 1;
+        double doorPerMinute = 2;
+        double probeHz = 1;
+        int dashboards = 5;
+        String wsUrl = null;
+        double webCommandHz = 0;
+        int duration = 30;
+        int drain = 2;
+
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (name.equals("-h") || name.equals("--help")) throw new IllegalArgumentException("");
+            if (i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + name);
+            String value = args[++i];
+            try {
+                switch (name) {
+                    case "--host" -> host = value;
+                    case "--command-port" -> commandPort = Integer.parseInt(value);
+                    case "--sensor-port" -> sensorPort = Integer.parseInt(value);
+                    case "--door-port" -> doorPort = Integer.parseInt(value);
+                    case "--boards" -> boards = Integer.parseInt(value);
+                    case "--sensor-hz" -> sensorHz = Double.parseDouble(value);
+                    case "--door-per-min" -> doorPerMinute = Double.parseDouble(value);
+                    case "--probe-hz" -> probeHz = Double.parseDouble(value);
+                    case "--ws" -> dashboards = Integer.parseInt(value);
+                    case "--ws-url" -> wsUrl = value;
+                    case "--web-command-hz" -> webCommandHz = Double.parseDouble(value);
+                    case "--duration" -> duration = Integer.parseInt(value);
+                    case "--drain" -> drain = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("unknown option " + name);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad value for " + name + ": " + value);
+            }
+        }
+        URI wsUri = URI.create(wsUrl != null ? wsUrl : "ws://" + host + ":8080/ws");
+        return new SimOptions(host, commandPort, sensorPort, doorPort, Math.max(0, boards), sensorHz,
+                doorPerMinute, probeHz, Math.max(0, dashboards), wsUri, webCommandHz,
+                Math.max(1, duration), Math.max(0, drain));
+    }
+}
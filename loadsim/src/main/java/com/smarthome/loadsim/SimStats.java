@@ -0,0 +1,26 @@
+package com.smarthome.loadsim;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Counters shared by every simulated board and dashboard client. */
+final class SimStats {
+
+    final AtomicLong sensorLinesSent = new AtomicLong();
+    final AtomicLong doorEventsSent = new AtomicLong();
+    final AtomicLong probesSent = new AtomicLong();
+    final AtomicLong webCommandsSent = new AtomicLong();
+    final AtomicLong writeFailures = new AtomicLong();
+    final AtomicLong connectFailures = new AtomicLong();
+
+    final AtomicLong probesAtBoards = new AtomicLong();
+    final AtomicLong commandsAtBoards = new AtomicLong();
+    final Histogram boardToBoard = new Histogram();
+
+    final AtomicLong probesAtDashboards = new AtomicLong();
+    final AtomicLong sensorFramesAtDashboards = new AtomicLong();
+    final AtomicLong doorEventsAtDashboards = new AtomicLong();
+    final AtomicLong framesAtDashboards = new AtomicLong();
+    final AtomicLong dashboardsClosed = new AtomicLong();
+    final Histogram boardToDashboard = new Histogram();
+    final Histogram sensorStaleness = new Histogram();
+}
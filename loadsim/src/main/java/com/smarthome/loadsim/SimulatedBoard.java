@@ -0,0 +1,131 @@
+package com.smarthome.loadsim;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One POP board: a command connection (read by {@link BoardReader}), a sensor
+ * feed and a door-event feed. Sensor values random-walk around the ranges the
+ * real board in {@code Data_TCP.ipynb} reports.
+ */
+final class SimulatedBoard {
+
+    private final int id;
+    private final SimStats stats;
+    private final SocketChannel command;
+    private final SocketChannel sensor;
+    private final SocketChannel door;
+    private final StringBuilder pending = new StringBuilder();
+    private long probeSeq;
+    private boolean locked = true;
+
+    private double gas = 120;
+    private double temp = 24;
+    private double humi = 40;
+    private double pm10 = 10;
+
+    SimulatedBoard(int id, SimOptions options, SimStats stats) throws IOException {
+        this.id = id;
+        this.stats = stats;
+        this.command = connect(options.host(), options.commandPort());
+        this.sensor = connect(options.host(), options.sensorPort());
+        this.door = connect(options.host(), options.doorPort());
+        command.configureBlocking(false);
+    }
+
+    int id() {
+        return id;
+    }
+
+    SocketChannel commandChannel() {
+        return command;
+    }
+
+    void sendSensor() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        gas = clamp(gas + r.nextGaussian() * 3, 50, 400);
+        temp = clamp(temp + r.nextGaussian() * 0.05, 15, 35);
+        humi = clamp(humi + r.nextGaussian() * 0.2, 20, 80);
+        pm10 = clamp(pm10 + r.nextGaussian(), 0, 150);
+        int g = (int) gas;
+        int pm25 = (int) (pm10 * 0.7);
+        String line = String.format(Locale.ROOT,
+                "SENSOR GAS=%d METHAN=%d TEMP=%.2f HUMI=%.2f PM1=%d PM25=%d PM10=%d PIR=%d",
+                g, g / 100, temp, humi, pm25 / 2, pm25, (int) pm10, r.nextInt(10) == 0 ? 1 : 0);
+        if (write(sensor, line)) stats.sensorLinesSent.incrementAndGet();
+    }
+
+    void sendDoorEvent() {
+        locked = !locked;
+        if (write(door, locked ? "LOCKED" : "UNLOCKED")) stats.doorEventsSent.incrementAndGet();
+    }
+
+    void sendProbe() {
+        String line;
+        synchronized (this) {
+            line = Probe.format(id, ++probeSeq);
+        }
+        if (write(command, line)) stats.probesSent.incrementAndGet();
+    }
+
+    /** Called by the reader thread with bytes read from the command connection. */
+    void onCommandBytes(ByteBuffer data) {
+        while (data.hasRemaining()) {
+            char c = (char) (data.get() & 0xff);
+            if (c == '\n') {
+                onCommand(pending.toString().trim());
+                pending.setLength(0);
+            } else {
+                pending.append(c);
+            }
+        }
+    }
+
+    private void onCommand(String line) {
+        if (line.isEmpty()) return;
+        long age = Probe.ageMicros(line, id);
+        if (age >= 0) {
+            stats.probesAtBoards.incrementAndGet();
+            stats.boardToBoard.record(age);
+        } else if (!line.contains(Probe.PREFIX)) {
+            stats.commandsAtBoards.incrementAndGet();
+        }
+    }
+
+    void close() {
+        for (SocketChannel channel : new SocketChannel[]{command, sensor, door}) {
+            try { channel.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private boolean write(SocketChannel channel, String line) {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        synchronized (channel) {
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.write(buffer) == 0) LockSupport.parkNanos(100_000);
+                }
+                return true;
+            } catch (IOException e) {
+                stats.writeFailures.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    private static SocketChannel connect(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        return channel;
+    }
+
+    private static double clamp(double v, double min, double max) {
+        return Math.max(min, Math.min(max, v));
+    }
+}
@@ -0,0 +1,141 @@
+package com.smarthome.loadsim;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launches spring-app, connects a board to the sensor port as early as the port
+ * accepts, sends one reading, and prints how long after launch the connection was
+ * accepted and the dashboard started answering, next to the app's own
+ * {@code /api/startup} timeline. Run it against each build variant to compare:
+ * <pre>
+ *   java -cp loadsim/target/loadsim.jar com.smarthome.loadsim.StartupProbe --runs 5 -- \
+ *       java -jar spring-app/target/smarthome-web-0.0.1-SNAPSHOT.jar
+ * </pre>
+ */
+public final class StartupProbe {
+
+    private static final String USAGE = """
+            usage: java -cp loadsim.jar com.smarthome.loadsim.StartupProbe [options] -- COMMAND...
+              --runs N               launches to average (3)
+              --host HOST            gateway host (127.0.0.1)
+              --sensor-port N        sensor port (39187)
+              --http URL             app base URL (http://HOST:8080)
+              --timeout S            seconds to wait per launch (120)
+            """;
+
+    private StartupProbe() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = 3;
+        String host = "127.0.0.1";
+        int sensorPort = 39187;
+        String http = null;
+        int timeout = 120;
+        int i = 0;
+        try {
+            for (; i < args.length && !args[i].equals("--"); i++) {
+                String name = args[i];
+                if (i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + name);
+                String value = args[++i];
+                switch (name) {
+                    case "--runs" -> runs = Integer.parseInt(value);
+                    case "--host" -> host = value;
+                    case "--sensor-port" -> sensorPort = Integer.parseInt(value);
+                    case "--http" -> http = value;
+                    case "--timeout" -> timeout = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("unknown option " + name);
+                }
+            }
+            if (i + 1 >= args.length) throw new IllegalArgumentException("missing command after --");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+        List<String> command = Arrays.asList(args).subList(i + 1, args.length);
+        URI startup = URI.create((http != null ? http : "http://" + host + ":8080") + "/api/startup");
+
+        long acceptSum = 0;
+        long readySum = 0;
+        for (int run = 1; run <= runs; run++) {
+            long[] result = launch(command, host, sensorPort, startup, timeout);
+            acceptSum += result[0];
+            readySum += result[1];
+        }
+        System.out.printf(Locale.ROOT, "mean over %d: sensor accepted %d ms, dashboard up %d ms after launch%n",
+                runs, acceptSum / runs, readySum / runs);
+    }
+
+    private static long[] launch(List<String> command, String host, int sensorPort, URI startup, int timeout)
+            throws Exception {
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.SECONDS.toNanos(timeout);
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try (Socket board = connect(host, sensorPort, deadline, process)) {
+            long accepted = millisSince(started);
+            OutputStream out = board.getOutputStream();
+            out.write("SENSOR GAS=123 TEMP=21.5 HUMI=40\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+            HttpRequest request = HttpRequest.newBuilder(startup).timeout(Duration.ofSeconds(1)).build();
+            String timeline;
+            while (true) {
+                try {
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200) {
+                        timeline = response.body();
+                        break;
+                    }
+                } catch (IOException ignored) {
+                }
+                if (System.nanoTime() > deadline) throw new IOException("no answer from " + startup);
+                Thread.sleep(20);
+            }
+            long ready = millisSince(started);
+            System.out.printf(Locale.ROOT, "sensor accepted %5d ms, dashboard up %5d ms  %s%n",
+                    accepted, ready, timeline);
+            return new long[]{accepted, ready};
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static Socket connect(String host, int port, long deadline, Process process) throws Exception {
+        while (true) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), 200);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                if (!process.isAlive()) throw new IOException("app exited with " + process.exitValue());
+                if (System.nanoTime() > deadline) throw new IOException("sensor port " + port + " never accepted");
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -1,8 +1,12 @@
 package com.smarthome.web;
 
+import com.smarthome.web.cluster.ClusterNode;
+import com.smarthome.web.journal.JournalReplayer;
+import com.smarthome.web.tcp.EarlyTcpListeners;
 import com.smarthome.web.tcp.SensorTcpServer;
 import com.smarthome.web.tcp.DoorEventTcpServer;
 import com.smarthome.web.tcp.TcpCommandServer;
+import com.smarthome.web.tcp.TcpEventLoop;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -13,23 +17,43 @@ public class SmartHomeWebApplication implements CommandLineRunner {
     private final TcpCommandServer commandServer;
     private final SensorTcpServer sensorTcpServer;
     private final DoorEventTcpServer doorEventTcpServer;
+    private final JournalReplayer journalReplayer;
+    private final ClusterNode clusterNode;
+    private final TcpEventLoop eventLoop;
+    private final EarlyTcpListeners earlyListeners;
 
     public SmartHomeWebApplication(
             TcpCommandServer commandServer,
             SensorTcpServer sensorTcpServer,
-            DoorEventTcpServer doorEventTcpServer
+            DoorEventTcpServer doorEventTcpServer,
+            JournalReplayer journalReplayer,
+            ClusterNode clusterNode,
+            TcpEventLoop eventLoop,
+            EarlyTcpListeners earlyListeners
     ) {
         this.commandServer = commandServer;
         this.sensorTcpServer = sensorTcpServer;
         this.doorEventTcpServer = doorEventTcpServer;
+        this.journalReplayer = journalReplayer;
+        this.clusterNode = clusterNode;
+        this.eventLoop = eventLoop;
+        this.earlyListeners = earlyListeners;
     }
 
     public static void main(String[] args) {
-        SpringApplication.run(SmartHomeWebApplication.class, args);
+        // TCP ports open while the context is still being built; run() hands them over
+        EarlyTcpListeners early = new EarlyTcpListeners();
+        SpringApplication app = new SpringApplication(SmartHomeWebApplication.class);
+        app.addListeners(early);
+        app.addInitializers(ctx -> ctx.getBeanFactory().registerSingleton("earlyTcpListeners", early));
+        app.run(args);
     }
 
     @Override
     public void run(String... args) {
+        journalReplayer.restore(); // rebuild history from the journal before new data arrives
+        eventLoop.adopt(earlyListeners); // WebSocket layer is up: take over the early ports and what they buffered
+        clusterNode.start(); // peer nodes, when smarthome.cluster.enabled
         commandServer.start(); // commands to/from Python
         sensorTcpServer.start(); // sensor feed from Python
         doorEventTcpServer.start(); // door events (LOCKED/UNLOCKED) from RPi
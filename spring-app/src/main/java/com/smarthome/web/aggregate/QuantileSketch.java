@@ -0,0 +1,61 @@
+package com.smarthome.web.aggregate;
+
+/**
+ * Fixed log-linear histogram for approximate quantiles: 16 bins per power of two
+ * for magnitudes between 2^-4 and 2^20, mirrored for negative values, plus one bin
+ * for values near zero. Bin indexes grow with the value, adding and removing a
+ * sample is one array update, and a quantile is within about 3% of the true value.
+ */
+final class QuantileSketch {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MIN_EXP = -4;
+    private static final int MAX_EXP = 19;
+    private static final int PER_SIGN = (MAX_EXP - MIN_EXP + 1) * SUB;
+    private static final int ZERO = PER_SIGN;
+    static final int BINS = 2 * PER_SIGN + 1;
+
+    private final int[] counts = new int[BINS];
+    private long total;
+
+    static int binOf(double value) {
+        double magnitude = Math.abs(value);
+        if (!(magnitude >= 0x1p-4)) return ZERO;
+        int exp = Math.min(Math.getExponent(magnitude), MAX_EXP);
+        int sub = (int) ((Math.scalb(magnitude, -exp) - 1) * SUB);
+        int offset = (exp - MIN_EXP) * SUB + Math.min(Math.max(sub, 0), SUB - 1);
+        return value > 0 ? ZERO + 1 + offset : ZERO - 1 - offset;
+    }
+
+    /** Midpoint of a bin. */
+    static double valueOf(int bin) {
+        if (bin == ZERO) return 0;
+        int offset = bin > ZERO ? bin - ZERO - 1 : ZERO - 1 - bin;
+        int exp = offset / SUB + MIN_EXP;
+        double magnitude = Math.scalb(1 + (offset % SUB + 0.5) / SUB, exp);
+        return bin > ZERO ? magnitude : -magnitude;
+    }
+
+    void add(int bin, int n) {
+        counts[bin] += n;
+        total += n;
+    }
+
+    void remove(int bin, int n) {
+        counts[bin] -= n;
+        total -= n;
+    }
+
+    /** Value at quantile {@code q} in [0, 1], or NaN when empty. */
+    double quantile(double q) {
+        if (total <= 0) return Double.NaN;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            seen += counts[bin];
+            if (seen >= rank) return valueOf(bin);
+        }
+        return valueOf(BINS - 1);
+    }
+}
@@ -0,0 +1,156 @@
+package com.smarthome.web.aggregate;
+
+import com.smarthome.web.sensor.SensorChannel;
+import com.smarthome.web.sensor.SensorReading;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling count/mean/min/max/p50/p90/p99 per source, channel and window (1 and 15
+ * minutes by default), updated from the sensor port as readings are parsed. Every
+ * {@code smarthome.aggregate.publish-ms} each active source is broadcast as an
+ * {@code aggregate} message; {@link #snapshot} serves the same frames over REST.
+ */
+@Component
+public class SensorAggregator {
+
+    private final WebSocketBroadcaster broadcaster;
+    private final long[] windowMs;
+    private final String[] windowLabels;
+    private final SensorChannel[] channels;
+    private final Map<String, SourceWindows> sources = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker;
+
+    public SensorAggregator(WebSocketBroadcaster broadcaster,
+                            @Value("${smarthome.aggregate.windows:1m,15m}") List<Duration> windows,
+                            @Value("${smarthome.aggregate.channels:gas,pm25,pm10,temp,humi}") List<String> channels,
+                            @Value("${smarthome.aggregate.publish-ms:5000}") long publishMs) {
+        this.broadcaster = broadcaster;
+        this.windowMs = windows.stream().mapToLong(Duration::toMillis).toArray();
+        this.windowLabels = windows.stream().map(SensorAggregator::label).toArray(String[]::new);
+        this.channels = channels.stream().map(SensorChannel::parse).toArray(SensorChannel[]::new);
+        if (publishMs <= 0) {
+            this.ticker = null;
+            return;
+        }
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sensor-aggregator");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::publish, publishMs, publishMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void add(SensorReading reading) {
+        String source = reading.getSource();
+        SourceWindows windows = sources.get(source);
+        if (windows == null) windows = sources.computeIfAbsent(source, k -> new SourceWindows());
+        windows.add(reading);
+    }
+
+    /** One frame per source, or only {@code source} when given. */
+    public List<Map<String, Object>> snapshot(String source) {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> frames = new ArrayList<>();
+        sources.forEach((name, windows) -> {
+            if (source != null && !source.equals(name)) return;
+            Map<String, Object> frame = windows.frame(name, now);
+            if (frame != null) frames.add(frame);
+        });
+        return frames;
+    }
+
+    /** Never throws, or the fixed-rate task would be cancelled. */
+    void publish() {
+        try {
+            publishAll();
+        } catch (RuntimeException e) {
+            try {
+                broadcaster.broadcast("error", "Aggregate publish failed: " + e);
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+
+    private void publishAll() {
+        long now = System.currentTimeMillis();
+        sources.forEach((name, windows) -> {
+            Map<String, Object> frame = windows.frame(name, now);
+            if (frame == null) {
+                // nothing left in the longest window: the board is gone
+                sources.remove(name, windows);
+                return;
+            }
+            broadcaster.broadcast("aggregate", name, frame);
+        });
+    }
+
+    private static String label(Duration d) {
+        long ms = d.toMillis();
+        if (ms % 3_600_000 == 0) return ms / 3_600_000 + "h";
+        if (ms % 60_000 == 0) return ms / 60_000 + "m";
+        if (ms % 1000 == 0) return ms / 1000 + "s";
+        return ms + "ms";
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ticker != null) ticker.shutdownNow();
+    }
+
+    /** Windows of one source; written by the analytics stage, read by the publisher. */
+    private final class SourceWindows {
+
+        private final SlidingWindow[][] windows = new SlidingWindow[channels.length][windowMs.length];
+
+        SourceWindows() {
+            for (int c = 0; c < channels.length; c++) {
+                for (int w = 0; w < windowMs.length; w++) windows[c][w] = new SlidingWindow(windowMs[w]);
+            }
+        }
+
+        synchronized void add(SensorReading reading) {
+            long ts = reading.getTs();
+            int mask = reading.getFieldMask();
+            for (int c = 0; c < channels.length; c++) {
+                SensorChannel channel = channels[c];
+                if ((mask & channel.mask()) == 0) continue;
+                double value = channel.read(reading);
+                for (SlidingWindow window : windows[c]) window.add(ts, value);
+            }
+        }
+
+        /** Null when every window is empty. */
+        synchronized Map<String, Object> frame(String source, long now) {
+            Map<String, Object> byWindow = new LinkedHashMap<>();
+            for (int w = 0; w < windowMs.length; w++) {
+                Map<String, Object> byChannel = new LinkedHashMap<>();
+                for (int c = 0; c < channels.length; c++) {
+                    SlidingWindow window = windows[c][w];
+                    window.advance(now);
+                    SlidingWindow.Aggregate aggregate = window.aggregate();
+                    if (aggregate != null) byChannel.put(channels[c].key(), aggregate);
+                }
+                if (!byChannel.isEmpty()) byWindow.put(windowLabels[w], byChannel);
+            }
+            if (byWindow.isEmpty()) return null;
+            Map<String, Object> frame = new LinkedHashMap<>();
+            frame.put("source", source);
+            frame.put("ts", now);
+            frame.put("windows", byWindow);
+            return frame;
+        }
+    }
+}
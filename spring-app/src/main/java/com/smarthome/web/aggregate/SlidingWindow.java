@@ -0,0 +1,177 @@
+package com.smarthome.web.aggregate;
+
+import java.util.Arrays;
+
+/**
+ * Count, mean, min, max and quantiles of one channel over the last {@code windowMs}.
+ * The window is a ring of {@link #BUCKETS} time buckets: a sample updates the open
+ * bucket, and each bucket that falls out of the window is subtracted from the running
+ * totals and the {@link QuantileSketch}. Min and max come from monotonic deques over
+ * the closed buckets, so both updates and reads are amortized O(1). Not thread-safe.
+ */
+final class SlidingWindow {
+
+    static final int BUCKETS = 60;
+
+    private final long bucketMs;
+    private final Bucket[] ring = new Bucket[BUCKETS];
+    private final QuantileSketch sketch = new QuantileSketch();
+    private final MonotonicDeque mins = new MonotonicDeque(true);
+    private final MonotonicDeque maxs = new MonotonicDeque(false);
+    private long currentId = Long.MIN_VALUE;
+    private long count;
+    private double sum;
+
+    SlidingWindow(long windowMs) {
+        this.bucketMs = Math.max(1, windowMs / BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) ring[i] = new Bucket();
+    }
+
+    void add(long ts, double value) {
+        advance(ts);
+        int bin = QuantileSketch.binOf(value);
+        ring[slot(currentId)].add(value, bin);
+        sketch.add(bin, 1);
+        count++;
+        sum += value;
+    }
+
+    /** Expires buckets older than the window ending at {@code now}; time never moves back. */
+    void advance(long now) {
+        long id = Math.floorDiv(now, bucketMs);
+        if (currentId == Long.MIN_VALUE) {
+            currentId = id;
+            return;
+        }
+        if (id <= currentId) return;
+        Bucket open = ring[slot(currentId)];
+        if (open.count > 0) {
+            mins.push(currentId, open.min);
+            maxs.push(currentId, open.max);
+        }
+        long steps = Math.min(id - currentId, BUCKETS);
+        for (long k = id - steps + 1; k <= id; k++) expire(ring[slot(k)]);
+        currentId = id;
+        mins.expire(id - BUCKETS);
+        maxs.expire(id - BUCKETS);
+    }
+
+    long count() {
+        return count;
+    }
+
+    /** Null when the window holds no samples. */
+    Aggregate aggregate() {
+        if (count == 0) return null;
+        Bucket open = ring[slot(currentId)];
+        double min = mins.isEmpty() ? open.min : open.count > 0 ? Math.min(mins.peek(), open.min) : mins.peek();
+        double max = maxs.isEmpty() ? open.max : open.count > 0 ? Math.max(maxs.peek(), open.max) : maxs.peek();
+        return new Aggregate(count, sum / count, min, max,
+                clamp(sketch.quantile(0.5), min, max),
+                clamp(sketch.quantile(0.9), min, max),
+                clamp(sketch.quantile(0.99), min, max));
+    }
+
+    private static double clamp(double v, double min, double max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    private void expire(Bucket bucket) {
+        if (bucket.count == 0) return;
+        for (int i = 0; i < bucket.distinct; i++) sketch.remove(bucket.bins[i], bucket.binCounts[i]);
+        count -= bucket.count;
+        sum = count == 0 ? 0 : sum - bucket.sum;
+        bucket.reset();
+    }
+
+    private static int slot(long id) {
+        return (int) Math.floorMod(id, (long) BUCKETS);
+    }
+
+    record Aggregate(long count, double mean, double min, double max, double p50, double p90, double p99) {
+    }
+
+    /** Samples of one bucket, with their sketch bins run-length counted. */
+    private static final class Bucket {
+        int count;
+        double sum;
+        double min;
+        double max;
+        short[] bins = new short[4];
+        int[] binCounts = new int[4];
+        int distinct;
+
+        void add(double value, int bin) {
+            if (count == 0) {
+                min = value;
+                max = value;
+            } else {
+                if (value < min) min = value;
+                if (value > max) max = value;
+            }
+            count++;
+            sum += value;
+            for (int i = 0; i < distinct; i++) {
+                if (bins[i] == bin) {
+                    binCounts[i]++;
+                    return;
+                }
+            }
+            if (distinct == bins.length) {
+                bins = Arrays.copyOf(bins, distinct * 2);
+                binCounts = Arrays.copyOf(binCounts, distinct * 2);
+            }
+            bins[distinct] = (short) bin;
+            binCounts[distinct++] = 1;
+        }
+
+        void reset() {
+            count = 0;
+            sum = 0;
+            distinct = 0;
+        }
+    }
+
+    /** Closed buckets whose min (or max) is not dominated by a newer bucket. */
+    private static final class MonotonicDeque {
+        private final boolean minimum;
+        private final long[] ids = new long[BUCKETS + 1];
+        private final double[] values = new double[BUCKETS + 1];
+        private int head;
+        private int size;
+
+        MonotonicDeque(boolean minimum) {
+            this.minimum = minimum;
+        }
+
+        void push(long id, double value) {
+            while (size > 0) {
+                double back = values[index(size - 1)];
+                if (minimum ? back < value : back > value) break;
+                size--;
+            }
+            int i = index(size++);
+            ids[i] = id;
+            values[i] = value;
+        }
+
+        void expire(long oldestExcluded) {
+            while (size > 0 && ids[head] <= oldestExcluded) {
+                head = (head + 1) % ids.length;
+                size--;
+            }
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peek() {
+            return values[head];
+        }
+
+        private int index(int offset) {
+            return (head + offset) % ids.length;
+        }
+    }
+}
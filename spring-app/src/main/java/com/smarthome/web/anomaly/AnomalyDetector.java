@@ -0,0 +1,123 @@
+package com.smarthome.web.anomaly;
+
+import com.smarthome.web.sensor.SensorChannel;
+import com.smarthome.web.sensor.SensorReading;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link ChannelDetector} for every channel of every board on the sensor
+ * ingest path and broadcasts each new finding as an {@code anomaly} message.
+ * State is a fixed set of fields per channel, and the time spent per reading is
+ * recorded in {@code smarthome.anomaly.eval}.
+ */
+@Component
+public class AnomalyDetector {
+
+    private static final ChannelDetector.Kind[] KINDS = ChannelDetector.Kind.values();
+
+    private final WebSocketBroadcaster broadcaster;
+    private final boolean enabled;
+    private final AnomalySettings settings;
+    private final Map<String, ChannelDetector[]> sources = new ConcurrentHashMap<>();
+    private final Map<ChannelDetector.Kind, Counter> events = new EnumMap<>(ChannelDetector.Kind.class);
+    private final Timer evalTimer;
+
+    public AnomalyDetector(WebSocketBroadcaster broadcaster, MeterRegistry meterRegistry,
+                           @Value("${smarthome.anomaly.enabled:true}") boolean enabled,
+                           @Value("${smarthome.anomaly.alpha:0.05}") double alpha,
+                           @Value("${smarthome.anomaly.z-threshold:4}") double zThreshold,
+                           @Value("${smarthome.anomaly.min-std:0.5}") double minStd,
+                           @Value("${smarthome.anomaly.spike-factor:10}") double spikeFactor,
+                           @Value("${smarthome.anomaly.min-rate:1}") double minRate,
+                           @Value("${smarthome.anomaly.stuck-ms:600000}") long stuckMs,
+                           @Value("${smarthome.anomaly.flap-per-minute:20}") double flapPerMinute,
+                           @Value("${smarthome.anomaly.cooldown-ms:60000}") long cooldownMs) {
+        this.broadcaster = broadcaster;
+        this.enabled = enabled;
+        this.settings = new AnomalySettings(alpha, zThreshold, minStd, spikeFactor, minRate,
+                stuckMs, flapPerMinute, cooldownMs);
+        for (ChannelDetector.Kind kind : KINDS) {
+            events.put(kind, Counter.builder("smarthome.anomaly.events")
+                    .tag("kind", kind.name().toLowerCase(Locale.ROOT))
+                    .description("Anomalies reported by the sensor detectors").register(meterRegistry));
+        }
+        this.evalTimer = Timer.builder("smarthome.anomaly.eval")
+                .description("Anomaly detector time per sensor reading").register(meterRegistry);
+    }
+
+    public void onReading(SensorReading reading) {
+        if (!enabled) return;
+        long start = System.nanoTime();
+        String source = reading.getSource();
+        ChannelDetector[] detectors = sources.get(source);
+        if (detectors == null) detectors = sources.computeIfAbsent(source, k -> newDetectors());
+        int mask = reading.getFieldMask();
+        long ts = reading.getTs();
+        for (int c = 0; c < detectors.length; c++) {
+            SensorChannel channel = SensorChannel.of(c);
+            if ((mask & channel.mask()) == 0) continue;
+            double value = channel.read(reading);
+            int fired = detectors[c].update(value, ts, settings);
+            if (fired != 0) report(source, channel, value, ts, detectors[c], fired);
+        }
+        evalTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /** Drops a board's detectors once its connection is gone. */
+    public void forget(String source) {
+        sources.remove(source);
+    }
+
+    public Stats stats() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        events.forEach((kind, counter) -> counts.put(kind.name().toLowerCase(Locale.ROOT), (long) counter.count()));
+        return new Stats(enabled, sources.size(), evalTimer.count(),
+                evalTimer.mean(TimeUnit.MICROSECONDS), evalTimer.max(TimeUnit.MICROSECONDS), counts);
+    }
+
+    private static ChannelDetector[] newDetectors() {
+        ChannelDetector[] detectors = new ChannelDetector[SensorChannel.count()];
+        for (int c = 0; c < detectors.length; c++) {
+            detectors[c] = new ChannelDetector(SensorChannel.of(c) == SensorChannel.PIR);
+        }
+        return detectors;
+    }
+
+    private void report(String source, SensorChannel channel, double value, long ts,
+                        ChannelDetector detector, int fired) {
+        for (ChannelDetector.Kind kind : KINDS) {
+            if ((fired & (1 << kind.ordinal())) == 0) continue;
+            events.get(kind).increment();
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("source", source);
+            event.put("channel", channel.key());
+            event.put("kind", kind.name().toLowerCase(Locale.ROOT));
+            event.put("value", value);
+            event.put("ts", ts);
+            if (kind == ChannelDetector.Kind.FLAPPING) {
+                event.put("togglesPerMinute", detector.spread);
+            } else {
+                event.put("expected", detector.expected);
+                event.put("std", detector.spread);
+                event.put("z", detector.z);
+            }
+            broadcaster.broadcast("anomaly", source, event);
+        }
+    }
+
+    public record Stats(boolean enabled, int sources, long evaluations, double meanMicros, double maxMicros,
+                        Map<String, Long> events) {
+    }
+}
@@ -0,0 +1,6 @@
+package com.smarthome.web.anomaly;
+
+/** Detector thresholds, from {@code smarthome.anomaly.*}. */
+record AnomalySettings(double alpha, double zThreshold, double minStd, double spikeFactor, double minRate,
+                       long stuckMs, double flapPerMinute, long cooldownMs) {
+}
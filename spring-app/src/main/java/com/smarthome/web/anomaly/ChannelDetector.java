@@ -0,0 +1,113 @@
+package com.smarthome.web.anomaly;
+
+import java.util.Arrays;
+
+/**
+ * Online detectors for one channel of one board, in a fixed set of primitive
+ * fields:
+ * <ul>
+ *   <li>{@link Kind#ZSCORE}: distance from an exponentially weighted mean, in
+ *       exponentially weighted standard deviations;</li>
+ *   <li>{@link Kind#SPIKE}: rate of change far above its own weighted average;</li>
+ *   <li>{@link Kind#STUCK}: the exact same value for longer than the stuck time;</li>
+ *   <li>{@link Kind#FLAPPING}: for binary channels such as PIR, too many toggles per
+ *       minute, counted with an exponentially decaying score.</li>
+ * </ul>
+ * Each kind reports once when it starts and again only after it has cleared and the
+ * cooldown has passed. Not thread-safe; readings arrive on the analytics stage thread.
+ */
+final class ChannelDetector {
+
+    enum Kind { ZSCORE, SPIKE, STUCK, FLAPPING }
+
+    private static final int WARMUP = 30;
+    private static final double FLAP_TAU_MS = 60_000;
+
+    private final boolean binary;
+    private long samples;
+    private double mean;
+    private double variance;
+    private double meanRate;
+    private double last = Double.NaN;
+    private long lastTs;
+    private long unchangedSince;
+    private double flapScore;
+    /** Bit per {@link Kind} that is currently reported. */
+    private int active;
+    private final long[] lastReported = new long[Kind.values().length];
+
+    /** Values of the last detection, read by the caller right after {@link #update}. */
+    double z;
+    double expected;
+    double spread;
+
+    ChannelDetector(boolean binary) {
+        this.binary = binary;
+        Arrays.fill(lastReported, Long.MIN_VALUE / 2);
+    }
+
+    /**
+     * Feeds one sample; returns the bits of the kinds that just started and should
+     * be reported, usually 0.
+     */
+    int update(double value, long ts, AnomalySettings s) {
+        int fired = 0;
+        if (binary) {
+            if (!Double.isNaN(last)) {
+                flapScore *= Math.exp(-(ts - lastTs) / FLAP_TAU_MS);
+                if (value != last) flapScore++;
+            }
+            fired |= edge(Kind.FLAPPING, flapScore > s.flapPerMinute(), ts, s);
+            z = 0;
+            expected = s.flapPerMinute();
+            spread = flapScore;
+            last = value;
+            lastTs = ts;
+            return fired;
+        }
+
+        if (!Double.isNaN(last)) {
+            if (value != last) unchangedSince = ts;
+            double dt = Math.max(ts - lastTs, 1) / 1000.0;
+            double rate = Math.abs(value - last) / dt;
+            double floor = Math.max(meanRate, s.minRate());
+            fired |= edge(Kind.SPIKE, samples >= WARMUP && rate > s.spikeFactor() * floor, ts, s);
+            meanRate += s.alpha() * (rate - meanRate);
+        } else {
+            unchangedSince = ts;
+        }
+        fired |= edge(Kind.STUCK, s.stuckMs() > 0 && ts - unchangedSince >= s.stuckMs(), ts, s);
+
+        double std = Math.max(Math.sqrt(variance), Math.max(Math.abs(mean) * 0.01, s.minStd()));
+        z = (value - mean) / std;
+        expected = mean;
+        spread = std;
+        fired |= edge(Kind.ZSCORE, samples >= WARMUP && Math.abs(z) > s.zThreshold(), ts, s);
+
+        if (samples == 0) {
+            mean = value;
+        } else {
+            double diff = value - mean;
+            double incr = s.alpha() * diff;
+            mean += incr;
+            variance = (1 - s.alpha()) * (variance + diff * incr);
+        }
+        samples++;
+        last = value;
+        lastTs = ts;
+        return fired;
+    }
+
+    private int edge(Kind kind, boolean on, long ts, AnomalySettings s) {
+        int bit = 1 << kind.ordinal();
+        if (!on) {
+            active &= ~bit;
+            return 0;
+        }
+        if ((active & bit) != 0) return 0;
+        active |= bit;
+        if (ts - lastReported[kind.ordinal()] < s.cooldownMs()) return 0;
+        lastReported[kind.ordinal()] = ts;
+        return bit;
+    }
+}
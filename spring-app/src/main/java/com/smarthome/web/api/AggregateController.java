@@ -0,0 +1,27 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.aggregate.SensorAggregator;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/aggregates")
+public class AggregateController {
+
+    private final SensorAggregator aggregator;
+
+    public AggregateController(SensorAggregator aggregator) {
+        this.aggregator = aggregator;
+    }
+
+    /** Rolling window stats per source, the same frames the {@code aggregate} WebSocket message carries. */
+    @GetMapping
+    public List<Map<String, Object>> aggregates(@RequestParam(name = "source", required = false) String source) {
+        return aggregator.snapshot(source);
+    }
+}
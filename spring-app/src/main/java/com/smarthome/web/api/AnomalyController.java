@@ -0,0 +1,23 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.anomaly.AnomalyDetector;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/anomalies")
+public class AnomalyController {
+
+    private final AnomalyDetector detector;
+
+    public AnomalyController(AnomalyDetector detector) {
+        this.detector = detector;
+    }
+
+    /** Findings per kind and detector time per reading. */
+    @GetMapping("/stats")
+    public AnomalyDetector.Stats stats() {
+        return detector.stats();
+    }
+}
@@ -0,0 +1,23 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.bus.EventBus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/bus")
+public class BusController {
+
+    private final EventBus bus;
+
+    public BusController(EventBus bus) {
+        this.bus = bus;
+    }
+
+    /** Ring capacity, producer waits, and per stage the lag, batch sizes and time per batch. */
+    @GetMapping("/stats")
+    public EventBus.Stats stats() {
+        return bus.stats();
+    }
+}
@@ -0,0 +1,23 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.cluster.ClusterNode;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/cluster")
+public class ClusterController {
+
+    private final ClusterNode cluster;
+
+    public ClusterController(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    /** This node, its links to the peers and what it has applied from each of them. */
+    @GetMapping
+    public ClusterNode.Stats stats() {
+        return cluster.stats();
+    }
+}
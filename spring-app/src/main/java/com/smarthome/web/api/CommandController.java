@@ -0,0 +1,30 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.service.CommandCoalescer;
+import com.smarthome.web.tcp.CommandAckTracker;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/commands")
+public class CommandController {
+
+    private final CommandCoalescer commandCoalescer;
+    private final CommandAckTracker ackTracker;
+
+    public CommandController(CommandCoalescer commandCoalescer, CommandAckTracker ackTracker) {
+        this.commandCoalescer = commandCoalescer;
+        this.ackTracker = ackTracker;
+    }
+
+    @GetMapping("/stats")
+    public CommandCoalescer.Stats stats() {
+        return commandCoalescer.stats();
+    }
+
+    @GetMapping("/acks")
+    public CommandAckTracker.Stats acks() {
+        return ackTracker.stats();
+    }
+}
@@ -0,0 +1,25 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.tcp.DeviceRegistry;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/devices")
+public class DeviceController {
+
+    private final DeviceRegistry deviceRegistry;
+
+    public DeviceController(DeviceRegistry deviceRegistry) {
+        this.deviceRegistry = deviceRegistry;
+    }
+
+    /** Clients on the command port that registered with {@code HELLO}. */
+    @GetMapping
+    public List<DeviceRegistry.Device> devices() {
+        return deviceRegistry.devices();
+    }
+}
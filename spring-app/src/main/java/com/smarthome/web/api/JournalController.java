@@ -0,0 +1,57 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.journal.EventJournal;
+import com.smarthome.web.journal.JournalEntry;
+import com.smarthome.web.sensor.SensorReading;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/journal")
+public class JournalController {
+
+    private static final int MAX_LIMIT = 10_000;
+
+    private final EventJournal journal;
+
+    public JournalController(EventJournal journal) {
+        this.journal = journal;
+    }
+
+    @GetMapping("/stats")
+    public EventJournal.Stats stats() {
+        return journal.stats();
+    }
+
+    /** Journal records from sequence {@code from}, oldest first. */
+    @GetMapping
+    public List<Map<String, Object>> records(@RequestParam(name = "from", defaultValue = "0") long from,
+                                             @RequestParam(name = "limit", defaultValue = "1000") int limit) {
+        int max = Math.max(1, Math.min(limit, MAX_LIMIT));
+        List<Map<String, Object>> out = new ArrayList<>();
+        journal.replay(from, entry -> {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("seq", entry.seq());
+            record.put("ts", entry.ts());
+            record.put("type", entry.typeName());
+            if (entry.type() == JournalEntry.SENSOR) {
+                SensorReading reading = new SensorReading();
+                entry.readSensor(reading);
+                record.put("payload", reading);
+            } else {
+                record.put("source", entry.source());
+                record.put("payload", entry.text());
+            }
+            out.add(record);
+            return out.size() < max;
+        });
+        return out;
+    }
+}
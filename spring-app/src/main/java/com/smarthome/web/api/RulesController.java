@@ -0,0 +1,29 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.rules.RulesEngine;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/rules")
+public class RulesController {
+
+    private final RulesEngine rulesEngine;
+
+    public RulesController(RulesEngine rulesEngine) {
+        this.rulesEngine = rulesEngine;
+    }
+
+    /** Loaded rules with fire counts, parse errors and evaluation time per reading. */
+    @GetMapping
+    public RulesEngine.Stats rules() {
+        return rulesEngine.stats();
+    }
+
+    @PostMapping("/reload")
+    public RulesEngine.Stats reload() {
+        return rulesEngine.reload();
+    }
+}
@@ -0,0 +1,59 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.history.SensorHistoryStore;
+import com.smarthome.web.sensor.SensorChannel;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/history")
+public class SensorHistoryController {
+
+    private final SensorHistoryStore store;
+
+    public SensorHistoryController(SensorHistoryStore store) {
+        this.store = store;
+    }
+
+    @GetMapping("/sources")
+    public List<SensorHistoryStore.SourceInfo> sources() {
+        return store.sources();
+    }
+
+    @GetMapping("/stats")
+    public SensorHistoryStore.Stats stats() {
+        return store.stats();
+    }
+
+    /**
+     * Raw points of one channel, or min/max/avg buckets when {@code step} (ms) is given.
+     * {@code from}/{@code to} are epoch milliseconds.
+     */
+    @GetMapping
+    public Object query(@RequestParam("source") String source,
+                        @RequestParam("channel") String channel,
+                        @RequestParam(name = "from", defaultValue = "0") long from,
+                        @RequestParam(name = "to", defaultValue = "" + Long.MAX_VALUE) long to,
+                        @RequestParam(name = "step", defaultValue = "0") long step,
+                        @RequestParam(name = "limit", defaultValue = "10000") int limit) {
+        SensorChannel ch;
+        try {
+            ch = SensorChannel.parse(channel);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown channel: " + channel);
+        }
+        Object result = step > 0
+                ? store.downsample(source, ch, from, to, step)
+                : store.raw(source, ch, from, to, limit);
+        if (result == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown source: " + source);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,23 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.tcp.EarlyTcpListeners;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/startup")
+public class StartupController {
+
+    private final EarlyTcpListeners earlyListeners;
+
+    public StartupController(EarlyTcpListeners earlyListeners) {
+        this.earlyListeners = earlyListeners;
+    }
+
+    /** Milliseconds from JVM start to the TCP ports opening, the first sensor connection and readiness. */
+    @GetMapping
+    public EarlyTcpListeners.Report report() {
+        return earlyListeners.report();
+    }
+}
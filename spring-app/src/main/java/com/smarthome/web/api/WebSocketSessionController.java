@@ -0,0 +1,26 @@
+package com.smarthome.web.api;
+
+import com.smarthome.web.ws.SessionOutbound;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/ws")
+public class WebSocketSessionController {
+
+    private final WebSocketBroadcaster broadcaster;
+
+    public WebSocketSessionController(WebSocketBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    /** Outbound queue depth and drop counters for every connected session. */
+    @GetMapping("/sessions")
+    public List<SessionOutbound.Stats> sessions() {
+        return broadcaster.sessionStats();
+    }
+}
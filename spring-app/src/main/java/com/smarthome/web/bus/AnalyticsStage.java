@@ -0,0 +1,43 @@
+package com.smarthome.web.bus;
+
+import com.smarthome.web.aggregate.SensorAggregator;
+import com.smarthome.web.anomaly.AnomalyDetector;
+import com.smarthome.web.rules.RulesEngine;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rolling aggregates, anomaly detection and automation rules. They keep per-source
+ * state, which this stage's single thread owns.
+ */
+@Component
+public class AnalyticsStage implements BusConsumer {
+
+    private final SensorAggregator aggregator;
+    private final AnomalyDetector anomalies;
+    private final RulesEngine rules;
+
+    public AnalyticsStage(EventBus bus, SensorAggregator aggregator, AnomalyDetector anomalies, RulesEngine rules) {
+        this.aggregator = aggregator;
+        this.anomalies = anomalies;
+        this.rules = rules;
+        bus.addStage("analytics", this);
+    }
+
+    @Override
+    public void onEvent(BusEvent event, boolean endOfBatch) {
+        switch (event.type()) {
+            case BusEvent.SENSOR -> {
+                aggregator.add(event.reading());
+                anomalies.onReading(event.reading());
+                // every node tracks rule state, only the board's own node sends the command
+                rules.onReading(event.reading(), event.origin() == null);
+            }
+            case BusEvent.SOURCE_CLOSED -> {
+                anomalies.forget(event.source());
+                rules.forget(event.source());
+            }
+            default -> {
+            }
+        }
+    }
+}
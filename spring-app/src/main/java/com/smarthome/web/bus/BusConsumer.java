@@ -0,0 +1,11 @@
+package com.smarthome.web.bus;
+
+/**
+ * A stage of the {@link EventBus}. Each stage runs on its own thread and sees every
+ * event in publish order; {@code endOfBatch} marks the last event currently available.
+ */
+@FunctionalInterface
+public interface BusConsumer {
+
+    void onEvent(BusEvent event, boolean endOfBatch);
+}
@@ -0,0 +1,52 @@
+package com.smarthome.web.bus;
+
+import com.smarthome.web.sensor.SensorReading;
+import com.smarthome.web.tcp.TcpConnection;
+
+/**
+ * One preallocated slot of the {@link EventBus} ring. A producer fills it between
+ * claiming and publishing a sequence; consumers only read it. Fields that the
+ * {@link #type} does not use are left over from earlier laps and must be ignored.
+ */
+public final class BusEvent {
+
+    public static final int SENSOR = 1;
+    public static final int DOOR = 2;
+    public static final int COMMAND = 3;
+    /** A sensor connection went away; per-source state can be dropped. */
+    public static final int SOURCE_CLOSED = 4;
+
+    int type;
+    String source;
+    String name;
+    long ts;
+    SensorReading reading;
+    String text;
+    String target;
+    TcpConnection connection;
+    String origin;
+
+    public int type() { return type; }
+
+    /** Connection id ({@code host:port}) the event arrived on. */
+    public String source() { return source; }
+
+    /** Registered device id if any, otherwise {@link #source()}. */
+    public String name() { return name; }
+
+    public long ts() { return ts; }
+
+    public SensorReading reading() { return reading; }
+
+    /** Door event or command line. */
+    public String text() { return text; }
+
+    /** {@code TO <target>} of a received command, or null. */
+    public String target() { return target; }
+
+    /** Sender of a received command; null when it was replicated from a peer. */
+    public TcpConnection connection() { return connection; }
+
+    /** Cluster node the event was replicated from, or null when it arrived on this node. */
+    public String origin() { return origin; }
+}
@@ -0,0 +1,274 @@
+package com.smarthome.web.bus;
+
+import com.smarthome.web.sensor.SensorReading;
+import com.smarthome.web.tcp.TcpConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands events from the TCP I/O threads to the downstream stages (persistence,
+ * WebSocket fan-out, command forwarding, analytics) through a preallocated ring.
+ * <p>
+ * Producers claim a sequence with one CAS, fill the slot in place and mark it
+ * published. Every stage has its own thread and its own sequence, written only by
+ * that thread; it consumes all published events in one batch and parks when the
+ * ring is drained. A producer only waits when the slowest stage is a whole ring
+ * behind, which pushes back on the TCP peers instead of growing memory.
+ */
+@Component
+public class EventBus {
+
+    private static final int SPIN_TRIES = 200;
+
+    private final BusEvent[] slots;
+    private final int mask;
+    private final int shift;
+    /** Lap number each slot was last published for. */
+    private final AtomicIntegerArray published;
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final MeterRegistry meterRegistry;
+    private final Counter producerWaits;
+    private volatile Stage[] stages = new Stage[0];
+    private volatile long gatingCache = -1;
+    private volatile boolean running = true;
+
+    public EventBus(@Value("${smarthome.bus.capacity:65536}") int capacity, MeterRegistry meterRegistry) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new BusEvent[size];
+        for (int i = 0; i < size; i++) slots[i] = new BusEvent();
+        this.mask = size - 1;
+        this.shift = Integer.numberOfTrailingZeros(size);
+        this.published = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) published.set(i, -1);
+        this.meterRegistry = meterRegistry;
+        this.producerWaits = Counter.builder("smarthome.bus.producer.waits")
+                .description("Times a producer found the ring full").register(meterRegistry);
+        Gauge.builder("smarthome.bus.published", cursor, c -> c.get() + 1)
+                .description("Events published since start").register(meterRegistry);
+    }
+
+    /** Starts a stage that sees every event published from now on. */
+    public synchronized void addStage(String name, BusConsumer consumer) {
+        Stage stage = new Stage(name, consumer, cursor.get());
+        Stage[] next = new Stage[stages.length + 1];
+        System.arraycopy(stages, 0, next, 0, stages.length);
+        next[stages.length] = stage;
+        stages = next;
+        stage.thread.start();
+    }
+
+    public void publishSensor(SensorReading reading) {
+        publishSensor(reading, null);
+    }
+
+    /** {@code origin} is the cluster node the reading was replicated from, null for local ones. */
+    public void publishSensor(SensorReading reading, String origin) {
+        long seq = next();
+        BusEvent e = slots[(int) seq & mask];
+        e.type = BusEvent.SENSOR;
+        e.source = reading.getSource();
+        e.name = e.source;
+        e.ts = reading.getTs();
+        e.reading = reading;
+        e.origin = origin;
+        publish(seq);
+    }
+
+    public void publishDoor(TcpConnection connection, String event) {
+        publishDoor(connection.getId(), connection.getName(), System.currentTimeMillis(), event, null);
+    }
+
+    public void publishDoor(String source, String name, long ts, String event, String origin) {
+        long seq = next();
+        BusEvent e = slots[(int) seq & mask];
+        e.type = BusEvent.DOOR;
+        e.source = source;
+        e.name = name;
+        e.ts = ts;
+        e.text = event;
+        e.origin = origin;
+        publish(seq);
+    }
+
+    public void publishCommand(TcpConnection connection, String target, String cmd) {
+        publishCommand(connection.getId(), connection.getName(), System.currentTimeMillis(), target, cmd,
+                connection, null);
+    }
+
+    /** A board command replicated from a peer node; there is no local sender to skip. */
+    public void publishCommand(String source, String name, long ts, String target, String cmd, String origin) {
+        publishCommand(source, name, ts, target, cmd, null, origin);
+    }
+
+    private void publishCommand(String source, String name, long ts, String target, String cmd,
+                                TcpConnection connection, String origin) {
+        long seq = next();
+        BusEvent e = slots[(int) seq & mask];
+        e.type = BusEvent.COMMAND;
+        e.source = source;
+        e.name = name;
+        e.ts = ts;
+        e.text = cmd;
+        e.target = target;
+        e.connection = connection;
+        e.origin = origin;
+        publish(seq);
+    }
+
+    public void publishClosed(String source) {
+        publishClosed(source, null);
+    }
+
+    public void publishClosed(String source, String origin) {
+        long seq = next();
+        BusEvent e = slots[(int) seq & mask];
+        e.type = BusEvent.SOURCE_CLOSED;
+        e.source = source;
+        e.name = source;
+        e.ts = System.currentTimeMillis();
+        e.origin = origin;
+        publish(seq);
+    }
+
+    private long next() {
+        while (true) {
+            long current = cursor.get();
+            long next = current + 1;
+            long wrapPoint = next - slots.length;
+            if (wrapPoint > gatingCache) {
+                long min = minimumSequence(current);
+                gatingCache = min;
+                if (wrapPoint > min) {
+                    producerWaits.increment();
+                    LockSupport.parkNanos(1000);
+                    continue;
+                }
+            }
+            if (cursor.compareAndSet(current, next)) return next;
+        }
+    }
+
+    private void publish(long seq) {
+        published.set((int) seq & mask, (int) (seq >>> shift));
+        for (Stage stage : stages) {
+            if (stage.waiting) LockSupport.unpark(stage.thread);
+        }
+    }
+
+    private long minimumSequence(long fallback) {
+        long min = fallback;
+        for (Stage stage : stages) min = Math.min(min, stage.sequence);
+        return min;
+    }
+
+    /** Highest sequence in {@code [from, to]} below which everything is published. */
+    private long highestPublished(long from, long to) {
+        for (long s = from; s <= to; s++) {
+            if (published.get((int) s & mask) != (int) (s >>> shift)) return s - 1;
+        }
+        return to;
+    }
+
+    public Stats stats() {
+        long head = cursor.get();
+        List<StageStats> out = new ArrayList<>();
+        for (Stage stage : stages) {
+            out.add(new StageStats(stage.name, stage.processed.get(), head - stage.sequence,
+                    stage.batches.count(), stage.batches.mean(), (long) stage.errors.count(),
+                    stage.timer.mean(TimeUnit.MICROSECONDS)));
+        }
+        return new Stats(slots.length, head + 1, (long) producerWaits.count(), out);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        for (Stage stage : stages) LockSupport.unpark(stage.thread);
+    }
+
+    public record Stats(int capacity, long published, long producerWaits, List<StageStats> stages) {
+    }
+
+    public record StageStats(String name, long processed, long lag, long batches, double meanBatch,
+                             long errors, double meanBatchMicros) {
+    }
+
+    private final class Stage implements Runnable {
+
+        final String name;
+        final BusConsumer consumer;
+        final Thread thread;
+        final AtomicLong processed = new AtomicLong();
+        final DistributionSummary batches;
+        final Timer timer;
+        final Counter errors;
+        /** Last sequence this stage has handled; written only by its thread. */
+        volatile long sequence;
+        volatile boolean waiting;
+
+        Stage(String name, BusConsumer consumer, long start) {
+            this.name = name;
+            this.consumer = consumer;
+            this.sequence = start;
+            this.thread = new Thread(this, "bus-" + name);
+            thread.setDaemon(true);
+            this.batches = DistributionSummary.builder("smarthome.bus.batch")
+                    .tag("stage", name).description("Events handled per batch").register(meterRegistry);
+            this.timer = Timer.builder("smarthome.bus.stage")
+                    .tag("stage", name).description("Time per batch").register(meterRegistry);
+            this.errors = Counter.builder("smarthome.bus.errors")
+                    .tag("stage", name).description("Events whose handler threw").register(meterRegistry);
+            Gauge.builder("smarthome.bus.lag", this, s -> cursor.get() - s.sequence)
+                    .tag("stage", name).description("Events published but not yet handled").register(meterRegistry);
+        }
+
+        @Override
+        public void run() {
+            long next = sequence + 1;
+            int idle = 0;
+            while (running) {
+                long available = highestPublished(next, cursor.get());
+                if (available < next) {
+                    if (++idle < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    // announce before the last look so a publisher either sees the flag or we see its event
+                    waiting = true;
+                    if (highestPublished(next, cursor.get()) < next) LockSupport.park(this);
+                    waiting = false;
+                    idle = 0;
+                    continue;
+                }
+                idle = 0;
+                long start = System.nanoTime();
+                for (long s = next; s <= available; s++) {
+                    try {
+                        consumer.onEvent(slots[(int) s & mask], s == available);
+                    } catch (RuntimeException e) {
+                        errors.increment();
+                    }
+                }
+                int count = (int) (available - next + 1);
+                sequence = available;
+                processed.addAndGet(count);
+                batches.record(count);
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                next = available + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.smarthome.web.bus;
+
+import com.smarthome.web.sensor.SensorConflator;
+import com.smarthome.web.shadow.DeviceShadow;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import org.springframework.stereotype.Component;
+
+/** Updates the device shadow and pushes events to the WebSocket sessions. */
+@Component
+public class FanOutStage implements BusConsumer {
+
+    private final SensorConflator conflator;
+    private final WebSocketBroadcaster broadcaster;
+    private final DeviceShadow shadow;
+
+    public FanOutStage(EventBus bus, SensorConflator conflator, WebSocketBroadcaster broadcaster,
+                       DeviceShadow shadow) {
+        this.conflator = conflator;
+        this.broadcaster = broadcaster;
+        this.shadow = shadow;
+        bus.addStage("fanout", this);
+    }
+
+    @Override
+    public void onEvent(BusEvent event, boolean endOfBatch) {
+        switch (event.type()) {
+            case BusEvent.SENSOR -> conflator.submit(event.reading());
+            case BusEvent.SOURCE_CLOSED -> conflator.forget(event.source());
+            case BusEvent.DOOR -> {
+                broadcaster.broadcast("door_event", event.name(), event.text());
+                shadow.applyDoorEvent(event.text());
+            }
+            case BusEvent.COMMAND -> {
+                broadcaster.broadcast("from_python", event.name(), event.text());
+                shadow.applyCommand(event.text());
+            }
+            default -> {
+            }
+        }
+    }
+}
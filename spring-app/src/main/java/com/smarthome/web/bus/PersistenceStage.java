@@ -0,0 +1,34 @@
+package com.smarthome.web.bus;
+
+import com.smarthome.web.history.SensorHistoryStore;
+import com.smarthome.web.journal.EventJournal;
+import com.smarthome.web.journal.JournalEntry;
+import org.springframework.stereotype.Component;
+
+/** Journals every event and appends sensor readings to the history store. */
+@Component
+public class PersistenceStage implements BusConsumer {
+
+    private final EventJournal journal;
+    private final SensorHistoryStore history;
+
+    public PersistenceStage(EventBus bus, EventJournal journal, SensorHistoryStore history) {
+        this.journal = journal;
+        this.history = history;
+        bus.addStage("persistence", this);
+    }
+
+    @Override
+    public void onEvent(BusEvent event, boolean endOfBatch) {
+        switch (event.type()) {
+            case BusEvent.SENSOR -> {
+                journal.appendSensor(event.reading());
+                history.append(event.reading());
+            }
+            case BusEvent.DOOR -> journal.appendText(JournalEntry.DOOR_EVENT, event.source(), event.text());
+            case BusEvent.COMMAND -> journal.appendText(JournalEntry.COMMAND_RECEIVED, event.source(), event.text());
+            default -> {
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.smarthome.web.cluster;
+
+import com.smarthome.web.bus.BusEvent;
+import com.smarthome.web.sensor.SensorReading;
+
+/**
+ * Tab-separated text records replicated between nodes, one per line:
+ * <pre>
+ * S source ts mask gas methan temp humi pm1 pm25 pm10 pir   sensor reading
+ * D source name ts event                                   door event
+ * C source name ts target command                          command from a board
+ * X source                                                 sensor connection closed
+ * W target command                                         command from the web side
+ * </pre>
+ * An empty target means capability routing. Board lines never contain tabs or line
+ * breaks, but free text is cleaned anyway so a record always stays one line.
+ */
+final class ClusterCodec {
+
+    static final char SENSOR = 'S';
+    static final char DOOR = 'D';
+    static final char BOARD_COMMAND = 'C';
+    static final char CLOSED = 'X';
+    static final char WEB_COMMAND = 'W';
+
+    private ClusterCodec() {
+    }
+
+    /** Record for a local bus event, or null for types that are not replicated. */
+    static String encode(BusEvent e) {
+        return switch (e.type()) {
+            case BusEvent.SENSOR -> sensor(e.reading());
+            case BusEvent.DOOR -> join(DOOR, e.source(), e.name(), Long.toString(e.ts()), e.text());
+            case BusEvent.COMMAND -> join(BOARD_COMMAND, e.source(), e.name(), Long.toString(e.ts()),
+                    e.target(), e.text());
+            case BusEvent.SOURCE_CLOSED -> join(CLOSED, e.source());
+            default -> null;
+        };
+    }
+
+    static String webCommand(String target, String cmd) {
+        return join(WEB_COMMAND, target, cmd);
+    }
+
+    private static String sensor(SensorReading r) {
+        StringBuilder sb = new StringBuilder(96).append(SENSOR);
+        sb.append('\t').append(clean(r.getSource()));
+        sb.append('\t').append(r.getTs());
+        sb.append('\t').append(r.getFieldMask());
+        sb.append('\t').append(r.getGas());
+        sb.append('\t').append(r.getMethan());
+        sb.append('\t').append(r.getTemp());
+        sb.append('\t').append(r.getHumi());
+        sb.append('\t').append(r.getPm1());
+        sb.append('\t').append(r.getPm25());
+        sb.append('\t').append(r.getPm10());
+        sb.append('\t').append(r.getPir());
+        return sb.toString();
+    }
+
+    /** Rebuilds a reading from the fields of an {@code S} record. */
+    static SensorReading reading(String[] f) {
+        SensorReading r = new SensorReading();
+        r.restore(Integer.parseInt(f[3]), Integer.parseInt(f[4]), Integer.parseInt(f[5]),
+                Double.parseDouble(f[6]), Double.parseDouble(f[7]), Integer.parseInt(f[8]),
+                Integer.parseInt(f[9]), Integer.parseInt(f[10]), Integer.parseInt(f[11]));
+        r.setOrigin(f[1], Long.parseLong(f[2]));
+        return r;
+    }
+
+    static String[] split(String record) {
+        return record.split("\t", -1);
+    }
+
+    /** Empty fields decode as null. */
+    static String field(String[] f, int i) {
+        return f[i].isEmpty() ? null : f[i];
+    }
+
+    private static String join(char kind, String... fields) {
+        StringBuilder sb = new StringBuilder(64).append(kind);
+        for (String field : fields) sb.append('\t').append(clean(field));
+        return sb.toString();
+    }
+
+    private static String clean(String s) {
+        if (s == null) return "";
+        return s.indexOf('\t') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0
+                ? s : s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
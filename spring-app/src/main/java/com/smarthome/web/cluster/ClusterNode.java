@@ -0,0 +1,467 @@
+package com.smarthome.web.cluster;
+
+import com.smarthome.web.bus.BusConsumer;
+import com.smarthome.web.bus.BusEvent;
+import com.smarthome.web.bus.EventBus;
+import com.smarthome.web.tcp.TcpCommandServer;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cluster mode: several spring-app nodes share every board event, so a dashboard
+ * on any node sees the boards connected to all of them.
+ * <p>
+ * Each node appends the events that arrive on its own TCP bridges (sensor readings,
+ * door events, board commands, closed connections) and the commands sent from its
+ * web side to a {@link ReplicationLog}, and a {@link PeerLink} per peer pushes that
+ * log over TCP. A receiving node keeps the next expected sequence per origin node
+ * and run ({@code epoch}), drops duplicates, counts what was lost, and publishes the
+ * rest into its own {@link EventBus} marked with the origin. From there the usual
+ * stages journal it, update the shadow and fan out to this node's own sessions, so
+ * each event reaches each session exactly once, through the node it is connected to.
+ * Automation rules only send commands for readings of the node's own boards.
+ * <p>
+ * Membership starts from {@code smarthome.cluster.peers} and grows from the
+ * {@code HELLO} and {@code PING} lines of other nodes, so a new node only needs one
+ * existing member in its list.
+ */
+@Component
+public class ClusterNode implements BusConsumer {
+
+    final boolean enabled;
+    final String nodeId;
+    final long epoch = System.currentTimeMillis();
+    final String advertise;
+    final long heartbeatMs;
+    final long suspectMs;
+    final int connectTimeoutMs;
+    final long backoffMinMs;
+    final long backoffMaxMs;
+    volatile boolean running;
+
+    private final int port;
+    private final List<String> seeds;
+    private final ReplicationLog log;
+    private final EventBus bus;
+    private final TcpCommandServer commandServer;
+    private final WebSocketBroadcaster broadcaster;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, PeerLink> links = new ConcurrentHashMap<>();
+    private final Set<String> selfAddresses = ConcurrentHashMap.newKeySet();
+    private final Map<String, Origin> origins = new ConcurrentHashMap<>();
+    private final AtomicInteger inboundThreads = new AtomicInteger();
+    private final Counter replicated;
+    private final Counter duplicates;
+    private final Counter lost;
+    private final Counter gapFilled;
+    private final Counter rejected;
+    private ServerSocket server;
+
+    public ClusterNode(EventBus bus, TcpCommandServer commandServer, WebSocketBroadcaster broadcaster,
+                       MeterRegistry meterRegistry,
+                       @Value("${smarthome.cluster.enabled:false}") boolean enabled,
+                       @Value("${smarthome.cluster.node-id:}") String nodeId,
+                       @Value("${smarthome.cluster.port:39190}") int port,
+                       @Value("${smarthome.cluster.advertise:}") String advertise,
+                       @Value("${smarthome.cluster.peers:}") List<String> peers,
+                       @Value("${smarthome.cluster.retain:65536}") int retain,
+                       @Value("${smarthome.cluster.heartbeat-ms:1000}") long heartbeatMs,
+                       @Value("${smarthome.cluster.suspect-ms:5000}") long suspectMs,
+                       @Value("${smarthome.cluster.connect-timeout-ms:1000}") int connectTimeoutMs,
+                       @Value("${smarthome.cluster.backoff-min-ms:100}") long backoffMinMs,
+                       @Value("${smarthome.cluster.backoff-max-ms:5000}") long backoffMaxMs) {
+        this.bus = bus;
+        this.commandServer = commandServer;
+        this.broadcaster = broadcaster;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.port = port;
+        this.advertise = !advertise.isBlank() ? advertise.trim()
+                : (enabled ? localHost() : InetAddress.getLoopbackAddress().getHostAddress()) + ":" + port;
+        this.nodeId = nodeId.isBlank() ? this.advertise : nodeId.trim();
+        this.seeds = peers;
+        this.log = new ReplicationLog(enabled ? retain : 2);
+        this.heartbeatMs = Math.max(10, heartbeatMs);
+        this.suspectMs = Math.max(this.heartbeatMs * 2, suspectMs);
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.backoffMinMs = Math.max(1, backoffMinMs);
+        this.backoffMaxMs = Math.max(this.backoffMinMs, backoffMaxMs);
+        selfAddresses.add(this.advertise);
+
+        this.replicated = Counter.builder("smarthome.cluster.replicated")
+                .description("Local events appended to the replication log").register(meterRegistry);
+        this.duplicates = Counter.builder("smarthome.cluster.duplicates")
+                .description("Replicated events dropped because they were already applied").register(meterRegistry);
+        this.lost = Counter.builder("smarthome.cluster.lost")
+                .description("Replicated events skipped by a gap that could not be filled").register(meterRegistry);
+        this.gapFilled = Counter.builder("smarthome.cluster.gapfill")
+                .description("Events resent to a peer that reconnected").register(meterRegistry);
+        this.rejected = Counter.builder("smarthome.cluster.rejected")
+                .description("Replicated records that could not be decoded").register(meterRegistry);
+        Gauge.builder("smarthome.cluster.members", this, n -> n.membersUp())
+                .description("Peer nodes currently streaming to this node").register(meterRegistry);
+
+        if (enabled) {
+            bus.addStage("cluster", this);
+            commandServer.setForwarder(this::forwardCommand);
+        }
+    }
+
+    public void start() {
+        if (!enabled || running) return;
+        running = true;
+        try {
+            ServerSocket s = new ServerSocket();
+            s.setReuseAddress(true);
+            s.bind(new InetSocketAddress(port));
+            server = s;
+            Thread acceptor = new Thread(this::acceptLoop, "cluster-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            broadcaster.broadcast("info", "Cluster node " + nodeId + " listening on " + port);
+        } catch (IOException e) {
+            broadcaster.broadcast("error", "Cluster listener failed: " + e.getMessage());
+        }
+        for (String peer : seeds) learn(peer);
+    }
+
+    /** Replicates the events that arrived on this node; replicated ones carry an origin. */
+    @Override
+    public void onEvent(BusEvent event, boolean endOfBatch) {
+        if (event.origin() != null) return;
+        String record = ClusterCodec.encode(event);
+        if (record != null) append(record);
+    }
+
+    private int forwardCommand(String target, String cmd) {
+        append(ClusterCodec.webCommand(target, cmd));
+        int up = 0;
+        for (PeerLink link : links.values()) {
+            if (link.state == PeerLink.State.UP) up++;
+        }
+        return up;
+    }
+
+    private void append(String record) {
+        log.append(record);
+        replicated.increment();
+    }
+
+    /** Starts a link to {@code address} unless it is this node or already known. */
+    void learn(String address) {
+        String a = address.trim();
+        if (a.isEmpty() || selfAddresses.contains(a) || links.containsKey(a) || !running) return;
+        try {
+            PeerLink.parse(a);
+        } catch (IllegalArgumentException e) {
+            broadcaster.broadcast("warn", "Cluster peer ignored: " + e.getMessage());
+            return;
+        }
+        PeerLink link = new PeerLink(a, this, log);
+        if (links.putIfAbsent(a, link) != null) return;
+        FunctionCounter.builder("smarthome.cluster.sent", link, l -> l.sent.get())
+                .tag("peer", a).description("Records written to the peer").register(meterRegistry);
+        Gauge.builder("smarthome.cluster.lag", link, PeerLink::lag)
+                .tag("peer", a).description("Records not yet confirmed by the peer").register(meterRegistry);
+        link.start();
+    }
+
+    void markSelf(PeerLink link) {
+        selfAddresses.add(link.address);
+    }
+
+    void linkUp(PeerLink link) {
+        broadcaster.broadcast("info", "Cluster link to " + link.peerId + " (" + link.address + ") up");
+    }
+
+    void linkDown(PeerLink link) {
+        broadcaster.broadcast("warn", "Cluster link to " + link.peerId + " (" + link.address + ") down");
+    }
+
+    void recordLost(long n) {
+        lost.increment(n);
+    }
+
+    void recordGapFill(long n) {
+        gapFilled.increment(n);
+    }
+
+    /** This node and every peer address it knows, for the {@code PING} line. */
+    String memberList() {
+        StringBuilder sb = new StringBuilder(advertise);
+        for (PeerLink link : links.values()) {
+            if (link.state != PeerLink.State.SELF) sb.append(',').append(link.address);
+        }
+        return sb.toString();
+    }
+
+    private int membersUp() {
+        int up = 0;
+        long now = System.currentTimeMillis();
+        for (Origin o : origins.values()) {
+            if (o.state(now, heartbeatMs).equals("UP")) up++;
+        }
+        return up;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                if (running) broadcaster.broadcast("error", "Cluster accept failed: " + e.getMessage());
+                return;
+            }
+            Thread t = new Thread(() -> serve(socket), "cluster-in-" + inboundThreads.incrementAndGet());
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /** One inbound stream from a peer's {@link PeerLink}. */
+    private void serve(Socket socket) {
+        Origin origin = null;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout((int) suspectMs);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 64 * 1024);
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            String[] hello = split(in.readLine());
+            if (hello.length < 4 || !hello[0].equals("HELLO")) return;
+            String id = hello[1];
+            long peerEpoch = Long.parseLong(hello[2]);
+            origin = handshake(id, peerEpoch, hello[3], socket);
+            out.write("RESUME\t" + nodeId + '\t' + (id.equals(nodeId) ? -1 : origin.next) + '\n');
+            out.flush();
+            if (id.equals(nodeId)) return;
+            learn(hello[3]);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!onLine(origin, socket, line, out)) return;
+            }
+        } catch (SocketTimeoutException e) {
+            // no PING within the suspect time: let the peer reconnect
+        } catch (IOException | RuntimeException ignored) {
+        } finally {
+            if (origin != null) disconnected(origin, socket);
+        }
+    }
+
+    private Origin handshake(String id, long peerEpoch, String address, Socket socket) {
+        if (id.equals(nodeId)) return new Origin(id);
+        Origin origin = origins.computeIfAbsent(id, k -> {
+            Origin o = new Origin(k);
+            o.received = Counter.builder("smarthome.cluster.received").tag("origin", k)
+                    .description("Replicated events applied from the origin node").register(meterRegistry);
+            return o;
+        });
+        Socket previous;
+        boolean restarted;
+        synchronized (origin) {
+            restarted = origin.epoch != 0 && origin.epoch != peerEpoch;
+            if (origin.epoch != peerEpoch) {
+                origin.epoch = peerEpoch;
+                origin.next = 0;
+                origin.head = 0;
+            }
+            previous = origin.socket;
+            origin.socket = socket;
+            origin.address = address;
+            origin.lastHeard = System.currentTimeMillis();
+        }
+        if (previous != null) {
+            try { previous.close(); } catch (IOException ignored) {}
+        } else {
+            broadcaster.broadcast("info", "Cluster node " + id + (restarted ? " restarted" : " joined")
+                    + " (" + address + ")");
+        }
+        return origin;
+    }
+
+    /** Returns false once a newer connection from the same origin has taken over. */
+    private boolean onLine(Origin origin, Socket socket, String line, BufferedWriter out) throws IOException {
+        synchronized (origin) {
+            if (origin.socket != socket) return false;
+            origin.lastHeard = System.currentTimeMillis();
+            if (line.startsWith("E\t")) {
+                int tab = line.indexOf('\t', 2);
+                long seq = Long.parseLong(line.substring(2, tab));
+                if (seq < origin.next) {
+                    origin.duplicates++;
+                    duplicates.increment();
+                    return true;
+                }
+                if (seq > origin.next) {
+                    origin.lost += seq - origin.next;
+                    lost.increment(seq - origin.next);
+                }
+                origin.next = seq + 1;
+                apply(line.substring(tab + 1), origin);
+            } else if (line.startsWith("GAP\t")) {
+                String[] f = split(line);
+                long to = Long.parseLong(f[2]);
+                if (to > origin.next) {
+                    origin.lost += to - origin.next;
+                    lost.increment(to - origin.next);
+                    origin.next = to;
+                }
+            } else if (line.startsWith("PING\t")) {
+                String[] f = split(line);
+                origin.head = Long.parseLong(f[1]);
+                out.write("ACK\t" + origin.next + '\n');
+                out.flush();
+                if (f.length > 2) {
+                    for (String member : f[2].split(",")) learn(member);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void apply(String record, Origin origin) {
+        String[] f = ClusterCodec.split(record);
+        try {
+            switch (record.charAt(0)) {
+                case ClusterCodec.SENSOR -> bus.publishSensor(ClusterCodec.reading(f), origin.id);
+                case ClusterCodec.DOOR -> bus.publishDoor(f[1], f[2], Long.parseLong(f[3]), f[4], origin.id);
+                case ClusterCodec.BOARD_COMMAND -> bus.publishCommand(f[1], f[2], Long.parseLong(f[3]),
+                        ClusterCodec.field(f, 4), f[5], origin.id);
+                case ClusterCodec.CLOSED -> bus.publishClosed(f[1], origin.id);
+                case ClusterCodec.WEB_COMMAND -> commandServer.sendCommandFromPeer(ClusterCodec.field(f, 1), f[2]);
+                default -> {
+                    rejected.increment();
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            rejected.increment();
+            return;
+        }
+        origin.applied++;
+        origin.received.increment();
+    }
+
+    private void disconnected(Origin origin, Socket socket) {
+        boolean last;
+        synchronized (origin) {
+            last = origin.socket == socket;
+            if (last) origin.socket = null;
+        }
+        if (last) broadcaster.broadcast("warn", "Cluster node " + origin.id + " left (" + origin.address + ")");
+    }
+
+    public Stats stats() {
+        long now = System.currentTimeMillis();
+        List<PeerStats> peers = new ArrayList<>();
+        for (PeerLink link : links.values()) {
+            peers.add(new PeerStats(link.address, link.peerId, link.state.name(), link.sent.get(), link.acked,
+                    link.lag(), link.gapFilled.get(), link.lost.get(), link.connects.get()));
+        }
+        List<OriginStats> from = new ArrayList<>();
+        for (Origin o : origins.values()) {
+            synchronized (o) {
+                from.add(new OriginStats(o.id, o.address, o.state(now, heartbeatMs), o.epoch, o.next,
+                        Math.max(0, o.head - o.next), o.applied, o.duplicates, o.lost, now - o.lastHeard));
+            }
+        }
+        return new Stats(enabled, nodeId, epoch, advertise, broadcaster.sessionStats().size(),
+                log.head(), log.oldest(), log.capacity(), peers, from);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (server != null) {
+            try { server.close(); } catch (IOException ignored) {}
+        }
+        links.values().forEach(PeerLink::stop);
+        for (Origin o : origins.values()) {
+            Socket s = o.socket;
+            if (s != null) {
+                try { s.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private static String[] split(String line) {
+        return line == null ? new String[0] : line.split("\t");
+    }
+
+    private static String localHost() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            return InetAddress.getLoopbackAddress().getHostAddress();
+        }
+    }
+
+    /**
+     * {@code sessions} counts this node's own WebSocket sessions. Per peer: records
+     * written, the sequence the peer confirmed, records resent after a reconnect and
+     * records it missed for good. Per origin: the next sequence expected, how far
+     * behind the origin's head that is, and events applied, duplicated and lost.
+     */
+    public record Stats(boolean enabled, String node, long epoch, String address, int sessions,
+                        long logHead, long logOldest, int logCapacity,
+                        List<PeerStats> peers, List<OriginStats> origins) {
+    }
+
+    public record PeerStats(String address, String node, String state, long sent, long acked, long lag,
+                            long gapFilled, long lost, long connects) {
+    }
+
+    public record OriginStats(String node, String address, String state, long epoch, long next, long behind,
+                              long applied, long duplicates, long lost, long silentMs) {
+    }
+
+    /** What this node has received from one peer; guarded by its own monitor. */
+    private static final class Origin {
+
+        final String id;
+        Counter received;
+        String address;
+        long epoch;
+        long next;
+        long head;
+        long applied;
+        long duplicates;
+        long lost;
+        long lastHeard;
+        volatile Socket socket;
+
+        Origin(String id) {
+            this.id = id;
+        }
+
+        String state(long now, long heartbeatMs) {
+            if (socket == null) return "DOWN";
+            return now - lastHeard <= heartbeatMs * 2 ? "UP" : "SUSPECT";
+        }
+    }
+}
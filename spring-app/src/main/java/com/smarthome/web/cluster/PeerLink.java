@@ -0,0 +1,204 @@
+package com.smarthome.web.cluster;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes this node's {@link ReplicationLog} to one peer. The link dials the peer,
+ * says {@code HELLO}, and the peer answers with the sequence it wants next, so a
+ * reconnect replays exactly what the peer missed while the records are still held.
+ * Older ones are announced with {@code GAP}. A {@code PING} every heartbeat carries
+ * the log head and the members this node knows; the peer answers with {@code ACK}
+ * and its position, and a peer silent for longer than the suspect time is dropped.
+ */
+final class PeerLink implements Runnable {
+
+    private static final int BATCH = 256;
+
+    enum State { CONNECTING, UP, SELF }
+
+    final String address;
+    private final ClusterNode node;
+    private final ReplicationLog log;
+    private final Thread thread;
+    final AtomicLong sent = new AtomicLong();
+    final AtomicLong gapFilled = new AtomicLong();
+    final AtomicLong lost = new AtomicLong();
+    final AtomicLong connects = new AtomicLong();
+    volatile State state = State.CONNECTING;
+    volatile String peerId;
+    /** Next sequence the peer has confirmed it wants. */
+    volatile long acked;
+
+    private Socket socket;
+    private BufferedWriter out;
+    private BufferedReader in;
+    private long cursor;
+    private long resumeUntil;
+    private long lastAckAt;
+
+    PeerLink(String address, ClusterNode node, ReplicationLog log) {
+        this.address = address;
+        this.node = node;
+        this.log = log;
+        this.thread = new Thread(this, "cluster-out-" + address);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        thread.interrupt();
+        disconnect();
+    }
+
+    /** Records written but not yet confirmed by the peer. */
+    long lag() {
+        return state == State.UP ? Math.max(0, log.head() - acked) : 0;
+    }
+
+    @Override
+    public void run() {
+        long backoff = node.backoffMinMs;
+        while (node.running && state != State.SELF && !Thread.currentThread().isInterrupted()) {
+            if (!connect()) {
+                if (state == State.SELF) break;
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(
+                        backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1)));
+                backoff = Math.min(node.backoffMaxMs, backoff * 2);
+                continue;
+            }
+            backoff = node.backoffMinMs;
+            try {
+                pump();
+            } catch (IOException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            disconnect();
+            node.linkDown(this);
+        }
+        disconnect();
+    }
+
+    private boolean connect() {
+        Socket s = new Socket();
+        socket = s;
+        try {
+            s.setTcpNoDelay(true);
+            s.connect(parse(address), node.connectTimeoutMs);
+            s.setSoTimeout((int) node.suspectMs);
+            out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), 64 * 1024);
+            in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            out.write("HELLO\t" + node.nodeId + '\t' + node.epoch + '\t' + node.advertise + '\n');
+            out.flush();
+            String line = in.readLine();
+            String[] resume = line != null ? line.split("\t") : new String[0];
+            if (resume.length < 3 || !resume[0].equals("RESUME")) throw new IOException("bad handshake");
+            if (resume[1].equals(node.nodeId)) {
+                state = State.SELF;
+                node.markSelf(this);
+                disconnect();
+                return false;
+            }
+            peerId = resume[1];
+            long head = log.head();
+            // a peer ahead of our head remembers an earlier run under the same epoch; start over
+            long next = Long.parseLong(resume[2]);
+            cursor = next >= 0 && next <= head ? next : 0;
+            acked = cursor;
+            resumeUntil = head;
+            lastAckAt = System.currentTimeMillis();
+            connects.incrementAndGet();
+            state = State.UP;
+            node.linkUp(this);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            disconnect();
+            return false;
+        }
+    }
+
+    private void pump() throws IOException, InterruptedException {
+        String[] batch = new String[BATCH];
+        long lastPing = 0;
+        while (node.running) {
+            readAcks();
+            long now = System.currentTimeMillis();
+            if (now - lastAckAt > node.suspectMs) throw new IOException("peer silent");
+            if (now - lastPing >= node.heartbeatMs) {
+                out.write("PING\t" + log.head() + '\t' + node.memberList() + '\n');
+                out.flush();
+                lastPing = now;
+            }
+            long oldest = log.oldest();
+            if (cursor < oldest) {
+                out.write("GAP\t" + cursor + '\t' + oldest + '\n');
+                lost.addAndGet(oldest - cursor);
+                node.recordLost(oldest - cursor);
+                cursor = oldest;
+            }
+            int n;
+            try {
+                n = log.read(cursor, batch, node.heartbeatMs);
+            } catch (IllegalStateException overwritten) {
+                continue;
+            }
+            if (n == 0) continue;
+            for (int i = 0; i < n; i++) {
+                out.write("E\t");
+                out.write(Long.toString(cursor + i));
+                out.write('\t');
+                out.write(batch[i]);
+                out.write('\n');
+                batch[i] = null;
+            }
+            if (cursor < resumeUntil) {
+                long replayed = Math.min(n, resumeUntil - cursor);
+                gapFilled.addAndGet(replayed);
+                node.recordGapFill(replayed);
+            }
+            cursor += n;
+            sent.addAndGet(n);
+            out.flush();
+        }
+    }
+
+    private void readAcks() throws IOException {
+        while (in.ready()) {
+            String line = in.readLine();
+            if (line == null) throw new IOException("peer closed");
+            if (line.startsWith("ACK\t")) {
+                acked = Long.parseLong(line.substring(4).trim());
+                lastAckAt = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private synchronized void disconnect() {
+        Socket s = socket;
+        socket = null;
+        if (state == State.UP) state = State.CONNECTING;
+        if (s != null) {
+            try { s.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    static InetSocketAddress parse(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) throw new IllegalArgumentException("expected host:port, got '" + address + "'");
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+}
@@ -0,0 +1,55 @@
+package com.smarthome.web.cluster;
+
+/**
+ * The last {@code capacity} records this node originated, numbered from 0 for the
+ * life of the process. Each peer link reads it from its own cursor, so a slow or
+ * reconnecting peer costs a position in the ring rather than a queue, and resuming
+ * after a disconnect is a matter of starting from the peer's next sequence.
+ */
+final class ReplicationLog {
+
+    private final String[] records;
+    private final int mask;
+    private long head;
+
+    ReplicationLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.records = new String[size];
+        this.mask = size - 1;
+    }
+
+    /** Returns the sequence given to {@code record}. */
+    synchronized long append(String record) {
+        records[(int) head & mask] = record;
+        long seq = head++;
+        notifyAll();
+        return seq;
+    }
+
+    /** Sequence the next record will get. */
+    synchronized long head() {
+        return head;
+    }
+
+    /** Lowest sequence still held. */
+    synchronized long oldest() {
+        return Math.max(0, head - records.length);
+    }
+
+    /**
+     * Copies records from {@code from} on into {@code into}, waiting up to
+     * {@code waitMs} when there are none yet. {@code from} must not be below
+     * {@link #oldest()}. Returns the number copied.
+     */
+    synchronized int read(long from, String[] into, long waitMs) throws InterruptedException {
+        if (from >= head && waitMs > 0) wait(waitMs);
+        if (from < head - records.length) throw new IllegalStateException("sequence " + from + " was overwritten");
+        int n = (int) Math.min(into.length, head - from);
+        for (int i = 0; i < n; i++) into[i] = records[(int) (from + i) & mask];
+        return Math.max(0, n);
+    }
+
+    int capacity() {
+        return records.length;
+    }
+}
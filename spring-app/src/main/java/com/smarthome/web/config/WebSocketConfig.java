@@ -1,24 +1,102 @@
 package com.smarthome.web.config;
 
+import com.smarthome.web.ws.BinaryProtocol;
 import com.smarthome.web.ws.ControlWebSocketHandler;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.server.ServerEndpointConfig;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.StandardWebSocketUpgradeStrategy;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
     private final ControlWebSocketHandler handler;
+    private final boolean deflate;
 
-    public WebSocketConfig(ControlWebSocketHandler handler) {
+    public WebSocketConfig(ControlWebSocketHandler handler,
+                           @Value("${smarthome.ws.deflate:true}") boolean deflate) {
         this.handler = handler;
+        this.deflate = deflate;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        DefaultHandshakeHandler handshakeHandler = new DefaultHandshakeHandler(new UpgradeStrategy(deflate));
+        // clients asking for no subprotocol keep the JSON text protocol
+        handshakeHandler.setSupportedProtocols(BinaryProtocol.SUBPROTOCOL);
         registry.addHandler(handler, "/ws")
+                .setHandshakeHandler(handshakeHandler)
                 .setAllowedOrigins("*");
     }
+
+    /**
+     * Accepts permessage-deflate (RFC 7692) when the client offers it, which the
+     * container does by itself, unless {@code smarthome.ws.deflate} is off; then the
+     * offer is removed from the request before the upgrade. The container keeps one
+     * compression context per session, so repeated field names and unchanged values
+     * cost a few bits. Turning it off saves the CPU where bandwidth is plentiful.
+     */
+    private static final class UpgradeStrategy extends StandardWebSocketUpgradeStrategy {
+
+        private final boolean deflate;
+
+        UpgradeStrategy(boolean deflate) {
+            this.deflate = deflate;
+        }
+
+        @Override
+        protected void upgradeHttpToWebSocket(HttpServletRequest request, HttpServletResponse response,
+                                              ServerEndpointConfig endpointConfig,
+                                              Map<String, String> pathParams) throws Exception {
+            super.upgradeHttpToWebSocket(deflate ? request : new WithoutDeflate(request), response,
+                    endpointConfig, pathParams);
+        }
+    }
+
+    private static final class WithoutDeflate extends HttpServletRequestWrapper {
+
+        WithoutDeflate(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            Enumeration<String> values = super.getHeaders(name);
+            if (!WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS.equalsIgnoreCase(name)) return values;
+            List<String> kept = new ArrayList<>();
+            while (values.hasMoreElements()) {
+                for (String offer : values.nextElement().split(",")) {
+                    String extension = offer.trim();
+                    int params = extension.indexOf(';');
+                    String extensionName = params < 0 ? extension : extension.substring(0, params).trim();
+                    if (!extension.isEmpty() && !PERMESSAGE_DEFLATE.equalsIgnoreCase(extensionName)) kept.add(extension);
+                }
+            }
+            return Collections.enumeration(kept);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (!WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS.equalsIgnoreCase(name)) return super.getHeader(name);
+            Enumeration<String> values = getHeaders(name);
+            return values.hasMoreElements() ? String.join(", ", Collections.list(values)) : null;
+        }
+    }
 }
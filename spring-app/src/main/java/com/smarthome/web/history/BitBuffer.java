@@ -0,0 +1,81 @@
+package com.smarthome.web.history;
+
+import java.util.Arrays;
+
+/**
+ * Append-only bit stream over a {@code long[]}, most significant bit first.
+ */
+final class BitBuffer {
+
+    private long[] words;
+    private int bits;
+
+    BitBuffer(int initialWords) {
+        words = new long[Math.max(1, initialWords)];
+    }
+
+    int bitLength() {
+        return bits;
+    }
+
+    int byteSize() {
+        return words.length * Long.BYTES;
+    }
+
+    void trim() {
+        int used = (bits + 63) >>> 6;
+        if (used < words.length) words = Arrays.copyOf(words, Math.max(1, used));
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /** Writes the low {@code n} bits of {@code value}, 1 <= n <= 64. */
+    void writeBits(long value, int n) {
+        if (n < 64) value &= (1L << n) - 1;
+        int index = bits >>> 6;
+        int offset = bits & 63;
+        ensure(index + 2);
+        int free = 64 - offset;
+        if (n <= free) {
+            words[index] |= value << (free - n);
+        } else {
+            int spill = n - free;
+            words[index] |= value >>> spill;
+            words[index + 1] |= value << (64 - spill);
+        }
+        bits += n;
+    }
+
+    private void ensure(int size) {
+        if (size > words.length) words = Arrays.copyOf(words, Math.max(size, words.length * 2));
+    }
+
+    Reader reader() {
+        return new Reader();
+    }
+
+    final class Reader {
+        private int pos;
+
+        boolean readBit() {
+            return readBits(1) != 0;
+        }
+
+        long readBits(int n) {
+            int index = pos >>> 6;
+            int offset = pos & 63;
+            int free = 64 - offset;
+            long value;
+            if (n <= free) {
+                value = words[index] >>> (free - n);
+            } else {
+                int spill = n - free;
+                value = (words[index] << spill) | (words[index + 1] >>> (64 - spill));
+            }
+            pos += n;
+            return n == 64 ? value : value & ((1L << n) - 1);
+        }
+    }
+}
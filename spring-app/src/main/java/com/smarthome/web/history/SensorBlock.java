@@ -0,0 +1,191 @@
+package com.smarthome.web.history;
+
+import com.smarthome.web.sensor.SensorChannel;
+import com.smarthome.web.sensor.SensorReading;
+
+/**
+ * A Gorilla-style compressed block of readings from one source: timestamps are
+ * delta-of-delta encoded and each channel is XOR encoded against its previous
+ * value, each in its own bit stream so a query decodes only the channel it needs.
+ */
+final class SensorBlock {
+
+    private final int capacity;
+    private final BitBuffer times;
+    private final BitBuffer[] values;
+    private final long[] prevValueBits;
+    private final int[] prevLeading;
+    private final int[] prevTrailing;
+
+    private int count;
+    private long firstTs;
+    private long lastTs;
+    private long prevDelta;
+    private boolean sealed;
+
+    SensorBlock(int capacity) {
+        this.capacity = capacity;
+        int channels = SensorChannel.count();
+        this.times = new BitBuffer(capacity / 32 + 2);
+        this.values = new BitBuffer[channels];
+        for (int i = 0; i < channels; i++) values[i] = new BitBuffer(capacity / 32 + 2);
+        this.prevValueBits = new long[channels];
+        this.prevLeading = new int[channels];
+        this.prevTrailing = new int[channels];
+    }
+
+    int count() {
+        return count;
+    }
+
+    long firstTs() {
+        return firstTs;
+    }
+
+    long lastTs() {
+        return lastTs;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /** Returns false if the block is full or {@code ts} cannot be encoded here. */
+    boolean append(long ts, SensorReading reading) {
+        if (sealed || count >= capacity) return false;
+        if (count == 0) {
+            firstTs = ts;
+            times.writeBits(ts, 64);
+        } else {
+            long delta = ts - lastTs;
+            if (delta < 0 || delta > Integer.MAX_VALUE) return false;
+            writeDeltaOfDelta(delta - prevDelta);
+            prevDelta = delta;
+        }
+        lastTs = ts;
+        for (int c = 0; c < values.length; c++) {
+            writeValue(c, Double.doubleToRawLongBits(SensorChannel.of(c).read(reading)));
+        }
+        count++;
+        return true;
+    }
+
+    private void writeDeltaOfDelta(long dod) {
+        if (dod == 0) {
+            times.writeBit(false);
+        } else if (dod >= -64 && dod <= 63) {
+            times.writeBits(0b10, 2);
+            times.writeBits(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            times.writeBits(0b110, 3);
+            times.writeBits(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            times.writeBits(0b1110, 4);
+            times.writeBits(dod, 12);
+        } else {
+            times.writeBits(0b1111, 4);
+            times.writeBits(dod, 33);
+        }
+    }
+
+    private void writeValue(int c, long bits) {
+        BitBuffer out = values[c];
+        if (count == 0) {
+            out.writeBits(bits, 64);
+            prevValueBits[c] = bits;
+            prevLeading[c] = Integer.MAX_VALUE;
+            return;
+        }
+        long xor = bits ^ prevValueBits[c];
+        prevValueBits[c] = bits;
+        if (xor == 0) {
+            out.writeBit(false);
+            return;
+        }
+        out.writeBit(true);
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (prevLeading[c] != Integer.MAX_VALUE && leading >= prevLeading[c] && trailing >= prevTrailing[c]) {
+            out.writeBit(false);
+            int meaningful = 64 - prevLeading[c] - prevTrailing[c];
+            out.writeBits(xor >>> prevTrailing[c], meaningful);
+        } else {
+            out.writeBit(true);
+            int meaningful = 64 - leading - trailing;
+            out.writeBits(leading, 5);
+            out.writeBits(meaningful - 1, 6);
+            out.writeBits(xor >>> trailing, meaningful);
+            prevLeading[c] = leading;
+            prevTrailing[c] = trailing;
+        }
+    }
+
+    void seal() {
+        sealed = true;
+        times.trim();
+        for (BitBuffer v : values) v.trim();
+    }
+
+    int byteSize() {
+        int size = 96 + times.byteSize();
+        for (BitBuffer v : values) size += v.byteSize() + 16;
+        return size;
+    }
+
+    /** Calls {@code sink} for every non-missing point of {@code channel} in [from, to]. */
+    void scan(SensorChannel channel, long from, long to, PointSink sink) {
+        if (count == 0 || lastTs < from || firstTs > to) return;
+        BitBuffer.Reader tr = times.reader();
+        BitBuffer.Reader vr = values[channel.ordinal()].reader();
+        long ts = 0;
+        long delta = 0;
+        long valueBits = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                ts = tr.readBits(64);
+                valueBits = vr.readBits(64);
+            } else {
+                delta += readDeltaOfDelta(tr);
+                ts += delta;
+                if (vr.readBit()) {
+                    if (vr.readBit()) {
+                        leading = (int) vr.readBits(5);
+                        int meaningful = (int) vr.readBits(6) + 1;
+                        trailing = 64 - leading - meaningful;
+                    }
+                    int meaningful = 64 - leading - trailing;
+                    valueBits ^= vr.readBits(meaningful) << trailing;
+                }
+            }
+            if (ts > to) return;
+            if (ts >= from) {
+                double v = Double.longBitsToDouble(valueBits);
+                if (!Double.isNaN(v)) sink.accept(ts, v);
+            }
+        }
+    }
+
+    private static long readDeltaOfDelta(BitBuffer.Reader in) {
+        if (!in.readBit()) return 0;
+        if (!in.readBit()) return signExtend(in.readBits(7), 7);
+        if (!in.readBit()) return signExtend(in.readBits(9), 9);
+        if (!in.readBit()) return signExtend(in.readBits(12), 12);
+        return signExtend(in.readBits(33), 33);
+    }
+
+    private static long signExtend(long value, int bits) {
+        long shift = 64 - bits;
+        return (value << shift) >> shift;
+    }
+
+    @FunctionalInterface
+    interface PointSink {
+        void accept(long ts, double value);
+    }
+}
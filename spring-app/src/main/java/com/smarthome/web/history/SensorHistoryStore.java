@@ -0,0 +1,215 @@
+package com.smarthome.web.history;
+
+import com.smarthome.web.sensor.SensorChannel;
+import com.smarthome.web.sensor.SensorReading;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory sensor history per source, kept in compressed {@link SensorBlock}s.
+ * A source is the board's {@code HELLO} device id, so its series continues across
+ * reconnects, or {@code host:port} for boards that never said hello. A reading
+ * older than its series' newest point is counted and skipped, never re-stamped.
+ * When the retained size exceeds {@code smarthome.history.max-bytes}, the oldest
+ * sealed blocks are evicted first, and a series with nothing newer than the
+ * evicted data is dropped altogether.
+ */
+@Component
+public class SensorHistoryStore {
+
+    private final Map<String, SensorSeries> series = new ConcurrentHashMap<>();
+    private final Queue<Sealed> sealedOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sealedBytes = new AtomicLong();
+    private final AtomicLong outOfOrder = new AtomicLong();
+    private final long maxBytes;
+    private final int blockPoints;
+    /** Last timestamp of the newest evicted block; older points are past retention. */
+    private long evictedThrough = Long.MIN_VALUE;
+
+    public SensorHistoryStore(@Value("${smarthome.history.max-bytes:16777216}") long maxBytes,
+                              @Value("${smarthome.history.block-points:1024}") int blockPoints) {
+        this.maxBytes = maxBytes;
+        this.blockPoints = Math.max(16, blockPoints);
+    }
+
+    public void append(SensorReading reading) {
+        SensorSeries s = series.computeIfAbsent(reading.getSource(), k -> new SensorSeries(k, blockPoints));
+        if (!s.inOrder(reading.getTs())) {
+            outOfOrder.incrementAndGet();
+            return;
+        }
+        SensorBlock sealed = s.append(reading.getTs(), reading);
+        if (sealed != null) {
+            sealedOrder.add(new Sealed(s, sealed));
+            sealedBytes.addAndGet(sealed.byteSize());
+            enforceRetention();
+        }
+    }
+
+    private void enforceRetention() {
+        boolean evicted = false;
+        while (retainedBytes() > maxBytes) {
+            Sealed oldest = sealedOrder.poll();
+            if (oldest == null) break;
+            if (oldest.series.evict(oldest.block)) {
+                sealedBytes.addAndGet(-oldest.block.byteSize());
+                evictedThrough = Math.max(evictedThrough, oldest.block.lastTs());
+                evicted = true;
+            }
+        }
+        if (!evicted) return;
+        // boards that went away: only their active block is left, and it is older than what was just evicted
+        series.entrySet().removeIf(e -> e.getValue().expired(evictedThrough));
+    }
+
+    private long retainedBytes() {
+        long bytes = sealedBytes.get();
+        for (SensorSeries s : series.values()) bytes += s.activeBytes();
+        return bytes;
+    }
+
+    public List<SourceInfo> sources() {
+        List<SourceInfo> out = new ArrayList<>(series.size());
+        for (SensorSeries s : series.values()) {
+            out.add(new SourceInfo(s.source(), s.points(), s.firstTs(), s.lastTs()));
+        }
+        return out;
+    }
+
+    public Stats stats() {
+        long points = 0;
+        int blocks = 0;
+        for (SensorSeries s : series.values()) {
+            points += s.points();
+            blocks += s.blocks();
+        }
+        return new Stats(series.size(), points, blocks, retainedBytes(), maxBytes, outOfOrder.get());
+    }
+
+    /** Raw points in [from, to], at most {@code limit}. Returns null for an unknown source. */
+    public Raw raw(String source, SensorChannel channel, long from, long to, int limit) {
+        SensorSeries s = series.get(source);
+        if (s == null) return null;
+        RawCollector c = new RawCollector(limit);
+        s.scan(channel, from, to, c);
+        return new Raw(source, channel.key(), Arrays.copyOf(c.ts, c.n), Arrays.copyOf(c.values, c.n), c.truncated);
+    }
+
+    /** Min/max/avg per {@code stepMillis} bucket in [from, to]. Returns null for an unknown source. */
+    public Downsampled downsample(String source, SensorChannel channel, long from, long to, long stepMillis) {
+        SensorSeries s = series.get(source);
+        if (s == null) return null;
+        BucketCollector c = new BucketCollector(Math.max(1, stepMillis));
+        s.scan(channel, from, to, c);
+        c.flush();
+        int n = c.n;
+        return new Downsampled(source, channel.key(), c.step, Arrays.copyOf(c.ts, n), Arrays.copyOf(c.min, n),
+                Arrays.copyOf(c.max, n), Arrays.copyOf(c.avg, n), Arrays.copyOf(c.count, n));
+    }
+
+    private record Sealed(SensorSeries series, SensorBlock block) {
+    }
+
+    public record SourceInfo(String source, long points, long firstTs, long lastTs) {
+    }
+
+    public record Stats(int sources, long points, int blocks, long bytes, long maxBytes, long outOfOrder) {
+    }
+
+    public record Raw(String source, String channel, long[] ts, double[] values, boolean truncated) {
+    }
+
+    public record Downsampled(String source, String channel, long step, long[] ts,
+                              double[] min, double[] max, double[] avg, int[] count) {
+    }
+
+    private static final class RawCollector implements SensorBlock.PointSink {
+        private final int limit;
+        private long[] ts = new long[64];
+        private double[] values = new double[64];
+        private int n;
+        private boolean truncated;
+
+        RawCollector(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void accept(long t, double v) {
+            if (n >= limit) {
+                truncated = true;
+                return;
+            }
+            if (n == ts.length) {
+                ts = Arrays.copyOf(ts, n * 2);
+                values = Arrays.copyOf(values, n * 2);
+            }
+            ts[n] = t;
+            values[n++] = v;
+        }
+    }
+
+    private static final class BucketCollector implements SensorBlock.PointSink {
+        private final long step;
+        private long[] ts = new long[64];
+        private double[] min = new double[64];
+        private double[] max = new double[64];
+        private double[] avg = new double[64];
+        private int[] count = new int[64];
+        private int n;
+
+        private long bucket = Long.MIN_VALUE;
+        private double bMin;
+        private double bMax;
+        private double bSum;
+        private int bCount;
+
+        BucketCollector(long step) {
+            this.step = step;
+        }
+
+        @Override
+        public void accept(long t, double v) {
+            long b = Math.floorDiv(t, step) * step;
+            if (b != bucket) {
+                flush();
+                bucket = b;
+                bMin = v;
+                bMax = v;
+                bSum = 0;
+                bCount = 0;
+            }
+            if (v < bMin) bMin = v;
+            if (v > bMax) bMax = v;
+            bSum += v;
+            bCount++;
+        }
+
+        void flush() {
+            if (bCount == 0) return;
+            if (n == ts.length) {
+                int size = n * 2;
+                ts = Arrays.copyOf(ts, size);
+                min = Arrays.copyOf(min, size);
+                max = Arrays.copyOf(max, size);
+                avg = Arrays.copyOf(avg, size);
+                count = Arrays.copyOf(count, size);
+            }
+            ts[n] = bucket;
+            min[n] = bMin;
+            max[n] = bMax;
+            avg[n] = bSum / bCount;
+            count[n++] = bCount;
+            bCount = 0;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.smarthome.web.history;
+
+import com.smarthome.web.sensor.SensorChannel;
+import com.smarthome.web.sensor.SensorReading;
+
+import java.util.ArrayDeque;
+
+/**
+ * All retained blocks of one source, oldest first.
+ */
+final class SensorSeries {
+
+    private final String source;
+    private final int blockPoints;
+    private final ArrayDeque<SensorBlock> sealed = new ArrayDeque<>();
+    private SensorBlock active;
+    private long points;
+
+    SensorSeries(String source, int blockPoints) {
+        this.source = source;
+        this.blockPoints = blockPoints;
+        this.active = new SensorBlock(blockPoints);
+    }
+
+    String source() {
+        return source;
+    }
+
+    /** Appends a reading; returns the block that was sealed to make room, if any. */
+    synchronized SensorBlock append(long ts, SensorReading reading) {
+        SensorBlock justSealed = null;
+        if (!active.append(ts, reading)) {
+            if (active.count() > 0) {
+                active.seal();
+                sealed.addLast(active);
+                justSealed = active;
+            }
+            active = new SensorBlock(blockPoints);
+            active.append(ts, reading);
+        }
+        points++;
+        return justSealed;
+    }
+
+    synchronized boolean evict(SensorBlock block) {
+        if (!sealed.remove(block)) return false;
+        points -= block.count();
+        return true;
+    }
+
+    synchronized void scan(SensorChannel channel, long from, long to, SensorBlock.PointSink sink) {
+        for (SensorBlock block : sealed) block.scan(channel, from, to, sink);
+        active.scan(channel, from, to, sink);
+    }
+
+    /** False for a point older than the newest one, which the series cannot hold in order. */
+    synchronized boolean inOrder(long ts) {
+        return points == 0 || ts >= lastTs();
+    }
+
+    /** True when every remaining point is at or before {@code horizon}. */
+    synchronized boolean expired(long horizon) {
+        return sealed.isEmpty() && (active.count() == 0 || active.lastTs() <= horizon);
+    }
+
+    synchronized long points() {
+        return points;
+    }
+
+    synchronized int blocks() {
+        return sealed.size() + 1;
+    }
+
+    synchronized long firstTs() {
+        return sealed.isEmpty() ? active.firstTs() : sealed.peekFirst().firstTs();
+    }
+
+    synchronized long lastTs() {
+        return active.count() > 0 ? active.lastTs() : sealed.isEmpty() ? 0 : sealed.peekLast().lastTs();
+    }
+
+    synchronized int activeBytes() {
+        return active.byteSize();
+    }
+}
@@ -0,0 +1,368 @@
+package com.smarthome.web.journal;
+
+import com.smarthome.web.sensor.SensorReading;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of sensor readings, door events and commands in
+ * memory-mapped segment files. Appends are plain memory writes under a short
+ * lock; a background task forces dirty pages to disk every
+ * {@code smarthome.journal.fsync-interval-ms} (group commit). Segments roll at
+ * {@code segment-bytes} and only the newest {@code max-segments} are kept.
+ * Record layout is documented on {@link JournalEntry}. An I/O failure turns the
+ * journal off (broadcast as an error, {@code smarthome.journal.enabled} drops to 0)
+ * instead of failing the caller.
+ */
+@Component
+public class EventJournal {
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final int MAX_TEXT = 16 * 1024;
+
+    private volatile boolean enabled;
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long fsyncIntervalMs;
+    private final WebSocketBroadcaster broadcaster;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    /** Rolled-out files whose delete failed, e.g. still mapped on Windows; retried on each roll. */
+    private final List<Path> undeleted = new ArrayList<>();
+    private final CRC32C crc = new CRC32C();
+    private ScheduledExecutorService flusher;
+
+    private Segment active;
+    private long nextSeq;
+    private volatile boolean dirty;
+
+    public EventJournal(@Value("${smarthome.journal.enabled:true}") boolean enabled,
+                        @Value("${smarthome.journal.dir:data/journal}") String dir,
+                        @Value("${smarthome.journal.segment-bytes:16777216}") int segmentBytes,
+                        @Value("${smarthome.journal.max-segments:8}") int maxSegments,
+                        @Value("${smarthome.journal.fsync-interval-ms:100}") long fsyncIntervalMs,
+                        WebSocketBroadcaster broadcaster, MeterRegistry registry) {
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.segmentBytes = Math.max(64 * 1024, segmentBytes);
+        this.maxSegments = Math.max(1, maxSegments);
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.broadcaster = broadcaster;
+        Gauge.builder("smarthome.journal.enabled", this, j -> j.enabled ? 1 : 0)
+                .description("1 while the journal is writing, 0 once disabled or after an I/O failure")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) return;
+        try {
+            openSegments();
+        } catch (IOException | UncheckedIOException e) {
+            // keep serving without durability rather than refusing to start
+            disable(e);
+        }
+    }
+
+    private void disable(Exception e) {
+        enabled = false;
+        try {
+            broadcaster.broadcast("error", "Event journal disabled: " + e);
+        } catch (RuntimeException ignored) {
+        }
+    }
+
+    private void openSegments() throws IOException {
+        Files.createDirectories(dir);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().startsWith(PREFIX)
+                            && p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            segments.add(new Segment(file, baseSeqOf(file), Files.size(file)));
+        }
+        if (segments.isEmpty()) {
+            roll();
+        } else {
+            recoverTail(segments.get(segments.size() - 1));
+        }
+        if (fsyncIntervalMs > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "journal-fsync");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::force, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void appendSensor(SensorReading r) {
+        if (!enabled) return;
+        byte[] src = bytes(r.getSource());
+        synchronized (this) {
+            try {
+                ByteBuffer buf = reserve(JournalEntry.HEADER + 2 + src.length + JournalEntry.SENSOR_BODY);
+                int start = begin(buf, JournalEntry.SENSOR, r.getTs(), src);
+                buf.putInt(r.getFieldMask()).putInt(r.getGas()).putInt(r.getMethan())
+                        .putDouble(r.getTemp()).putDouble(r.getHumi())
+                        .putInt(r.getPm1()).putInt(r.getPm25()).putInt(r.getPm10()).putInt(r.getPir());
+                commit(buf, start);
+            } catch (UncheckedIOException e) {
+                disable(e);
+            }
+        }
+    }
+
+    public void appendText(byte type, String source, String text) {
+        if (!enabled) return;
+        byte[] src = bytes(source);
+        byte[] body = bytes(text);
+        synchronized (this) {
+            try {
+                ByteBuffer buf = reserve(JournalEntry.HEADER + 2 + src.length + 4 + body.length);
+                int start = begin(buf, type, System.currentTimeMillis(), src);
+                buf.putInt(body.length).put(body);
+                commit(buf, start);
+            } catch (UncheckedIOException e) {
+                disable(e);
+            }
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        return b.length > MAX_TEXT ? Arrays.copyOf(b, MAX_TEXT) : b;
+    }
+
+    private ByteBuffer reserve(int length) {
+        ByteBuffer buf = active.map;
+        if (buf.remaining() < length + 4) {
+            if (buf.remaining() >= 4) buf.putInt(buf.position(), 0);
+            roll();
+            buf = active.map;
+        }
+        return buf;
+    }
+
+    private int begin(ByteBuffer buf, byte type, long ts, byte[] src) {
+        int start = buf.position();
+        buf.putInt(0).putInt(0).put(type).putLong(nextSeq++).putLong(ts);
+        buf.putShort((short) src.length).put(src);
+        return start;
+    }
+
+    private void commit(ByteBuffer buf, int start) {
+        int end = buf.position();
+        ByteBuffer view = active.crcView;
+        view.limit(end).position(start + 8);
+        crc.reset();
+        crc.update(view);
+        buf.putInt(start + 4, (int) crc.getValue());
+        buf.putInt(start, end - start);
+        active.writePosition = end;
+        dirty = true;
+    }
+
+    private void roll() {
+        try {
+            Path file = dir.resolve(String.format("%s%020d%s", PREFIX, nextSeq, SUFFIX));
+            Segment segment = new Segment(file, nextSeq, segmentBytes);
+            segment.mapForWrite(segmentBytes);
+            if (active != null) {
+                active.map.force();
+                // replay maps sealed segments itself; the buffer is unmapped once collected
+                active.release();
+            }
+            segments.add(segment);
+            active = segment;
+            while (segments.size() > maxSegments) {
+                undeleted.add(segments.remove(0).file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("journal roll failed", e);
+        }
+        undeleted.removeIf(EventJournal::delete);
+    }
+
+    private static boolean delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void recoverTail(Segment last) throws IOException {
+        last.mapForWrite(Math.max(segmentBytes, (int) last.size));
+        ByteBuffer buf = last.map;
+        long seq = last.baseSeq;
+        int pos = 0;
+        JournalEntry entry = new JournalEntry();
+        ByteBuffer view = buf.duplicate();
+        CRC32C check = new CRC32C();
+        while (true) {
+            int len = validLength(buf, view, check, pos, buf.capacity());
+            if (len == 0) break;
+            entry.reset(buf, pos);
+            seq = entry.seq() + 1;
+            pos += len;
+        }
+        buf.position(pos);
+        last.writePosition = pos;
+        active = last;
+        nextSeq = seq;
+    }
+
+    /** Length of a valid record at {@code pos}, or 0 at the end of the written data. */
+    private static int validLength(ByteBuffer buf, ByteBuffer view, CRC32C check, int pos, int limit) {
+        if (pos + JournalEntry.HEADER > limit) return 0;
+        int len = buf.getInt(pos);
+        if (len < JournalEntry.HEADER || pos + len > limit) return 0;
+        view.limit(pos + len).position(pos + 8);
+        check.reset();
+        check.update(view);
+        return (int) check.getValue() == buf.getInt(pos + 4) ? len : 0;
+    }
+
+    private void force() {
+        if (!dirty) return;
+        dirty = false;
+        Segment segment;
+        synchronized (this) {
+            segment = active;
+        }
+        MappedByteBuffer map = segment.map;
+        if (map != null) map.force();
+    }
+
+    /**
+     * Visits every retained record with {@code seq >= fromSeq} in order and returns
+     * the number visited. Runs concurrently with appends.
+     */
+    public long replay(long fromSeq, JournalVisitor visitor) {
+        if (!enabled) return 0;
+        List<Segment> snapshot = new ArrayList<>(segments);
+        JournalEntry entry = new JournalEntry();
+        CRC32C check = new CRC32C();
+        long visited = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            Segment segment = snapshot.get(i);
+            if (i + 1 < snapshot.size() && snapshot.get(i + 1).baseSeq <= fromSeq) continue;
+            ByteBuffer buf;
+            int limit;
+            try {
+                MappedByteBuffer map = segment.map;
+                if (map != null) {
+                    limit = segment.writePosition;
+                    buf = map.duplicate();
+                } else {
+                    try (FileChannel ch = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+                        buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                    }
+                    limit = buf.capacity();
+                }
+            } catch (IOException e) {
+                continue;
+            }
+            ByteBuffer view = buf.duplicate();
+            int pos = 0;
+            int len;
+            while ((len = validLength(buf, view, check, pos, limit)) > 0) {
+                entry.reset(buf, pos);
+                if (entry.seq() >= fromSeq) {
+                    visited++;
+                    if (!visitor.visit(entry)) return visited;
+                }
+                pos += len;
+            }
+        }
+        return visited;
+    }
+
+    public synchronized Stats stats() {
+        long bytes = 0;
+        for (Segment s : segments) bytes += s == active ? s.writePosition : s.size;
+        long firstSeq = segments.isEmpty() ? 0 : segments.get(0).baseSeq;
+        return new Stats(enabled, dir.toAbsolutePath().toString(), segments.size(), bytes, firstSeq, nextSeq,
+                undeleted.size());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (flusher != null) flusher.shutdownNow();
+        synchronized (this) {
+            if (active != null) active.map.force();
+        }
+    }
+
+    private static long baseSeqOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    public record Stats(boolean enabled, String dir, int segments, long bytes, long firstSeq, long nextSeq,
+                        int undeleted) {
+    }
+
+    private static final class Segment {
+        final Path file;
+        final long baseSeq;
+        final long size;
+        volatile MappedByteBuffer map;
+        ByteBuffer crcView;
+        volatile int writePosition;
+
+        Segment(Path file, long baseSeq, long size) {
+            this.file = file;
+            this.baseSeq = baseSeq;
+            this.size = size;
+        }
+
+        void mapForWrite(int bytes) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                map = ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+            crcView = map.duplicate();
+        }
+
+        void release() {
+            map = null;
+            crcView = null;
+        }
+    }
+}
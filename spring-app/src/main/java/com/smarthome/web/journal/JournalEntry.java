@@ -0,0 +1,89 @@
+package com.smarthome.web.journal;
+
+import com.smarthome.web.sensor.SensorReading;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Flyweight view of one journal record during replay. Valid only inside the
+ * {@link JournalVisitor#visit} call that received it.
+ *
+ * <pre>
+ * int length | int crc32c | byte type | long seq | long ts | body
+ * SENSOR  body: short srcLen, src, int mask, int gas, int methan, double temp, double humi,
+ *               int pm1, int pm25, int pm10, int pir
+ * others  body: short srcLen, src, int textLen, text
+ * </pre>
+ */
+public final class JournalEntry {
+
+    public static final byte SENSOR = 1;
+    public static final byte DOOR_EVENT = 2;
+    public static final byte COMMAND_SENT = 3;
+    public static final byte COMMAND_RECEIVED = 4;
+
+    static final int HEADER = 4 + 4 + 1 + 8 + 8;
+    static final int SENSOR_BODY = 4 * 4 + 8 * 2 + 4 * 4;
+
+    private ByteBuffer buf;
+    private int offset;
+
+    void reset(ByteBuffer buf, int offset) {
+        this.buf = buf;
+        this.offset = offset;
+    }
+
+    public byte type() {
+        return buf.get(offset + 8);
+    }
+
+    public long seq() {
+        return buf.getLong(offset + 9);
+    }
+
+    public long ts() {
+        return buf.getLong(offset + 17);
+    }
+
+    public String typeName() {
+        return switch (type()) {
+            case SENSOR -> "sensor";
+            case DOOR_EVENT -> "door_event";
+            case COMMAND_SENT -> "sent";
+            case COMMAND_RECEIVED -> "from_python";
+            default -> "unknown";
+        };
+    }
+
+    public String source() {
+        int p = offset + HEADER;
+        return string(p + 2, buf.getShort(p));
+    }
+
+    private int bodyStart() {
+        int p = offset + HEADER;
+        return p + 2 + buf.getShort(p);
+    }
+
+    /** Text of a door event or command record. */
+    public String text() {
+        int p = bodyStart();
+        return string(p + 4, buf.getInt(p));
+    }
+
+    /** Decodes a SENSOR record into {@code into}, including source and timestamp. */
+    public void readSensor(SensorReading into) {
+        int p = bodyStart();
+        into.restore(buf.getInt(p), buf.getInt(p + 4), buf.getInt(p + 8),
+                buf.getDouble(p + 12), buf.getDouble(p + 20),
+                buf.getInt(p + 28), buf.getInt(p + 32), buf.getInt(p + 36), buf.getInt(p + 40));
+        into.setOrigin(source(), ts());
+    }
+
+    private String string(int pos, int len) {
+        byte[] bytes = new byte[len];
+        buf.get(pos, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package com.smarthome.web.journal;
+
+import com.smarthome.web.history.SensorHistoryStore;
+import com.smarthome.web.sensor.SensorReading;
+import com.smarthome.web.shadow.DeviceShadow;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds in-memory state (sensor history and device shadow) from the journal
+ * before the TCP bridges start.
+ */
+@Component
+public class JournalReplayer {
+
+    private final EventJournal journal;
+    private final SensorHistoryStore history;
+    private final DeviceShadow shadow;
+    private final boolean replayOnStart;
+
+    public JournalReplayer(EventJournal journal, SensorHistoryStore history, DeviceShadow shadow,
+                           @Value("${smarthome.journal.replay-on-start:true}") boolean replayOnStart) {
+        this.journal = journal;
+        this.history = history;
+        this.shadow = shadow;
+        this.replayOnStart = replayOnStart;
+    }
+
+    /** Returns the number of records replayed. */
+    public long restore() {
+        if (!replayOnStart || !journal.isEnabled()) return 0;
+        SensorReading reading = new SensorReading();
+        long replayed = journal.replay(0, entry -> {
+            switch (entry.type()) {
+                case JournalEntry.SENSOR -> {
+                    entry.readSensor(reading);
+                    history.append(reading);
+                }
+                case JournalEntry.DOOR_EVENT -> shadow.applyDoorEvent(entry.text(), false);
+                case JournalEntry.COMMAND_SENT, JournalEntry.COMMAND_RECEIVED -> shadow.applyCommand(entry.text(), false);
+                default -> {
+                }
+            }
+            return true;
+        });
+        if (reading.getSource() != null) {
+            SensorReading last = new SensorReading();
+            last.copyFrom(reading);
+            shadow.put("sensor", last, false);
+        }
+        return replayed;
+    }
+}
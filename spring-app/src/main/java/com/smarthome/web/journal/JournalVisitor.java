@@ -0,0 +1,8 @@
+package com.smarthome.web.journal;
+
+@FunctionalInterface
+public interface JournalVisitor {
+
+    /** Returns false to stop the replay. */
+    boolean visit(JournalEntry entry);
+}
@@ -0,0 +1,14 @@
+package com.smarthome.web.rules;
+
+import com.smarthome.web.shadow.DeviceShadow;
+
+/**
+ * A compiled rule predicate. {@code values} holds the latest value of every
+ * {@link com.smarthome.web.sensor.SensorChannel} of one source, NaN where unknown.
+ * Implementations must not allocate.
+ */
+@FunctionalInterface
+interface Condition {
+
+    boolean test(double[] values, DeviceShadow shadow);
+}
@@ -0,0 +1,34 @@
+package com.smarthome.web.rules;
+
+/**
+ * A numeric comparison every match of a rule's condition must pass, e.g. the
+ * {@code gas > 400} of {@code gas > 400 && door == LOCKED}. The engine copies it
+ * into primitive arrays and checks it inline, so most rules are rejected without
+ * calling into the compiled condition.
+ */
+record Guard(int channel, int op, double threshold) {
+
+    static final int GT = 0, GE = 1, LT = 2, LE = 3, EQ = 4, NE = 5;
+
+    static int opCode(String op) {
+        return switch (op) {
+            case ">" -> GT;
+            case ">=" -> GE;
+            case "<" -> LT;
+            case "<=" -> LE;
+            case "==" -> EQ;
+            default -> NE;
+        };
+    }
+
+    static boolean passes(int op, double value, double threshold) {
+        return switch (op) {
+            case GT -> value > threshold;
+            case GE -> value >= threshold;
+            case LT -> value < threshold;
+            case LE -> value <= threshold;
+            case EQ -> value == threshold;
+            default -> !Double.isNaN(value) && value != threshold;
+        };
+    }
+}
@@ -0,0 +1,55 @@
+package com.smarthome.web.rules;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One automation: when {@link #when} has held for {@link #forMs}, send
+ * {@link #command} to {@link #target}. After firing the rule is latched until
+ * {@link #rearm} (or, without one, the negated condition) is true, and it never
+ * fires twice within {@link #cooldownMs}.
+ */
+public final class Rule {
+
+    final String name;
+    final String text;
+    final Condition when;
+    /** Implied by {@link #when}; null if the condition has no top-level numeric comparison. */
+    final Guard guard;
+    final long forMs;
+    final Condition rearm;
+    final String command;
+    final String target;
+    final long cooldownMs;
+    /** {@link com.smarthome.web.sensor.SensorChannel} bits the rule reads; 0 means shadow only. */
+    final int channelMask;
+
+    final LongAdder fired = new LongAdder();
+    volatile long lastFiredAt;
+
+    Rule(String name, String text, Condition when, Guard guard, long forMs, Condition rearm,
+         String command, String target, long cooldownMs, int channelMask) {
+        this.name = name;
+        this.text = text;
+        this.when = when;
+        this.guard = guard;
+        this.forMs = forMs;
+        this.rearm = rearm;
+        this.command = command;
+        this.target = target;
+        this.cooldownMs = cooldownMs;
+        this.channelMask = channelMask;
+    }
+
+    public String getName() { return name; }
+
+    public String getText() { return text; }
+
+    public String getCommand() { return command; }
+
+    public String getTarget() { return target; }
+
+    public long getFired() { return fired.sum(); }
+
+    /** Epoch milliseconds of the last firing, 0 if never. */
+    public long getLastFiredAt() { return lastFiredAt; }
+}
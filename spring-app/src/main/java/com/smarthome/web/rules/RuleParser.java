@@ -0,0 +1,253 @@
+package com.smarthome.web.rules;
+
+import com.smarthome.web.sensor.SensorChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles one rule line into a {@link Rule}:
+ * <pre>
+ * [name:] condition [for 5s] -> COMMAND [args] [@target] [cooldown 60s] [rearm condition]
+ *
+ * gas-fan: gas > 400 for 5s -> FAN_ON cooldown 60s rearm gas < 350
+ * pir-auth: pir == 1 &amp;&amp; door == LOCKED -> REQ_FACE_UNLOCK cooldown 10s
+ * </pre>
+ * A condition combines comparisons with {@code &&}, {@code ||}, {@code !} and
+ * parentheses. The left side of a comparison is a sensor channel ({@code gas},
+ * {@code pm25}, {@code dust}, ...) compared against a number, or a shadow
+ * attribute ({@code door}, {@code fan}, ...) compared with {@code ==}/{@code !=}
+ * against a word. Durations take {@code ms}, {@code s}, {@code m} or {@code h}.
+ */
+public final class RuleParser {
+
+    private static final Pattern NAME = Pattern.compile("^([A-Za-z0-9_.-]+):\\s+(.*)$");
+    private static final Pattern DURATION = Pattern.compile("(\\d+)(ms|s|m|h)");
+
+    private final List<String> tokens;
+    private int pos;
+    private int channelMask;
+    /** Parentheses/negation depth and whether {@code ||} appeared outside them. */
+    private int depth;
+    private boolean topLevelOr;
+    private int guardChannel = -1;
+    private int guardOp;
+    private double guardThreshold;
+
+    private RuleParser(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    /** Throws {@link IllegalArgumentException} describing the first problem in the line. */
+    public static Rule parse(String line, String defaultName) {
+        String text = line.trim();
+        String name = defaultName;
+        String body = text;
+        Matcher named = NAME.matcher(text);
+        if (named.matches()) {
+            name = named.group(1);
+            body = named.group(2);
+        }
+        return new RuleParser(tokenize(body)).rule(name, text);
+    }
+
+    private Rule rule(String name, String text) {
+        Condition when = or();
+        Guard guard = guardChannel >= 0 && !topLevelOr ? new Guard(guardChannel, guardOp, guardThreshold) : null;
+        depth = 1;
+        long forMs = 0;
+        if (accept("for")) forMs = duration(next("duration"));
+        expect("->");
+
+        StringBuilder command = new StringBuilder();
+        while (pos < tokens.size() && !isClause(peek())) {
+            if (command.length() > 0) command.append(' ');
+            command.append(next("command").toUpperCase(Locale.ROOT));
+        }
+        if (command.length() == 0) throw new IllegalArgumentException("missing command after ->");
+
+        String target = null;
+        long cooldownMs = 0;
+        Condition rearm = null;
+        while (pos < tokens.size()) {
+            String clause = next("clause");
+            if (clause.startsWith("@") && clause.length() > 1) {
+                target = clause.substring(1);
+            } else if (clause.equals("cooldown")) {
+                cooldownMs = duration(next("duration"));
+            } else if (clause.equals("rearm")) {
+                // channels read only by the rearm condition still have to trigger evaluation
+                rearm = or();
+            } else {
+                throw new IllegalArgumentException("unexpected '" + clause + "'");
+            }
+        }
+        return new Rule(name, text, when, guard, forMs, rearm, command.toString(), target, cooldownMs, channelMask);
+    }
+
+    private static boolean isClause(String token) {
+        return token.startsWith("@") || token.equals("cooldown") || token.equals("rearm");
+    }
+
+    private Condition or() {
+        Condition left = and();
+        while (accept("||")) {
+            if (depth == 0) topLevelOr = true;
+            Condition a = left;
+            Condition b = and();
+            left = (values, shadow) -> a.test(values, shadow) || b.test(values, shadow);
+        }
+        return left;
+    }
+
+    private Condition and() {
+        Condition left = unary();
+        while (accept("&&")) {
+            Condition a = left;
+            Condition b = unary();
+            left = (values, shadow) -> a.test(values, shadow) && b.test(values, shadow);
+        }
+        return left;
+    }
+
+    private Condition unary() {
+        if (accept("!")) {
+            depth++;
+            Condition inner = unary();
+            depth--;
+            return (values, shadow) -> !inner.test(values, shadow);
+        }
+        if (accept("(")) {
+            depth++;
+            Condition inner = or();
+            depth--;
+            expect(")");
+            return inner;
+        }
+        return comparison();
+    }
+
+    private Condition comparison() {
+        String left = next("sensor or attribute");
+        String op = next("operator");
+        String right = next("value");
+        SensorChannel channel = channelOf(left);
+        if (channel != null) {
+            double threshold;
+            try {
+                threshold = Double.parseDouble(right);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("'" + left + "' needs a number, got '" + right + "'");
+            }
+            channelMask |= channel.mask();
+            Condition condition = numeric(channel.ordinal(), op, threshold);
+            if (depth == 0 && guardChannel < 0) {
+                guardChannel = channel.ordinal();
+                guardOp = Guard.opCode(op);
+                guardThreshold = threshold;
+            }
+            return condition;
+        }
+        String attribute = left.toLowerCase(Locale.ROOT);
+        String expected = right.toUpperCase(Locale.ROOT);
+        return switch (op) {
+            case "==" -> (values, shadow) -> expected.equals(shadow.get(attribute));
+            case "!=" -> (values, shadow) -> !expected.equals(shadow.get(attribute));
+            default -> throw new IllegalArgumentException("'" + left + "' only supports == and !=");
+        };
+    }
+
+    // NaN (channel not seen yet) fails every comparison, including !=
+    private static Condition numeric(int ch, String op, double t) {
+        return switch (op) {
+            case ">" -> (values, shadow) -> values[ch] > t;
+            case ">=" -> (values, shadow) -> values[ch] >= t;
+            case "<" -> (values, shadow) -> values[ch] < t;
+            case "<=" -> (values, shadow) -> values[ch] <= t;
+            case "==" -> (values, shadow) -> values[ch] == t;
+            case "!=" -> (values, shadow) -> !Double.isNaN(values[ch]) && values[ch] != t;
+            default -> throw new IllegalArgumentException("unknown operator '" + op + "'");
+        };
+    }
+
+    private static SensorChannel channelOf(String name) {
+        try {
+            return SensorChannel.parse(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static long duration(String text) {
+        Matcher m = DURATION.matcher(text.toLowerCase(Locale.ROOT));
+        if (!m.matches()) throw new IllegalArgumentException("bad duration '" + text + "'");
+        long n = Long.parseLong(m.group(1));
+        return switch (m.group(2)) {
+            case "ms" -> n;
+            case "s" -> n * 1000;
+            case "m" -> n * 60_000;
+            default -> n * 3_600_000;
+        };
+    }
+
+    private String peek() {
+        return tokens.get(pos);
+    }
+
+    private String next(String what) {
+        if (pos >= tokens.size()) throw new IllegalArgumentException("missing " + what);
+        return tokens.get(pos++);
+    }
+
+    private boolean accept(String token) {
+        if (pos < tokens.size() && tokens.get(pos).equals(token)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw new IllegalArgumentException("expected '" + token + "'"
+                    + (pos < tokens.size() ? " before '" + peek() + "'" : ""));
+        }
+    }
+
+    private static List<String> tokenize(String s) {
+        List<String> out = new ArrayList<>();
+        int i = 0;
+        int n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            String two = i + 1 < n ? s.substring(i, i + 2) : "";
+            if (two.equals("->") || two.equals("&&") || two.equals("||")
+                    || two.equals(">=") || two.equals("<=") || two.equals("==") || two.equals("!=")) {
+                out.add(two);
+                i += 2;
+            } else if (c == '>' || c == '<' || c == '!' || c == '(' || c == ')') {
+                out.add(String.valueOf(c));
+                i++;
+            } else if (c == '=') {
+                // a single '=' reads as ==
+                out.add("==");
+                i++;
+            } else {
+                int start = i;
+                while (i < n && !Character.isWhitespace(s.charAt(i)) && "<>=!()&|".indexOf(s.charAt(i)) < 0
+                        && !s.startsWith("->", i)) {
+                    i++;
+                }
+                out.add(s.substring(start, i));
+            }
+        }
+        return out;
+    }
+}
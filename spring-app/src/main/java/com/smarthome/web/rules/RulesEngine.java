@@ -0,0 +1,255 @@
+package com.smarthome.web.rules;
+
+import com.smarthome.web.sensor.SensorChannel;
+import com.smarthome.web.sensor.SensorReading;
+import com.smarthome.web.service.CommandService;
+import com.smarthome.web.shadow.DeviceShadow;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates the automation rules from {@code smarthome.rules.file} on every sensor
+ * reading, on the analytics stage of the event bus. Rules are indexed by the
+ * channels they read, so a reading only visits rules that mention one of its
+ * fields, and the per-source state lives in primitive arrays, so evaluation does
+ * not allocate.
+ */
+@Component
+public class RulesEngine {
+
+    private static final long NOT_HOLDING = -1;
+
+    private final CommandService commandService;
+    private final DeviceShadow shadow;
+    private final WebSocketBroadcaster broadcaster;
+    private final Resource file;
+    private final Counter firedCounter;
+    private final Timer evalTimer;
+    private volatile RuleSet ruleSet = new RuleSet(List.of(), List.of());
+
+    public RulesEngine(CommandService commandService, DeviceShadow shadow, WebSocketBroadcaster broadcaster,
+                       @Value("${smarthome.rules.file:classpath:rules.conf}") Resource file,
+                       MeterRegistry meterRegistry) {
+        this.commandService = commandService;
+        this.shadow = shadow;
+        this.broadcaster = broadcaster;
+        this.file = file;
+        this.firedCounter = Counter.builder("smarthome.rules.fired")
+                .description("Commands emitted by automation rules").register(meterRegistry);
+        this.evalTimer = Timer.builder("smarthome.rules.eval")
+                .description("Rule evaluation time per sensor reading").register(meterRegistry);
+        reload();
+    }
+
+    /** Re-reads the rules file; rules that fail to parse are skipped and reported. */
+    public synchronized Stats reload() {
+        List<Rule> rules = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        if (file.exists()) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                int lineNo = 0;
+                while ((line = in.readLine()) != null) {
+                    lineNo++;
+                    String trimmed = line.trim();
+                    if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+                    try {
+                        rules.add(RuleParser.parse(trimmed, "rule-" + lineNo));
+                    } catch (IllegalArgumentException e) {
+                        errors.add("line " + lineNo + ": " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                errors.add(file.getDescription() + ": " + e.getMessage());
+            }
+        }
+        ruleSet = new RuleSet(rules, errors);
+        for (String error : errors) broadcaster.broadcast("warn", "Rule skipped, " + error);
+        return stats();
+    }
+
+    public void onReading(SensorReading reading) {
+        onReading(reading, true);
+    }
+
+    /**
+     * {@code act = false} updates the rule state and reports firings without sending
+     * commands, for readings replicated from the cluster node that owns the board.
+     */
+    public void onReading(SensorReading reading, boolean act) {
+        RuleSet set = ruleSet;
+        if (set.rules.length == 0) return;
+        long start = System.nanoTime();
+        set.state(reading.getSource()).evaluate(reading, act);
+        evalTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /** Drops the per-source state once its connection is gone. */
+    public void forget(String source) {
+        ruleSet.states.remove(source);
+    }
+
+    public Stats stats() {
+        RuleSet set = ruleSet;
+        return new Stats(Arrays.asList(set.rules), set.errors, set.states.size(),
+                evalTimer.count(), evalTimer.mean(TimeUnit.MICROSECONDS), evalTimer.max(TimeUnit.MICROSECONDS));
+    }
+
+    private void fire(Rule rule, String source, long now, boolean act) {
+        rule.lastFiredAt = now;
+        if (act) {
+            rule.fired.increment();
+            firedCounter.increment();
+            commandService.sendCommand(rule.target, rule.command);
+        }
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("rule", rule.name);
+        event.put("command", rule.command);
+        if (rule.target != null) event.put("target", rule.target);
+        if (source != null) event.put("source", source);
+        broadcaster.broadcast("rule", source, event);
+    }
+
+    public record Stats(List<Rule> rules, List<String> errors, int sources,
+                        long evaluations, double meanMicros, double maxMicros) {
+    }
+
+    private final class RuleSet {
+
+        final Rule[] rules;
+        final List<String> errors;
+        /** Rule indexes per channel ordinal; shadow-only rules run on every reading. */
+        final int[][] byChannel = new int[SensorChannel.count()][];
+        final int[] always;
+        /** {@link Guard} per rule, channel -1 where the rule has none. */
+        final int[] guardChannel;
+        final int[] guardOp;
+        final double[] guardThreshold;
+        final Map<String, SourceState> states = new ConcurrentHashMap<>();
+
+        RuleSet(List<Rule> rules, List<String> errors) {
+            this.rules = rules.toArray(new Rule[0]);
+            this.errors = List.copyOf(errors);
+            for (SensorChannel channel : SensorChannel.values()) {
+                byChannel[channel.ordinal()] = indexes(channel.mask());
+            }
+            this.always = indexes(0);
+            int n = this.rules.length;
+            guardChannel = new int[n];
+            guardOp = new int[n];
+            guardThreshold = new double[n];
+            for (int i = 0; i < n; i++) {
+                Guard guard = this.rules[i].guard;
+                guardChannel[i] = guard != null ? guard.channel() : -1;
+                guardOp[i] = guard != null ? guard.op() : 0;
+                guardThreshold[i] = guard != null ? guard.threshold() : 0;
+            }
+        }
+
+        private int[] indexes(int mask) {
+            int[] out = new int[rules.length];
+            int n = 0;
+            for (int i = 0; i < rules.length; i++) {
+                int m = rules[i].channelMask;
+                if (mask == 0 ? m == 0 : (m & mask) != 0) out[n++] = i;
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        SourceState state(String source) {
+            String key = source != null ? source : "";
+            SourceState state = states.get(key);
+            return state != null ? state : states.computeIfAbsent(key, k -> new SourceState(this, source));
+        }
+    }
+
+    /** Rule state for one source; only touched by the analytics stage thread. */
+    private final class SourceState {
+
+        final RuleSet set;
+        final String source;
+        final double[] values = new double[SensorChannel.count()];
+        final long[] holdingSince;
+        final long[] lastFired;
+        final boolean[] latched;
+        /** Reading sequence each rule was last evaluated for, so multi-channel rules run once. */
+        final long[] evaluatedAt;
+        long sequence;
+        boolean acting;
+
+        SourceState(RuleSet set, String source) {
+            this.set = set;
+            this.source = source;
+            int n = set.rules.length;
+            Arrays.fill(values, Double.NaN);
+            holdingSince = new long[n];
+            Arrays.fill(holdingSince, NOT_HOLDING);
+            lastFired = new long[n];
+            Arrays.fill(lastFired, Long.MIN_VALUE / 2);
+            latched = new boolean[n];
+            evaluatedAt = new long[n];
+        }
+
+        void evaluate(SensorReading reading, boolean act) {
+            long seq = ++sequence;
+            acting = act;
+            long now = reading.getTs();
+            int mask = reading.getFieldMask();
+            for (int c = 0; c < values.length; c++) {
+                if ((mask & (1 << c)) != 0) values[c] = SensorChannel.of(c).read(reading);
+            }
+            for (int c = 0; c < values.length; c++) {
+                if ((mask & (1 << c)) == 0) continue;
+                for (int i : set.byChannel[c]) {
+                    if (evaluatedAt[i] != seq) {
+                        evaluatedAt[i] = seq;
+                        step(i, now);
+                    }
+                }
+            }
+            for (int i : set.always) step(i, now);
+        }
+
+        private void step(int i, long now) {
+            Rule rule = set.rules[i];
+            int guard = set.guardChannel[i];
+            boolean on = (guard < 0 || Guard.passes(set.guardOp[i], values[guard], set.guardThreshold[i]))
+                    && rule.when.test(values, shadow);
+            if (latched[i]) {
+                boolean release = rule.rearm != null ? rule.rearm.test(values, shadow) : !on;
+                if (!release) return;
+                latched[i] = false;
+                holdingSince[i] = NOT_HOLDING;
+                if (rule.rearm != null) return;
+            }
+            if (!on) {
+                holdingSince[i] = NOT_HOLDING;
+                return;
+            }
+            if (holdingSince[i] == NOT_HOLDING) holdingSince[i] = now;
+            if (now - holdingSince[i] < rule.forMs) return;
+            // still holding after the cooldown fires on a later reading
+            if (now - lastFired[i] < rule.cooldownMs) return;
+            latched[i] = true;
+            lastFired[i] = now;
+            fire(rule, source, now, acting);
+        }
+    }
+}
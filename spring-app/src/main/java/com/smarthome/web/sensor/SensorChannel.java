@@ -0,0 +1,51 @@
+package com.smarthome.web.sensor;
+
+import java.util.Locale;
+
+/**
+ * The numeric channels of a {@link SensorReading}. {@link #mask()} matches the
+ * reading's field-mask bits.
+ */
+public enum SensorChannel {
+    GAS, METHAN, TEMP, HUMI, PM1, PM25, PM10, PIR;
+
+    private static final SensorChannel[] VALUES = values();
+
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /** The channel value, or NaN if the packet did not carry it. */
+    public double read(SensorReading r) {
+        if ((r.fieldMask & mask()) == 0) return Double.NaN;
+        return switch (this) {
+            case GAS -> r.gas;
+            case METHAN -> r.methan;
+            case TEMP -> r.temp;
+            case HUMI -> r.humi;
+            case PM1 -> r.pm1;
+            case PM25 -> r.pm25;
+            case PM10 -> r.pm10;
+            case PIR -> r.pir;
+        };
+    }
+
+    public static SensorChannel of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    public static int count() {
+        return VALUES.length;
+    }
+
+    /** Accepts {@code gas}, {@code PM25}, and {@code dust} as an alias of PM10. */
+    public static SensorChannel parse(String name) {
+        String upper = name.trim().toUpperCase(Locale.ROOT);
+        if (upper.equals("DUST")) return PM10;
+        return valueOf(upper);
+    }
+}
@@ -0,0 +1,137 @@
+package com.smarthome.web.sensor;
+
+import com.smarthome.web.shadow.DeviceShadow;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps only the latest reading per source and flushes one merged {@code sensor}
+ * frame per tick. {@code payload} is the newest reading (what the dashboard reads)
+ * and {@code sources} holds the latest reading of every source that changed
+ * during the tick. A rate of 0 disables conflation and sends each reading.
+ */
+@Component
+public class SensorConflator {
+
+    private final WebSocketBroadcaster broadcaster;
+    private final DeviceShadow shadow;
+    private final Map<String, SensorReading> pending = new ConcurrentHashMap<>();
+    private final Set<String> closed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService ticker;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+
+    public SensorConflator(WebSocketBroadcaster broadcaster, DeviceShadow shadow,
+                           @Value("${smarthome.sensor.flush-hz:10}") int flushHz) {
+        this.broadcaster = broadcaster;
+        this.shadow = shadow;
+        if (flushHz <= 0) {
+            this.ticker = null;
+            return;
+        }
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sensor-conflator");
+            t.setDaemon(true);
+            return t;
+        });
+        // above 1 MHz the division rounds to 0, which scheduleAtFixedRate rejects
+        long periodMicros = Math.max(1, 1_000_000L / flushHz);
+        ticker.scheduleAtFixedRate(this::flush, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    public void submit(SensorReading reading) {
+        submitted.incrementAndGet();
+        if (ticker == null) {
+            frames.incrementAndGet();
+            broadcaster.sendSensor(Map.of(reading.getSource(), reading), reading,
+                    Map.of("type", "sensor", "payload", reading));
+            shadow.put("sensor", reading, false);
+            return;
+        }
+        pending.put(reading.getSource(), reading);
+    }
+
+    /** Never throws: an exception would cancel the fixed-rate task and stop sensor fan-out for good. */
+    void flush() {
+        try {
+            flushPending();
+            forgetClosed();
+        } catch (RuntimeException e) {
+            try {
+                broadcaster.broadcast("error", "Sensor flush failed: " + e);
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+
+    private void flushPending() {
+        if (pending.isEmpty()) return;
+        Map<String, SensorReading> sources = new LinkedHashMap<>();
+        SensorReading newest = null;
+        for (Iterator<Map.Entry<String, SensorReading>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, SensorReading> e = it.next();
+            SensorReading reading = e.getValue();
+            if (!pending.remove(e.getKey(), reading)) continue;
+            sources.put(e.getKey(), reading);
+            if (newest == null || reading.getTs() >= newest.getTs()) newest = reading;
+        }
+        if (newest == null) return;
+        frames.incrementAndGet();
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("type", "sensor");
+        frame.put("payload", newest);
+        frame.put("sources", sources);
+        broadcaster.sendSensor(sources, newest, frame);
+        // no shadow delta: it would repeat every sensor frame; snapshots still carry the reading
+        shadow.put("sensor", newest, false);
+    }
+
+    /**
+     * A source's board disconnected. Its last reading may still be pending, so the
+     * broadcaster forgets it after the next flush.
+     */
+    public void forget(String source) {
+        if (ticker == null) {
+            broadcaster.forgetSource(source);
+            return;
+        }
+        closed.add(source);
+    }
+
+    private void forgetClosed() {
+        if (closed.isEmpty()) return;
+        for (Iterator<String> it = closed.iterator(); it.hasNext(); ) {
+            String source = it.next();
+            if (pending.containsKey(source)) continue;
+            it.remove();
+            broadcaster.forgetSource(source);
+        }
+    }
+
+    /** Readings received since start. */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /** Frames actually sent; {@code submitted - frames} readings were conflated away. */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ticker != null) ticker.shutdownNow();
+    }
+}
@@ -0,0 +1,118 @@
+package com.smarthome.web.sensor;
+
+/**
+ * Parses {@code SENSOR GAS=.. METHAN=.. TEMP=.. HUMI=.. PM1=.. PM25=.. PM10=.. PIR=..}
+ * by key, directly from the line bytes. Field order does not matter, unknown keys
+ * are skipped and nothing is allocated.
+ */
+public final class SensorPacketParser {
+
+    private static final byte[] PREFIX = {'S', 'E', 'N', 'S', 'O', 'R'};
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private SensorPacketParser() {
+    }
+
+    public static boolean isSensorLine(byte[] buf, int off, int len) {
+        if (len < PREFIX.length) return false;
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (buf[off + i] != PREFIX[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fills {@code into} from a sensor line. Returns false if the line is not a
+     * sensor packet or carries none of the known keys.
+     */
+    public static boolean parse(byte[] buf, int off, int len, SensorReading into) {
+        into.clear();
+        if (!isSensorLine(buf, off, len)) return false;
+        int end = off + len;
+        int i = off + PREFIX.length;
+
+        while (i < end) {
+            while (i < end && buf[i] == ' ') i++;
+            int keyStart = i;
+            while (i < end && buf[i] != '=' && buf[i] != ' ') i++;
+            if (i >= end || buf[i] != '=') continue;
+            int field = fieldOf(buf, keyStart, i - keyStart);
+            i++;
+
+            boolean negative = false;
+            if (i < end && buf[i] == '-') {
+                negative = true;
+                i++;
+            }
+            long mantissa = 0;
+            int scale = 0;
+            int digits = 0;
+            boolean fraction = false;
+            for (; i < end && buf[i] != ' '; i++) {
+                byte b = buf[i];
+                if (b >= '0' && b <= '9') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        digits++;
+                        if (fraction) scale++;
+                    }
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    digits = 0;
+                    while (i < end && buf[i] != ' ') i++;
+                    break;
+                }
+            }
+            if (field == 0 || digits == 0) continue;
+
+            double value = mantissa / POW10[scale];
+            if (negative) value = -value;
+            store(into, field, value);
+        }
+        return into.fieldMask != 0;
+    }
+
+    private static void store(SensorReading r, int field, double value) {
+        switch (field) {
+            case SensorReading.GAS -> r.gas = (int) value;
+            case SensorReading.METHAN -> r.methan = (int) value;
+            case SensorReading.TEMP -> r.temp = value;
+            case SensorReading.HUMI -> r.humi = value;
+            case SensorReading.PM1 -> r.pm1 = (int) value;
+            case SensorReading.PM25 -> r.pm25 = (int) value;
+            case SensorReading.PM10 -> r.pm10 = (int) value;
+            case SensorReading.PIR -> r.pir = (int) value;
+            default -> {
+                return;
+            }
+        }
+        r.fieldMask |= field;
+    }
+
+    private static int fieldOf(byte[] buf, int off, int len) {
+        switch (len) {
+            case 3:
+                if (buf[off] == 'G' && buf[off + 1] == 'A' && buf[off + 2] == 'S') return SensorReading.GAS;
+                if (buf[off] == 'P' && buf[off + 1] == 'M' && buf[off + 2] == '1') return SensorReading.PM1;
+                if (buf[off] == 'P' && buf[off + 1] == 'I' && buf[off + 2] == 'R') return SensorReading.PIR;
+                return 0;
+            case 4:
+                if (buf[off] == 'T' && buf[off + 1] == 'E' && buf[off + 2] == 'M' && buf[off + 3] == 'P') return SensorReading.TEMP;
+                if (buf[off] == 'H' && buf[off + 1] == 'U' && buf[off + 2] == 'M' && buf[off + 3] == 'I') return SensorReading.HUMI;
+                if (buf[off] == 'P' && buf[off + 1] == 'M' && buf[off + 2] == '2' && buf[off + 3] == '5') return SensorReading.PM25;
+                if (buf[off] == 'P' && buf[off + 1] == 'M' && buf[off + 2] == '1' && buf[off + 3] == '0') return SensorReading.PM10;
+                return 0;
+            case 6:
+                if (buf[off] == 'M' && buf[off + 1] == 'E' && buf[off + 2] == 'T' && buf[off + 3] == 'H'
+                        && buf[off + 4] == 'A' && buf[off + 5] == 'N') return SensorReading.METHAN;
+                return 0;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.smarthome.web.sensor;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * One {@code SENSOR ...} packet decoded into primitive fields.
+ * {@link #getFieldMask()} records which keys were present in the packet.
+ */
+@JsonPropertyOrder({"source", "ts", "gas", "methan", "temp", "humi", "pm1", "pm25", "pm10", "dust", "pir"})
+public final class SensorReading {
+
+    public static final int GAS = 1;
+    public static final int METHAN = 1 << 1;
+    public static final int TEMP = 1 << 2;
+    public static final int HUMI = 1 << 3;
+    public static final int PM1 = 1 << 4;
+    public static final int PM25 = 1 << 5;
+    public static final int PM10 = 1 << 6;
+    public static final int PIR = 1 << 7;
+    public static final int ALL = (1 << 8) - 1;
+
+    int gas;
+    int methan;
+    double temp;
+    double humi;
+    int pm1;
+    int pm25;
+    int pm10;
+    int pir;
+    int fieldMask;
+    private String source;
+    private long ts;
+
+    /** Connection the packet arrived on. */
+    public String getSource() { return source; }
+
+    /** Receive time in epoch milliseconds. */
+    public long getTs() { return ts; }
+
+    public void setOrigin(String source, long ts) {
+        this.source = source;
+        this.ts = ts;
+    }
+
+    public int getGas() { return gas; }
+
+    public int getMethan() { return methan; }
+
+    public double getTemp() { return temp; }
+
+    public double getHumi() { return humi; }
+
+    public int getPm1() { return pm1; }
+
+    public int getPm25() { return pm25; }
+
+    public int getPm10() { return pm10; }
+
+    /** Dashboard name for PM10, kept for existing clients. */
+    public int getDust() { return pm10; }
+
+    public int getPir() { return pir; }
+
+    @JsonIgnore
+    public int getFieldMask() { return fieldMask; }
+
+    public boolean has(int field) {
+        return (fieldMask & field) != 0;
+    }
+
+    public void clear() {
+        gas = methan = pm1 = pm25 = pm10 = pir = 0;
+        temp = humi = 0;
+        fieldMask = 0;
+    }
+
+    /** Sets every field at once, e.g. when decoding a stored reading. */
+    public void restore(int fieldMask, int gas, int methan, double temp, double humi,
+                        int pm1, int pm25, int pm10, int pir) {
+        this.fieldMask = fieldMask;
+        this.gas = gas;
+        this.methan = methan;
+        this.temp = temp;
+        this.humi = humi;
+        this.pm1 = pm1;
+        this.pm25 = pm25;
+        this.pm10 = pm10;
+        this.pir = pir;
+    }
+
+    public void copyFrom(SensorReading other) {
+        gas = other.gas;
+        methan = other.methan;
+        temp = other.temp;
+        humi = other.humi;
+        pm1 = other.pm1;
+        pm25 = other.pm25;
+        pm10 = other.pm10;
+        pir = other.pir;
+        fieldMask = other.fieldMask;
+        source = other.source;
+        ts = other.ts;
+    }
+}
@@ -0,0 +1,251 @@
+package com.smarthome.web.service;
+
+import com.smarthome.web.shadow.DeviceShadow;
+import com.smarthome.web.tcp.TcpCommandServer;
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sits between the command sources and {@link TcpCommandServer}, keyed per target
+ * device and command kind:
+ * <ul>
+ *   <li>safety commands (door/auth) always go out at once;</li>
+ *   <li>latest-wins commands (RGB_SET) go out on the leading edge, then at most one
+ *       per window carrying the newest value;</li>
+ *   <li>on/off style commands are dropped when they repeat the last one sent within
+ *       the dedupe window and the {@link DeviceShadow} still holds that state, so a
+ *       change made by a board or by Python in between is undone as asked.</li>
+ * </ul>
+ * Commands to one target keep their order: anything other than a latest-wins
+ * command first sends the target's pending RGB_SET, which would otherwise go out
+ * after it (RGB_SET then RGB_OFF must not end with the LED on).
+ */
+@Component
+public class CommandCoalescer {
+
+    private static final Set<String> LATEST_WINS = Set.of("RGB_SET");
+    private static final Map<String, String> STATE_GROUPS = Map.of(
+            "LED_ON", "LED", "LED_OFF", "LED",
+            "FAN_ON", "FAN", "FAN_OFF", "FAN",
+            "RGB_ON", "RGB", "RGB_OFF", "RGB",
+            "LIGHT_SLEEP", "LIGHT", "LIGHT_WARM", "LIGHT");
+
+    private final TcpCommandServer tcpCommandServer;
+    private final DeviceShadow shadow;
+    private final WebSocketBroadcaster broadcaster;
+    private final Set<String> safety;
+    private final long windowMs;
+    private final long dedupeMs;
+    private final ScheduledExecutorService timer;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public CommandCoalescer(TcpCommandServer tcpCommandServer, DeviceShadow shadow, WebSocketBroadcaster broadcaster,
+                            @Value("${smarthome.command.coalesce-window-ms:50}") long windowMs,
+                            @Value("${smarthome.command.dedupe-window-ms:1000}") long dedupeMs,
+                            @Value("${smarthome.command.safety:UNLOCK,LOCK,REQ_FACE_UNLOCK,PROMPT_AUTH,REGISTER_FACE}") Set<String> safety) {
+        this.tcpCommandServer = tcpCommandServer;
+        this.shadow = shadow;
+        this.broadcaster = broadcaster;
+        this.windowMs = windowMs;
+        this.dedupeMs = dedupeMs;
+        this.safety = safety;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "command-coalescer");
+            t.setDaemon(true);
+            return t;
+        });
+        long sweepMs = Math.max(1000, Math.max(windowMs, dedupeMs));
+        timer.scheduleWithFixedDelay(this::sweep, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void submit(String cmd) {
+        submit(null, cmd);
+    }
+
+    /** {@code target} is a device id, {@code room:<room>}, {@code *} or null for capability routing. */
+    public void submit(String target, String cmd) {
+        String kind = kindOf(cmd);
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(target == null ? "" : target, k -> new Lane(target));
+            // sends happen under the lane lock so the timer cannot reorder them; sendCommand
+            // journals, broadcasts and hands the command to the cluster, but never blocks on a board
+            synchronized (lane) {
+                if (lane.retired) continue;
+                submit(lane, kind, cmd);
+                return;
+            }
+        }
+    }
+
+    private void submit(Lane lane, String kind, String cmd) {
+        if (!LATEST_WINS.contains(kind)) flushPending(lane);
+        if (safety.contains(kind) || windowMs <= 0) {
+            send(lane.target, cmd);
+        } else if (LATEST_WINS.contains(kind)) {
+            latestWins(lane, lane.slot(kind), cmd);
+        } else if (STATE_GROUPS.containsKey(kind)) {
+            dedupe(lane, lane.slot(STATE_GROUPS.get(kind)), cmd);
+        } else {
+            send(lane.target, cmd);
+        }
+    }
+
+    private void latestWins(Lane lane, Slot slot, String cmd) {
+        if (slot.windowOpen) {
+            if (slot.pending != null) coalesced.incrementAndGet();
+            slot.pending = cmd;
+            return;
+        }
+        slot.windowOpen = true;
+        // scheduled first: if the send throws, the window still closes
+        timer.schedule(() -> closeWindow(lane, slot), windowMs, TimeUnit.MILLISECONDS);
+        send(lane.target, cmd);
+    }
+
+    private void closeWindow(Lane lane, Slot slot) {
+        synchronized (lane) {
+            String next = slot.pending;
+            slot.pending = null;
+            if (next == null) {
+                slot.windowOpen = false;
+                return;
+            }
+            try {
+                send(lane.target, next);
+            } catch (RuntimeException e) {
+                // a timer task that throws is never run again; leave the window closed for the next RGB_SET
+                slot.windowOpen = false;
+                failed.incrementAndGet();
+                report("Coalesced " + next + " failed: " + e);
+                return;
+            }
+        }
+        timer.schedule(() -> closeWindow(lane, slot), windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drops lanes with nothing pending and no dedupe state left. Targets come from
+     * clients, so lanes would otherwise pile up; a submit that raced with the sweep
+     * sees {@code retired} and takes a fresh lane.
+     */
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Lane lane : lanes.values()) {
+                synchronized (lane) {
+                    if (!lane.idle(now, dedupeMs)) continue;
+                    lane.retired = true;
+                    lanes.remove(lane.key(), lane);
+                }
+            }
+        } catch (RuntimeException e) {
+            report("Command lane sweep failed: " + e);
+        }
+    }
+
+    private void report(String message) {
+        try {
+            broadcaster.broadcast("error", message);
+        } catch (RuntimeException ignored) {
+        }
+    }
+
+    /** Sends what the open latest-wins windows hold; they close empty on their next tick. */
+    private void flushPending(Lane lane) {
+        for (String kind : LATEST_WINS) {
+            Slot slot = lane.slots.get(kind);
+            if (slot == null || slot.pending == null) continue;
+            String pending = slot.pending;
+            slot.pending = null;
+            send(lane.target, pending);
+        }
+    }
+
+    private void dedupe(Lane lane, Slot slot, String cmd) {
+        long now = System.currentTimeMillis();
+        if (cmd.equals(slot.lastSent) && now - slot.lastSentAt < dedupeMs && shadow.reflects(cmd)) {
+            suppressed.incrementAndGet();
+            return;
+        }
+        slot.lastSent = cmd;
+        slot.lastSentAt = now;
+        send(lane.target, cmd);
+    }
+
+    private void send(String target, String cmd) {
+        sent.incrementAndGet();
+        tcpCommandServer.sendCommand(target, cmd);
+    }
+
+    static String kindOf(String cmd) {
+        String trimmed = cmd.trim();
+        int space = trimmed.indexOf(' ');
+        return (space < 0 ? trimmed : trimmed.substring(0, space)).toUpperCase(Locale.ROOT);
+    }
+
+    public Stats stats() {
+        return new Stats(sent.get(), coalesced.get(), suppressed.get(), failed.get(), lanes.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Commands written to the boards, merged into a later RGB_SET, dropped as repeats,
+     * and lost to a failed send from the window timer; {@code lanes} is targets tracked.
+     */
+    public record Stats(long sent, long coalesced, long suppressed, long failed, int lanes) {
+    }
+
+    /** Everything queued for one target; guarded by its own monitor. */
+    private static final class Lane {
+        final String target;
+        final Map<String, Slot> slots = new HashMap<>();
+        boolean retired;
+
+        Lane(String target) {
+            this.target = target;
+        }
+
+        String key() {
+            return target == null ? "" : target;
+        }
+
+        boolean idle(long now, long dedupeMs) {
+            for (Slot slot : slots.values()) {
+                if (slot.windowOpen || slot.pending != null || now - slot.lastSentAt < dedupeMs) return false;
+            }
+            return true;
+        }
+
+        Slot slot(String kind) {
+            return slots.computeIfAbsent(kind, k -> new Slot());
+        }
+    }
+
+    private static final class Slot {
+        boolean windowOpen;
+        String pending;
+        String lastSent;
+        long lastSentAt;
+    }
+}
@@ -1,25 +1,33 @@
 package com.smarthome.web.service;
 
-import com.smarthome.web.tcp.TcpCommandServer;
 import org.springframework.stereotype.Service;
 
 @Service
 public class CommandService {
 
-    private final TcpCommandServer tcpCommandServer;
+    private final CommandCoalescer commandCoalescer;
     private final VoiceClient voiceClient;
 
-    public CommandService(TcpCommandServer tcpCommandServer, VoiceClient voiceClient) {
-        this.tcpCommandServer = tcpCommandServer;
+    public CommandService(CommandCoalescer commandCoalescer, VoiceClient voiceClient) {
+        this.commandCoalescer = commandCoalescer;
         this.voiceClient = voiceClient;
     }
 
     public void sendCommand(String cmd) {
-        tcpCommandServer.sendCommand(cmd);
+        commandCoalescer.submit(cmd);
+    }
+
+    /** Sends to a device id, {@code room:<room>} or {@code *}; null routes by capability. */
+    public void sendCommand(String target, String cmd) {
+        commandCoalescer.submit(target, cmd);
     }
 
     public void sendRgb(int r, int g, int b) {
-        tcpCommandServer.sendCommand("RGB_SET " + r + " " + g + " " + b);
+        sendRgb(null, r, g, b);
+    }
+
+    public void sendRgb(String target, int r, int g, int b) {
+        commandCoalescer.submit(target, "RGB_SET " + r + " " + g + " " + b);
     }
 
     public void voiceStart() {
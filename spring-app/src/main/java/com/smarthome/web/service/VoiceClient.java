@@ -1,21 +1,193 @@
 package com.smarthome.web.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Long-lived line channel to the Python voice server. {@link #send(String)} only
+ * queues; one writer thread keeps the socket open, reconnects with jittered
+ * exponential backoff, and holds up to {@code max-pending} messages (oldest
+ * dropped first) while the server is down.
+ */
 @Component
 public class VoiceClient {
 
-    private static final String HOST = "127.0.0.1";
-    private static final int PORT = 40191;
+    private static final long IDLE_CHECK_MS = 500;
 
+    private final InetSocketAddress address;
+    private final int connectTimeoutMs;
+    private final long backoffMinMs;
+    private final long backoffMaxMs;
+    private final LinkedBlockingDeque<Pending> pending;
+    private final ByteBuffer probe = ByteBuffer.allocate(256);
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile SocketChannel channel;
+
+    private final Timer connectTimer;
+    private final Timer sendTimer;
+    private final Counter dropped;
+    private final Counter reconnects;
+    private final AtomicLong connectFailures = new AtomicLong();
+
+    public VoiceClient(@Value("${smarthome.voice.host:127.0.0.1}") String host,
+                       @Value("${smarthome.voice.port:40191}") int port,
+                       @Value("${smarthome.voice.max-pending:32}") int maxPending,
+                       @Value("${smarthome.voice.connect-timeout-ms:1000}") int connectTimeoutMs,
+                       @Value("${smarthome.voice.backoff-min-ms:100}") long backoffMinMs,
+                       @Value("${smarthome.voice.backoff-max-ms:5000}") long backoffMaxMs,
+                       MeterRegistry meterRegistry) {
+        this.address = new InetSocketAddress(host, port);
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.backoffMinMs = Math.max(1, backoffMinMs);
+        this.backoffMaxMs = Math.max(this.backoffMinMs, backoffMaxMs);
+        this.pending = new LinkedBlockingDeque<>(Math.max(1, maxPending));
+
+        this.connectTimer = Timer.builder("smarthome.voice.connect")
+                .description("Connecting to the voice server").register(meterRegistry);
+        this.sendTimer = Timer.builder("smarthome.voice.send")
+                .description("From send() to the line being written to the socket").register(meterRegistry);
+        this.dropped = Counter.builder("smarthome.voice.dropped")
+                .description("Messages dropped because the pending buffer was full").register(meterRegistry);
+        this.reconnects = Counter.builder("smarthome.voice.reconnects")
+                .description("Connections opened after the first").register(meterRegistry);
+        Gauge.builder("smarthome.voice.pending", pending, LinkedBlockingDeque::size).register(meterRegistry);
+        Gauge.builder("smarthome.voice.connected", this, c -> c.channel != null ? 1 : 0).register(meterRegistry);
+        Gauge.builder("smarthome.voice.connect.failures", connectFailures, AtomicLong::get).register(meterRegistry);
+
+        this.writer = new Thread(this::run, "voice-client");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Queues {@code msg}; never blocks. */
     public void send(String msg) {
-        try (Socket socket = new Socket(HOST, PORT);
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
-            out.println(msg);
-        } catch (Exception ignored) {
+        Pending p = new Pending(msg, System.nanoTime());
+        while (!pending.offerLast(p)) {
+            if (pending.pollFirst() != null) dropped.increment();
+        }
+        // cut a reconnect backoff short: someone is waiting on this message
+        if (channel == null) LockSupport.unpark(writer);
+    }
+
+    public boolean isConnected() {
+        return channel != null;
+    }
+
+    private void run() {
+        long backoff = backoffMinMs;
+        boolean connectedBefore = false;
+        while (running) {
+            if (channel == null) {
+                if (!connect()) {
+                    sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+                    backoff = Math.min(backoffMaxMs, backoff * 2);
+                    continue;
+                }
+                if (connectedBefore) reconnects.increment();
+                connectedBefore = true;
+                backoff = backoffMinMs;
+            }
+            Pending next;
+            try {
+                next = pending.pollFirst(IDLE_CHECK_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (!peerOpen()) {
+                disconnect();
+                requeue(next);
+                continue;
+            }
+            if (next == null) continue;
+            try {
+                write(next.msg());
+                sendTimer.record(System.nanoTime() - next.queuedAt(), TimeUnit.NANOSECONDS);
+            } catch (IOException e) {
+                disconnect();
+                requeue(next);
+            }
+        }
+        disconnect();
+    }
+
+    private boolean connect() {
+        long start = System.nanoTime();
+        SocketChannel ch = null;
+        try {
+            ch = SocketChannel.open();
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ch.socket().connect(address, connectTimeoutMs);
+            ch.configureBlocking(false);
+            connectTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            channel = ch;
+            return true;
+        } catch (IOException e) {
+            connectFailures.incrementAndGet();
+            if (ch != null) {
+                try { ch.close(); } catch (IOException ignored) {}
+            }
+            return false;
         }
     }
+
+    /** Non-blocking read: -1 means the server closed its side (e.g. it restarted). */
+    private boolean peerOpen() {
+        try {
+            probe.clear();
+            return channel.read(probe) >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void write(String msg) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((msg + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            if (channel.write(line) == 0) Thread.onSpinWait();
+        }
+    }
+
+    private void disconnect() {
+        SocketChannel ch = channel;
+        channel = null;
+        if (ch != null) {
+            try { ch.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void requeue(Pending p) {
+        if (p != null && !pending.offerFirst(p)) dropped.increment();
+    }
+
+    private void sleep(long ms) {
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(ms));
+        if (Thread.interrupted()) running = false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+    }
+
+    private record Pending(String msg, long queuedAt) {
+    }
 }
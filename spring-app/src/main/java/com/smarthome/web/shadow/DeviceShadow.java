@@ -0,0 +1,142 @@
+package com.smarthome.web.shadow;
+
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last known value of every device attribute (led, fan, rgb, door, sensor, ...),
+ * each stamped with a version from one monotonically increasing counter.
+ * Reads never block; concurrent writers to the same attribute keep the higher
+ * version. Every change is broadcast as a {@code shadow} delta, so a client can
+ * take a snapshot and then apply deltas whose version is newer than what it holds.
+ * The {@code sensor} attribute is the exception: {@code sensor} frames already
+ * stream it, so it is stored without a delta and only shows up in snapshots.
+ * Versions only mean something within one run of one node: snapshots and deltas
+ * carry the run's {@code epoch}, and a resume from another epoch gets the full state.
+ */
+@Component
+public class DeviceShadow {
+
+    /** Command to the attribute and value it sets. */
+    private static final Map<String, String[]> STATE_COMMANDS = Map.of(
+            "LED_ON", new String[]{"led", "ON"}, "LED_OFF", new String[]{"led", "OFF"},
+            "FAN_ON", new String[]{"fan", "ON"}, "FAN_OFF", new String[]{"fan", "OFF"},
+            "RGB_ON", new String[]{"rgb_power", "ON"}, "RGB_OFF", new String[]{"rgb_power", "OFF"},
+            "LIGHT_SLEEP", new String[]{"light_mode", "SLEEP"}, "LIGHT_WARM", new String[]{"light_mode", "WARM"});
+
+    private final Map<String, Attribute> attributes = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final String epoch = Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36);
+    private final WebSocketBroadcaster broadcaster;
+
+    public DeviceShadow(WebSocketBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    /** Identifies this run; versions from another epoch cannot be compared with ours. */
+    public String epoch() {
+        return epoch;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    /** Current value of one attribute, or null if it was never set. */
+    public Object get(String name) {
+        Attribute current = attributes.get(name);
+        return current != null ? current.value() : null;
+    }
+
+    /** Sets an attribute; returns its version, or 0 if the value did not change. */
+    public long put(String name, Object value) {
+        return put(name, value, true);
+    }
+
+    /** {@code notify = false} is for rebuilding state, e.g. from the journal, without sending deltas. */
+    public long put(String name, Object value, boolean notify) {
+        Attribute current = attributes.get(name);
+        if (current != null && Objects.equals(current.value(), value)) return 0;
+        Attribute next = new Attribute(value, version.incrementAndGet(), System.currentTimeMillis());
+        attributes.merge(name, next, (old, n) -> n.version() > old.version() ? n : old);
+        if (notify) {
+            broadcaster.broadcast("shadow", Map.of("epoch", epoch, "version", next.version(),
+                    "attributes", Map.of(name, next)));
+        }
+        return next.version();
+    }
+
+    /** Updates the shadow from a command line sent to or received from the boards. */
+    public void applyCommand(String rawCmd) {
+        applyCommand(rawCmd, true);
+    }
+
+    public void applyCommand(String rawCmd, boolean notify) {
+        String cmd = rawCmd.trim().toUpperCase(Locale.ROOT);
+        if (cmd.startsWith("RGB_SET")) {
+            put("rgb", cmd.substring("RGB_SET".length()).trim(), notify);
+            put("rgb_power", "ON", notify);
+            return;
+        }
+        String[] state = STATE_COMMANDS.get(cmd);
+        if (state != null) {
+            put(state[0], state[1], notify);
+            return;
+        }
+        switch (cmd) {
+            case "UNLOCK", "UNLOCKED", "LOCKED", "ALERT_FAIL_3" -> applyDoorEvent(cmd, notify);
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * True when {@code rawCmd} is an on/off style command whose state the shadow
+     * already holds, whichever path (web, board, Python, peer) set it last.
+     */
+    public boolean reflects(String rawCmd) {
+        String[] state = STATE_COMMANDS.get(rawCmd.trim().toUpperCase(Locale.ROOT));
+        return state != null && state[1].equals(get(state[0]));
+    }
+
+    public void applyDoorEvent(String event) {
+        applyDoorEvent(event, true);
+    }
+
+    public void applyDoorEvent(String event, boolean notify) {
+        String upper = event.trim().toUpperCase(Locale.ROOT);
+        put("door", upper.equals("UNLOCK") ? "UNLOCKED" : upper, notify);
+    }
+
+    /**
+     * Every attribute with a version above {@code sinceVersion}; 0 gives the full
+     * state, and so does an {@code epoch} other than ours (a restart, or another
+     * cluster node), whatever the version.
+     */
+    public Map<String, Object> snapshot(String sinceEpoch, long sinceVersion) {
+        long at = version.get();
+        if (!epoch.equals(sinceEpoch) || sinceVersion > at) sinceVersion = 0;
+        Map<String, Attribute> changed = new LinkedHashMap<>();
+        long since = sinceVersion;
+        attributes.forEach((name, attr) -> {
+            if (attr.version() > since) changed.put(name, attr);
+        });
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("epoch", epoch);
+        snapshot.put("version", at);
+        snapshot.put("full", since <= 0);
+        snapshot.put("attributes", changed);
+        return snapshot;
+    }
+
+    public record Attribute(Object value, long version, long ts) {
+    }
+}
@@ -0,0 +1,178 @@
+package com.smarthome.web.tcp;
+
+import com.smarthome.web.ws.WebSocketBroadcaster;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional acknowledgement protocol on the command port. A board opts in by
+ * sending {@code CAPS ACK}; from then on commands to it are written as
+ * {@code @<seq> <command>} and it answers {@code ACK <seq>}. Unanswered commands
+ * are resent after {@code ack-timeout-ms} up to {@code ack-retries} times, then
+ * reported as lost. Command-to-ack latency is recorded per device and command kind.
+ */
+@Component
+public class CommandAckTracker {
+
+    public static final String CAPABILITY = "ACK";
+    /** Stats bucket for boards that never sent {@code HELLO}; their address changes on every reconnect. */
+    private static final String UNREGISTERED = "unregistered";
+    /** Keys beyond this share an {@code other} entry, so the stats stay bounded. */
+    private static final int MAX_KEYS = 256;
+
+    private final WebSocketBroadcaster broadcaster;
+    private final long timeoutNanos;
+    private final int maxRetries;
+    private final AtomicLong seq = new AtomicLong();
+    private final Map<Long, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> timeouts = new ConcurrentHashMap<>();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong scanFailures = new AtomicLong();
+    private final ScheduledExecutorService scanner;
+
+    public CommandAckTracker(WebSocketBroadcaster broadcaster,
+                             @Value("${smarthome.command.ack-timeout-ms:500}") long timeoutMs,
+                             @Value("${smarthome.command.ack-retries:2}") int maxRetries) {
+        this.broadcaster = broadcaster;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMs));
+        this.maxRetries = Math.max(0, maxRetries);
+        this.scanner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "command-ack-scanner");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(10, timeoutMs / 4);
+        scanner.scheduleWithFixedDelay(this::expire, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Sends {@code cmd} with a sequence id to an ack-capable connection. */
+    public boolean send(TcpConnection connection, String cmd) {
+        long id = seq.incrementAndGet();
+        InFlight f = new InFlight(connection, cmd, id);
+        inFlight.put(id, f);
+        f.sentAt = System.nanoTime();
+        if (!connection.send(f.line)) {
+            inFlight.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    /** Handles an {@code ACK <seq>} line; returns false if the line is not an ack. */
+    public boolean onAck(TcpConnection connection, String line) {
+        if (!line.regionMatches(true, 0, "ACK ", 0, 4)) return false;
+        String rest = line.substring(4).trim();
+        int space = rest.indexOf(' ');
+        long id;
+        try {
+            id = Long.parseLong(space < 0 ? rest : rest.substring(0, space));
+        } catch (NumberFormatException e) {
+            return true;
+        }
+        InFlight f = inFlight.get(id);
+        if (f == null || f.connection != connection || !inFlight.remove(id, f)) return true;
+        long micros = (System.nanoTime() - f.firstSentAt) / 1000;
+        latencies.computeIfAbsent(key(connection, f.cmd), k -> new LatencyHistogram()).record(micros);
+        return true;
+    }
+
+    public void onClose(TcpConnection connection) {
+        inFlight.values().removeIf(f -> f.connection == connection);
+    }
+
+    /** Never throws: an exception would cancel the scan, and nothing would be retried or expired again. */
+    private void expire() {
+        try {
+            expireInFlight();
+        } catch (RuntimeException e) {
+            scanFailures.incrementAndGet();
+            try {
+                broadcaster.broadcast("error", "Command ack scan failed: " + e);
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+
+    private void expireInFlight() {
+        long now = System.nanoTime();
+        for (Iterator<InFlight> it = inFlight.values().iterator(); it.hasNext(); ) {
+            InFlight f = it.next();
+            if (now - f.sentAt < timeoutNanos) continue;
+            if (f.attempts <= maxRetries && f.connection.isOpen()) {
+                f.attempts++;
+                f.sentAt = now;
+                retries.incrementAndGet();
+                f.connection.send(f.line);
+            } else {
+                it.remove();
+                timeouts.computeIfAbsent(bounded(timeouts, device(f.connection), "other"), k -> new AtomicLong())
+                        .incrementAndGet();
+                broadcaster.broadcast("warn", "No ACK from " + f.connection.getName() + " for " + f.cmd);
+            }
+        }
+    }
+
+    private String key(TcpConnection connection, String cmd) {
+        String trimmed = cmd.trim();
+        int space = trimmed.indexOf(' ');
+        String kind = (space < 0 ? trimmed : trimmed.substring(0, space)).toUpperCase(Locale.ROOT);
+        return bounded(latencies, device(connection) + " " + kind, "other");
+    }
+
+    private static String device(TcpConnection connection) {
+        String device = connection.getDeviceId();
+        return device != null ? device : UNREGISTERED;
+    }
+
+    private static String bounded(Map<String, ?> stats, String key, String overflow) {
+        return stats.containsKey(key) || stats.size() < MAX_KEYS ? key : overflow;
+    }
+
+    public Stats stats() {
+        Map<String, LatencyHistogram.Summary> summaries = new LinkedHashMap<>();
+        latencies.forEach((k, h) -> summaries.put(k, h.summary()));
+        Map<String, Long> lost = new LinkedHashMap<>();
+        timeouts.forEach((k, v) -> lost.put(k, v.get()));
+        return new Stats(inFlight.size(), retries.get(), scanFailures.get(), lost, summaries);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scanner.shutdownNow();
+    }
+
+    /**
+     * {@code latency} is keyed by {@code "<device> <command kind>"}, {@code timeouts} by
+     * device; boards without a device id share {@code unregistered}.
+     */
+    public record Stats(int inFlight, long retries, long scanFailures, Map<String, Long> timeouts,
+                        Map<String, LatencyHistogram.Summary> latency) {
+    }
+
+    private static final class InFlight {
+        final TcpConnection connection;
+        final String cmd;
+        final String line;
+        final long firstSentAt = System.nanoTime();
+        volatile long sentAt;
+        int attempts = 1;
+
+        InFlight(TcpConnection connection, String cmd, long id) {
+            this.connection = connection;
+            this.cmd = cmd;
+            this.line = "@" + id + " " + cmd;
+        }
+    }
+}
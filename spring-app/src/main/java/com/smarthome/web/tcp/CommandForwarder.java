@@ -0,0 +1,9 @@
+package com.smarthome.web.tcp;
+
+/** Passes a command sent from the web side on to the other cluster nodes. */
+@FunctionalInterface
+public interface CommandForwarder {
+
+    /** Returns how many peer nodes are connected to receive it. */
+    int forward(String target, String cmd);
+}
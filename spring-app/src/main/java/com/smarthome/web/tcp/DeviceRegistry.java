@@ -0,0 +1,179 @@
+package com.smarthome.web.tcp;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routing table for the command port. A client registers with
+ * {@code HELLO <deviceId> [ROOM=<room>] [CAPS=LED,FAN,...]}; commands are then
+ * addressed by target:
+ * <ul>
+ *   <li>{@code <deviceId>} - that device only;</li>
+ *   <li>{@code room:<room>} - every device registered in the room;</li>
+ *   <li>{@code *} - every connected client (explicit broadcast);</li>
+ *   <li>no target - devices whose capabilities cover the command, plus clients
+ *       that never registered, which keeps legacy boards and the Python runtime
+ *       working unchanged.</li>
+ * </ul>
+ * Protocol flags such as {@link CommandAckTracker#CAPABILITY} may share the
+ * {@code CAPS} list but are kept on the connection only, never used for routing.
+ */
+@Component
+public class DeviceRegistry {
+
+    public static final String BROADCAST = "*";
+    public static final String ROOM_PREFIX = "room:";
+
+    private static final Map<String, String> CAPABILITY_BY_KIND = Map.ofEntries(
+            Map.entry("LED_ON", "LED"), Map.entry("LED_OFF", "LED"),
+            Map.entry("FAN_ON", "FAN"), Map.entry("FAN_OFF", "FAN"),
+            Map.entry("RGB_SET", "RGB"), Map.entry("RGB_ON", "RGB"), Map.entry("RGB_OFF", "RGB"),
+            Map.entry("LIGHT_SLEEP", "LIGHT"), Map.entry("LIGHT_WARM", "LIGHT"),
+            Map.entry("UNLOCK", "DOOR"), Map.entry("LOCK", "DOOR"),
+            Map.entry("REQ_FACE_UNLOCK", "FACE"), Map.entry("REGISTER_FACE", "FACE"),
+            Map.entry("PROMPT_AUTH", "FACE"));
+    private static final Set<String> PROTOCOL_FLAGS = Set.of(CommandAckTracker.CAPABILITY);
+
+    private final Map<TcpConnection, Device> devices = new ConcurrentHashMap<>();
+    private final Map<String, TcpConnection> byId = new ConcurrentHashMap<>();
+    private final Map<String, Set<TcpConnection>> byRoom = new ConcurrentHashMap<>();
+
+    /**
+     * Parses a {@code HELLO} line and registers {@code connection}. A device id that
+     * is already taken moves to the new connection (a board reconnecting). Capabilities
+     * are added to any the connection announced with {@code CAPS}. Throws
+     * {@link IllegalArgumentException} for a line without a usable device id.
+     */
+    public synchronized Device register(TcpConnection connection, String hello) {
+        String[] parts = hello.trim().split("\\s+");
+        String id = helloId(parts);
+        String room = null;
+        Set<String> caps = Set.of();
+        for (int i = 2; i < parts.length; i++) {
+            String part = parts[i];
+            int eq = part.indexOf('=');
+            if (eq < 0) continue;
+            String key = part.substring(0, eq).toUpperCase(Locale.ROOT);
+            String value = part.substring(eq + 1);
+            if (key.equals("ROOM") && !value.isEmpty()) room = value.toLowerCase(Locale.ROOT);
+            else if (key.equals("CAPS")) caps = parseCapabilities(value);
+        }
+        unregister(connection);
+        TcpConnection previous = byId.get(id);
+        if (previous != null) unregister(previous);
+
+        Device device = new Device(id, room, routingCapabilities(caps), connection.getId());
+        devices.put(connection, device);
+        byId.put(id, connection);
+        if (room != null) byRoom.computeIfAbsent(room, r -> ConcurrentHashMap.newKeySet()).add(connection);
+        connection.setDeviceId(id);
+        connection.addCapabilities(caps);
+        return device;
+    }
+
+    public synchronized void unregister(TcpConnection connection) {
+        Device device = devices.remove(connection);
+        if (device == null) return;
+        byId.remove(device.id(), connection);
+        if (device.room() != null) {
+            Set<TcpConnection> members = byRoom.get(device.room());
+            if (members != null) {
+                members.remove(connection);
+                if (members.isEmpty()) byRoom.remove(device.room());
+            }
+        }
+    }
+
+    /**
+     * Connections that should receive {@code cmd} for {@code target}, never including
+     * {@code exclude}. {@code clients} is every open connection on the port.
+     */
+    public List<TcpConnection> route(String target, String cmd, Collection<TcpConnection> clients,
+                                     TcpConnection exclude) {
+        if (target == null || target.isBlank()) {
+            String capability = CAPABILITY_BY_KIND.get(kindOf(cmd));
+            List<TcpConnection> out = new ArrayList<>(clients.size());
+            for (TcpConnection c : clients) {
+                if (c == exclude) continue;
+                Device device = devices.get(c);
+                if (device == null || capability == null || device.accepts(capability)) out.add(c);
+            }
+            return out;
+        }
+        if (target.equals(BROADCAST)) {
+            List<TcpConnection> out = new ArrayList<>(clients);
+            out.remove(exclude);
+            return out;
+        }
+        if (target.regionMatches(true, 0, ROOM_PREFIX, 0, ROOM_PREFIX.length())) {
+            Set<TcpConnection> members = byRoom.get(target.substring(ROOM_PREFIX.length()).toLowerCase(Locale.ROOT));
+            if (members == null) return List.of();
+            List<TcpConnection> out = new ArrayList<>(members);
+            out.remove(exclude);
+            return out;
+        }
+        TcpConnection c = byId.get(target);
+        return c == null || c == exclude ? List.of() : List.of(c);
+    }
+
+    public List<Device> devices() {
+        List<Device> list = new ArrayList<>(devices.values());
+        list.sort((a, b) -> a.id().compareTo(b.id()));
+        return Collections.unmodifiableList(list);
+    }
+
+    /** {@code HELLO} on its own too, so a board that forgot its id gets an error instead of being forwarded. */
+    static boolean isHello(String line) {
+        return line.regionMatches(true, 0, "HELLO", 0, 5)
+                && (line.length() == 5 || Character.isWhitespace(line.charAt(5)));
+    }
+
+    /** The device id of a split {@code HELLO} line; throws {@link IllegalArgumentException} if it has none. */
+    static String helloId(String[] parts) {
+        if (parts.length < 2 || parts[1].indexOf('=') >= 0) {
+            throw new IllegalArgumentException("HELLO needs a device id");
+        }
+        String id = parts[1];
+        if (id.equals(BROADCAST) || id.regionMatches(true, 0, ROOM_PREFIX, 0, ROOM_PREFIX.length())) {
+            throw new IllegalArgumentException("device id " + id + " is a target form");
+        }
+        return id;
+    }
+
+    static Set<String> parseCapabilities(String list) {
+        Set<String> caps = new HashSet<>();
+        for (String cap : list.split("[,\\s]+")) {
+            if (!cap.isBlank()) caps.add(cap.trim().toUpperCase(Locale.ROOT));
+        }
+        return Set.copyOf(caps);
+    }
+
+    private static Set<String> routingCapabilities(Set<String> caps) {
+        if (caps.stream().noneMatch(PROTOCOL_FLAGS::contains)) return caps;
+        Set<String> routing = new HashSet<>(caps);
+        routing.removeAll(PROTOCOL_FLAGS);
+        return Set.copyOf(routing);
+    }
+
+    private static String kindOf(String cmd) {
+        int space = cmd.indexOf(' ');
+        return (space < 0 ? cmd : cmd.substring(0, space)).toUpperCase(Locale.ROOT);
+    }
+
+    /** A registered client; an empty capability set accepts every command. */
+    public record Device(String id, String room, Set<String> capabilities, String address) {
+
+        boolean accepts(String capability) {
+            return capabilities.isEmpty() || capabilities.contains(capability);
+        }
+    }
+}
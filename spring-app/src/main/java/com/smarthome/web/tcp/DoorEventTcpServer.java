@@ -1,59 +1,44 @@
 package com.smarthome.web.tcp;
 
+import com.smarthome.web.bus.EventBus;
 import com.smarthome.web.ws.WebSocketBroadcaster;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 
 @Component
-public class DoorEventTcpServer {
+public class DoorEventTcpServer implements LineHandler {
 
-    // Python main.py는 DOOR_EVENT_PORT = 39189로 접속하므로 맞춰준다.
-    private static final int PORT = 39189;
+    private final TcpEventLoop eventLoop;
     private final WebSocketBroadcaster broadcaster;
+    private final EventBus bus;
+    private final int port;
     private volatile boolean running = false;
 
-    public DoorEventTcpServer(WebSocketBroadcaster broadcaster) {
+    // Python main.py는 DOOR_EVENT_PORT = 39189로 접속하므로 기본값을 맞춰준다.
+    public DoorEventTcpServer(TcpEventLoop eventLoop, WebSocketBroadcaster broadcaster, EventBus bus,
+                              @Value("${smarthome.tcp.door-port:39189}") int port) {
+        this.eventLoop = eventLoop;
         this.broadcaster = broadcaster;
+        this.bus = bus;
+        this.port = port;
     }
 
     public void start() {
         if (running) return;
         running = true;
-        Thread t = new Thread(this::runServer, "tcp-door-event-server");
-        t.setDaemon(true);
-        t.start();
-    }
-
-    private void runServer() {
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            broadcaster.broadcast("info", "Door event server listening on " + PORT);
-            while (running) {
-                Socket client = serverSocket.accept();
-                Thread reader = new Thread(() -> readLoop(client), "door-event-reader");
-                reader.setDaemon(true);
-                reader.start();
-            }
+        try {
+            eventLoop.bind(port, this);
+            broadcaster.broadcast("info", "Door event server listening on " + port);
         } catch (Exception e) {
             broadcaster.broadcast("error", "Door event server error: " + e.getMessage());
         }
     }
 
-    private void readLoop(Socket client) {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                String evt = line.trim();
-                if (!evt.isEmpty()) {
-                    broadcaster.broadcast("door_event", evt);
-                }
-            }
-        } catch (Exception ignored) {
-        } finally {
-            try { client.close(); } catch (Exception ignored) {}
-        }
+    @Override
+    public void onLine(TcpConnection connection, byte[] line, int length) {
+        String evt = new String(line, 0, length, StandardCharsets.UTF_8).trim();
+        if (!evt.isEmpty()) bus.publishDoor(connection, evt);
     }
 }
@@ -0,0 +1,217 @@
+package com.smarthome.web.tcp;
+
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binds the TCP bridge ports as soon as the environment is known, before the
+ * application context is created, so boards can connect and send while Spring is
+ * still starting. One thread accepts and buffers what the boards send (up to
+ * {@code smarthome.tcp.early-buffer-bytes} per connection, after which reading
+ * stops and TCP pushes back). Once the context and the WebSocket layer are up,
+ * {@link TcpEventLoop#adopt(EarlyTcpListeners)} takes over the bound ports and the
+ * waiting connections, and the buffered bytes are framed as if just received.
+ * <p>
+ * It also keeps the startup timeline reported at {@code /api/startup}: when the
+ * ports were bound, when each port accepted its first connection, and when the
+ * bridges were handed over.
+ */
+public final class EarlyTcpListeners implements ApplicationListener<ApplicationEnvironmentPreparedEvent> {
+
+    private final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final Map<Integer, Port> ports = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> firstAccept = new ConcurrentHashMap<>();
+    private final List<String> errors = new ArrayList<>();
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+    private int maxBuffered;
+    private int sensorPort = -1;
+    private long boundAt = -1;
+    private long readyAt = -1;
+    private long bufferedConnections;
+    private long bufferedBytes;
+
+    @Override
+    public synchronized void onApplicationEvent(ApplicationEnvironmentPreparedEvent event) {
+        if (thread != null) return;
+        Environment env = event.getEnvironment();
+        sensorPort = env.getProperty("smarthome.tcp.sensor-port", Integer.class, 39187);
+        if (!env.getProperty("smarthome.tcp.early-listen", Boolean.class, true)) return;
+        maxBuffered = env.getProperty("smarthome.tcp.early-buffer-bytes", Integer.class, 256 * 1024);
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            errors.add("selector: " + e.getMessage());
+            return;
+        }
+        for (int port : new int[]{
+                env.getProperty("smarthome.tcp.command-port", Integer.class, 39186),
+                sensorPort,
+                env.getProperty("smarthome.tcp.door-port", Integer.class, 39189)}) {
+            if (port <= 0) continue;
+            try {
+                ServerSocketChannel server = ServerSocketChannel.open();
+                server.configureBlocking(false);
+                server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                server.bind(new InetSocketAddress(port));
+                ports.put(port, new Port(server));
+                server.register(selector, SelectionKey.OP_ACCEPT, port);
+            } catch (IOException e) {
+                // the event loop binds it later and reports the failure then
+                errors.add(port + ": " + e.getMessage());
+            }
+        }
+        boundAt = System.currentTimeMillis();
+        running = true;
+        thread = new Thread(this::run, "tcp-early");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                return;
+            }
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                if (!key.isValid()) continue;
+                try {
+                    if (key.isAcceptable()) {
+                        accept(key);
+                    } else if (key.isReadable()) {
+                        read(key, buffer);
+                    }
+                } catch (IOException e) {
+                    key.cancel();
+                }
+            }
+        }
+    }
+
+    private void accept(SelectionKey key) throws IOException {
+        int port = (Integer) key.attachment();
+        SocketChannel channel;
+        while ((channel = ((ServerSocketChannel) key.channel()).accept()) != null) {
+            accepted(port);
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Waiting waiting = new Waiting(channel);
+            ports.get(port).waiting.add(waiting);
+            channel.register(selector, SelectionKey.OP_READ, waiting);
+        }
+    }
+
+    private void read(SelectionKey key, ByteBuffer buffer) throws IOException {
+        Waiting waiting = (Waiting) key.attachment();
+        buffer.clear();
+        int n = ((SocketChannel) key.channel()).read(buffer);
+        if (n < 0) {
+            // the event loop sees the end of stream again after replaying the bytes
+            key.cancel();
+            return;
+        }
+        waiting.append(buffer.array(), n);
+        if (waiting.length >= maxBuffered) key.interestOps(0);
+    }
+
+    /** Records the first accepted connection per port; also called by the event loop. */
+    void accepted(int port) {
+        firstAccept.putIfAbsent(port, System.currentTimeMillis());
+    }
+
+    /**
+     * Stops the early thread; the channels stay open for the event loop. Returns the
+     * ports still bound here with the connections waiting on each.
+     */
+    synchronized Map<Integer, Port> handOver() {
+        readyAt = System.currentTimeMillis();
+        if (!running) return Map.of();
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+            // deregisters every channel without closing it
+            selector.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+        }
+        for (Port port : ports.values()) {
+            bufferedConnections += port.waiting.size();
+            for (Waiting w : port.waiting) bufferedBytes += w.length;
+        }
+        return Map.copyOf(ports);
+    }
+
+    public synchronized Report report() {
+        Long sensor = firstAccept.get(sensorPort);
+        Map<String, Long> accepts = new LinkedHashMap<>();
+        firstAccept.forEach((port, at) -> accepts.put(String.valueOf(port), at - jvmStart));
+        return new Report(jvmStart, thread != null, boundAt < 0 ? -1 : boundAt - jvmStart,
+                sensor == null ? -1 : sensor - jvmStart, accepts, readyAt < 0 ? -1 : readyAt - jvmStart,
+                bufferedConnections, bufferedBytes, List.copyOf(errors));
+    }
+
+    /**
+     * Milliseconds since JVM start: ports bound early, first connection accepted on
+     * the sensor port and on every port, and the hand-over to the event loop once
+     * the WebSocket layer was ready; -1 where it has not happened.
+     */
+    public record Report(long jvmStartEpochMs, boolean earlyListen, long listenersBoundMs,
+                         long firstSensorAcceptMs, Map<String, Long> firstAcceptMs, long readyMs,
+                         long bufferedConnections, long bufferedBytes, List<String> errors) {
+    }
+
+    static final class Port {
+
+        final ServerSocketChannel server;
+        final List<Waiting> waiting = new ArrayList<>();
+
+        Port(ServerSocketChannel server) {
+            this.server = server;
+        }
+    }
+
+    /** A connection accepted before the hand-over and the bytes it has sent so far. */
+    static final class Waiting {
+
+        final SocketChannel channel;
+        byte[] data = new byte[0];
+        int length;
+
+        Waiting(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void append(byte[] src, int n) {
+            if (length + n > data.length) data = Arrays.copyOf(data, Math.max(length + n, data.length * 2));
+            System.arraycopy(src, 0, data, length, n);
+            length += n;
+        }
+    }
+}
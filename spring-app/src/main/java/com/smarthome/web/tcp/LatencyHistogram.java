@@ -0,0 +1,60 @@
+package com.smarthome.web.tcp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of microsecond latencies: four sub-buckets per
+ * power of two, so reported percentiles are within about 25% of the true value.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 4 * 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long micros) {
+        long v = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(v));
+        total.incrementAndGet();
+        sum.addAndGet(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    static int indexOf(long v) {
+        if (v < 4) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (msb - 2)) & 3;
+        return Math.min(BUCKETS - 1, 4 * (msb - 1) + sub);
+    }
+
+    static long lowerBound(int index) {
+        if (index < 4) return index;
+        int msb = index / 4 + 1;
+        return (4L + index % 4) << (msb - 2);
+    }
+
+    /** Value at quantile {@code q} (0..1), as the lower bound of its bucket. */
+    public long percentile(double q) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return lowerBound(i);
+        }
+        return max.get();
+    }
+
+    public Summary summary() {
+        long n = total.get();
+        return new Summary(n, n == 0 ? 0 : sum.get() / n, percentile(0.5), percentile(0.9), percentile(0.99), max.get());
+    }
+
+    public record Summary(long count, long meanMicros, long p50Micros, long p90Micros, long p99Micros, long maxMicros) {
+    }
+}
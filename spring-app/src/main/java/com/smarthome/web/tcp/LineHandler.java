@@ -0,0 +1,20 @@
+package com.smarthome.web.tcp;
+
+/**
+ * Callbacks for a port served by {@link TcpEventLoop}.
+ * All methods run on the owning I/O thread, so they must not block.
+ */
+public interface LineHandler {
+
+    default void onOpen(TcpConnection connection) {
+    }
+
+    /**
+     * A complete line without its trailing CR/LF. The array is the connection's
+     * reusable frame buffer and is only valid until this method returns.
+     */
+    void onLine(TcpConnection connection, byte[] line, int length);
+
+    default void onClose(TcpConnection connection) {
+    }
+}
@@ -0,0 +1,26 @@
+package com.smarthome.web.tcp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Traffic meters for one bound port, shared by all of its connections. */
+final class PortMetrics {
+
+    final Counter lines;
+    final Counter bytes;
+    final AtomicInteger connections = new AtomicInteger();
+
+    PortMetrics(MeterRegistry registry, int port, LineHandler handler) {
+        Tags tags = Tags.of("port", String.valueOf(port), "server", handler.getClass().getSimpleName());
+        this.lines = Counter.builder("smarthome.tcp.lines").tags(tags)
+                .description("Lines received").register(registry);
+        this.bytes = Counter.builder("smarthome.tcp.bytes").tags(tags).baseUnit("bytes")
+                .description("Bytes received").register(registry);
+        Gauge.builder("smarthome.tcp.connections", connections, AtomicInteger::get).tags(tags)
+                .description("Connected clients").register(registry);
+    }
+}
@@ -1,74 +1,91 @@
 package com.smarthome.web.tcp;
 
+import com.smarthome.web.bus.EventBus;
+import com.smarthome.web.sensor.SensorPacketParser;
+import com.smarthome.web.sensor.SensorReading;
 import com.smarthome.web.ws.WebSocketBroadcaster;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
+/**
+ * Parses sensor lines on the I/O thread and publishes the readings to the
+ * {@link EventBus}; journaling, fan-out and analytics run in the bus stages.
+ * A board that sends {@code HELLO <deviceId>} first gets its readings sourced by
+ * that id, which survives reconnects; otherwise the source is {@code host:port}.
+ */
 @Component
-public class SensorTcpServer {
+public class SensorTcpServer implements LineHandler {
 
-    private static final int PORT = 39187;
+    private final TcpEventLoop eventLoop;
     private final WebSocketBroadcaster broadcaster;
+    private final EventBus bus;
+    private final Counter parseFailures;
+    private final int port;
     private volatile boolean running = false;
 
-    public SensorTcpServer(WebSocketBroadcaster broadcaster) {
+    public SensorTcpServer(TcpEventLoop eventLoop, WebSocketBroadcaster broadcaster, EventBus bus,
+                           MeterRegistry meterRegistry,
+                           @Value("${smarthome.tcp.sensor-port:39187}") int port) {
+        this.eventLoop = eventLoop;
+        this.port = port;
         this.broadcaster = broadcaster;
+        this.bus = bus;
+        this.parseFailures = Counter.builder("smarthome.sensor.parse.failures")
+                .description("Sensor lines without any known field").register(meterRegistry);
     }
 
     public void start() {
         if (running) return;
         running = true;
-        Thread t = new Thread(this::runServer, "tcp-sensor-server");
-        t.setDaemon(true);
-        t.start();
-    }
-
-    private void runServer() {
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            broadcaster.broadcast("info", "Sensor server listening on " + PORT);
-            while (running) {
-                Socket client = serverSocket.accept();
-                Thread reader = new Thread(() -> readLoop(client), "sensor-reader");
-                reader.setDaemon(true);
-                reader.start();
-            }
+        try {
+            eventLoop.bind(port, this);
+            broadcaster.broadcast("info", "Sensor server listening on " + port);
         } catch (Exception e) {
             broadcaster.broadcast("error", "Sensor server error: " + e.getMessage());
         }
     }
 
-    private void readLoop(Socket client) {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), "UTF-8"))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                if (line.startsWith("SENSOR")) {
-                    Map<String, Object> data = parse(line);
-                    broadcaster.broadcast("sensor", data);
-                }
-            }
-        } catch (Exception ignored) {
-        } finally {
-            try { client.close(); } catch (Exception ignored) {}
+    @Override
+    public void onLine(TcpConnection connection, byte[] line, int length) {
+        if (!SensorPacketParser.isSensorLine(line, 0, length)) {
+            if (length >= 5 && (line[0] == 'H' || line[0] == 'h')) hello(connection, line, length);
+            return;
+        }
+        SensorReading reading = new SensorReading();
+        if (SensorPacketParser.parse(line, 0, length, reading)) {
+            reading.setOrigin(connection.getName(), System.currentTimeMillis());
+            bus.publishSensor(reading);
+        } else {
+            parseFailures.increment();
+            broadcaster.broadcast("sensor", Map.of("raw", new String(line, 0, length, StandardCharsets.UTF_8)));
         }
     }
 
-    private Map<String, Object> parse(String msg) {
-        Map<String, Object> map = new HashMap<>();
+    private void hello(TcpConnection connection, byte[] line, int length) {
+        String text = new String(line, 0, length, StandardCharsets.UTF_8).trim();
+        if (!DeviceRegistry.isHello(text)) return;
+        String id;
         try {
-            String[] parts = msg.split(" ");
-            map.put("gas", parts[1].split("=")[1]);
-            map.put("temp", parts[3].split("=")[1]);
-            map.put("dust", parts[7].split("=")[1]);
-            map.put("pir", Integer.parseInt(parts[8].split("=")[1]));
-        } catch (Exception e) {
-            map.put("raw", msg);
+            id = DeviceRegistry.helloId(text.split("\\s+"));
+        } catch (IllegalArgumentException e) {
+            connection.send("ERROR " + e.getMessage());
+            broadcaster.broadcast("warn", "Rejected HELLO from " + connection.getId() + ": " + e.getMessage());
+            return;
         }
-        return map;
+        String previous = connection.getName();
+        if (previous.equals(id)) return;
+        connection.setDeviceId(id);
+        // readings so far went out under the old name; let its per-source state go
+        bus.publishClosed(previous);
+    }
+
+    @Override
+    public void onClose(TcpConnection connection) {
+        bus.publishClosed(connection.getName());
     }
 }
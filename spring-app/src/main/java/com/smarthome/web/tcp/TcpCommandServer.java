@@ -1,95 +1,198 @@
 package com.smarthome.web.tcp;
 
+import com.smarthome.web.bus.BusEvent;
+import com.smarthome.web.bus.EventBus;
+import com.smarthome.web.journal.EventJournal;
+import com.smarthome.web.journal.JournalEntry;
+import com.smarthome.web.shadow.DeviceShadow;
 import com.smarthome.web.ws.WebSocketBroadcaster;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 @Component
-public class TcpCommandServer {
+public class TcpCommandServer implements LineHandler {
 
-    private static final int PORT = 39186;
+    private static final int MAX_COMMAND_KINDS = 64;
 
-    private final List<PrintWriter> clients = new CopyOnWriteArrayList<>();
+    private final List<TcpConnection> clients = new CopyOnWriteArrayList<>();
+    private final TcpEventLoop eventLoop;
     private final WebSocketBroadcaster broadcaster;
+    private final EventJournal journal;
+    private final DeviceShadow shadow;
+    private final CommandAckTracker ackTracker;
+    private final DeviceRegistry devices;
+    private final MeterRegistry meterRegistry;
+    private final EventBus bus;
+    private final int port;
+    private final Map<String, Counter> commandCounters = new ConcurrentHashMap<>();
+    private volatile CommandForwarder forwarder = (target, cmd) -> 0;
     private volatile boolean running = false;
 
-    public TcpCommandServer(WebSocketBroadcaster broadcaster) {
+    public TcpCommandServer(TcpEventLoop eventLoop, WebSocketBroadcaster broadcaster,
+                            EventJournal journal, DeviceShadow shadow, CommandAckTracker ackTracker,
+                            DeviceRegistry devices, EventBus bus, MeterRegistry meterRegistry,
+                            @Value("${smarthome.tcp.command-port:39186}") int port) {
+        this.eventLoop = eventLoop;
         this.broadcaster = broadcaster;
+        this.journal = journal;
+        this.shadow = shadow;
+        this.ackTracker = ackTracker;
+        this.devices = devices;
+        this.meterRegistry = meterRegistry;
+        this.bus = bus;
+        this.port = port;
+        bus.addStage("commands", this::onBusEvent);
     }
 
     public void start() {
         if (running) return;
         running = true;
-        Thread t = new Thread(this::runServer, "tcp-command-server");
-        t.setDaemon(true);
-        t.start();
-    }
-
-    private void runServer() {
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            broadcaster.broadcast("info", "TCP Command server listening on " + PORT);
-
-            while (running) {
-                Socket clientSocket = serverSocket.accept();
-                broadcaster.broadcast("info", "Client connected: " + clientSocket.getInetAddress());
-                PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true);
-                clients.add(writer);
-
-                Thread reader = new Thread(() -> handleClient(clientSocket, writer), "tcp-client-reader");
-                reader.setDaemon(true);
-                reader.start();
-            }
+        try {
+            eventLoop.bind(port, this);
+            broadcaster.broadcast("info", "TCP Command server listening on " + port);
         } catch (IOException e) {
             broadcaster.broadcast("error", "TCP Command server failed: " + e.getMessage());
         }
     }
 
-    private void handleClient(Socket clientSocket, PrintWriter writer) {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                String cmd = line.trim();
-                if (cmd.isEmpty()) continue;
-                broadcaster.broadcast("from_python", cmd);
-                forwardToOthers(cmd, writer);
-            }
-        } catch (IOException ignored) {
-        } finally {
-            clients.remove(writer);
-            try { clientSocket.close(); } catch (IOException ignored) {}
-            broadcaster.broadcast("info", "Client disconnected");
-        }
+    @Override
+    public void onOpen(TcpConnection connection) {
+        clients.add(connection);
+        broadcaster.broadcast("info", "Client connected: " + connection.getRemoteAddress());
     }
 
-    private void forwardToOthers(String cmd, PrintWriter sender) {
-        for (PrintWriter out : clients) {
-            if (out == sender) continue;
+    @Override
+    public void onLine(TcpConnection connection, byte[] line, int length) {
+        String cmd = new String(line, 0, length, StandardCharsets.UTF_8).trim();
+        if (cmd.isEmpty()) return;
+        if (ackTracker.onAck(connection, cmd)) return;
+        if (cmd.regionMatches(true, 0, "CAPS ", 0, 5)) {
+            connection.addCapabilities(DeviceRegistry.parseCapabilities(cmd.substring(5)));
+            return;
+        }
+        if (DeviceRegistry.isHello(cmd)) {
+            DeviceRegistry.Device device;
             try {
-                out.println(cmd);
-            } catch (Exception ignored) {
+                device = devices.register(connection, cmd);
+            } catch (IllegalArgumentException e) {
+                connection.send("ERROR " + e.getMessage());
+                broadcaster.broadcast("warn", "Rejected HELLO from " + connection.getId() + ": " + e.getMessage());
+                return;
             }
+            broadcaster.broadcast("info", "Device registered: " + device.id()
+                    + (device.room() != null ? " (" + device.room() + ")" : ""));
+            return;
+        }
+        String target = null;
+        if (cmd.regionMatches(true, 0, "TO ", 0, 3)) {
+            String[] parts = cmd.split("\\s+", 3);
+            if (parts.length < 3) return;
+            target = parts[1];
+            cmd = parts[2];
+        }
+        bus.publishCommand(connection, target, cmd);
+    }
+
+    /** The command-forwarding stage; journaling and fan-out are other stages. */
+    private void onBusEvent(BusEvent event, boolean endOfBatch) {
+        if (event.type() != BusEvent.COMMAND) return;
+        countCommand("received", event.text());
+        forwardToOthers(event.target(), event.text(), event.connection());
+    }
+
+    @Override
+    public void onClose(TcpConnection connection) {
+        clients.remove(connection);
+        devices.unregister(connection);
+        ackTracker.onClose(connection);
+        broadcaster.broadcast("info", "Client disconnected");
+    }
+
+    private void forwardToOthers(String target, String cmd, TcpConnection sender) {
+        ByteBuffer frame = TcpConnection.encodeLine(cmd);
+        for (TcpConnection out : devices.route(target, cmd, clients, sender)) {
+            out.send(frame);
         }
     }
 
+    /** Web commands are also handed to {@code forwarder}, for boards connected to other nodes. */
+    public void setForwarder(CommandForwarder forwarder) {
+        this.forwarder = forwarder;
+    }
+
     public void sendCommand(String cmd) {
-        List<PrintWriter> toRemove = new ArrayList<>();
-        for (PrintWriter out : clients) {
-            try {
-                out.println(cmd);
-            } catch (Exception e) {
+        sendCommand(null, cmd);
+    }
+
+    /**
+     * Sends a command from the web side to {@code target}, see {@link DeviceRegistry}
+     * for the target forms; null routes by capability.
+     */
+    public void sendCommand(String target, String cmd) {
+        int peers = forwarder.forward(target, cmd);
+        deliver(target, cmd, "web", peers == 0);
+    }
+
+    /**
+     * A web command another cluster node accepted. Every node reports it to its own
+     * sessions and updates its shadow, whether or not one of its boards took it.
+     */
+    public void sendCommandFromPeer(String target, String cmd) {
+        deliver(target, cmd, "peer", false);
+    }
+
+    private void deliver(String target, String cmd, String from, boolean warnIfUnrouted) {
+        journal.appendText(JournalEntry.COMMAND_SENT, from, cmd);
+        countCommand("sent", cmd);
+        List<TcpConnection> route = devices.route(target, cmd, clients, null);
+        if (route.isEmpty() && target != null && warnIfUnrouted) {
+            broadcaster.broadcast("warn", "No device for target " + target + ": " + cmd);
+            return;
+        }
+        ByteBuffer frame = TcpConnection.encodeLine(cmd);
+        List<TcpConnection> toRemove = new ArrayList<>();
+        for (TcpConnection out : route) {
+            boolean ok = out.hasCapability(CommandAckTracker.CAPABILITY)
+                    ? ackTracker.send(out, cmd)
+                    : out.send(frame);
+            if (!ok) {
                 toRemove.add(out);
             }
         }
         clients.removeAll(toRemove);
-        broadcaster.broadcast("sent", cmd);
+        toRemove.forEach(devices::unregister);
+        broadcaster.broadcast("sent", target == null ? cmd : cmd + " -> " + target);
+        shadow.applyCommand(cmd);
+    }
+
+    /** Counts by the command word; unexpected words beyond a small cap share one series. */
+    private void countCommand(String direction, String cmd) {
+        int space = cmd.indexOf(' ');
+        String kind = (space < 0 ? cmd : cmd.substring(0, space)).toUpperCase(Locale.ROOT);
+        String key = direction + ' ' + kind;
+        Counter counter = commandCounters.get(key);
+        if (counter == null) {
+            if (commandCounters.size() >= MAX_COMMAND_KINDS) {
+                kind = "OTHER";
+                key = direction + " OTHER";
+            }
+            String k = kind;
+            counter = commandCounters.computeIfAbsent(key, x -> Counter.builder("smarthome.commands")
+                    .tags("direction", direction, "kind", k)
+                    .description("Commands by type").register(meterRegistry));
+        }
+        counter.increment();
     }
 }
@@ -0,0 +1,219 @@
+package com.smarthome.web.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One accepted socket on a {@link TcpEventLoop}. Reading and line framing happen
+ * on the I/O thread; {@link #send(ByteBuffer)} may be called from any thread.
+ */
+public final class TcpConnection {
+
+    private static final int MAX_LINE = 8 * 1024;
+    private static final long MAX_PENDING_BYTES = 1024 * 1024;
+
+    private final SocketChannel channel;
+    private final LineHandler handler;
+    private final PortMetrics metrics;
+    private final TcpEventLoop.Worker worker;
+    private final SocketAddress remoteAddress;
+    private final String id;
+
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Runnable flushTask = this::flushFromLoop;
+
+    private SelectionKey key;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private boolean discarding;
+    private volatile boolean open = true;
+    private volatile Set<String> capabilities = Set.of();
+    private volatile String deviceId;
+
+    TcpConnection(SocketChannel channel, LineHandler handler, PortMetrics metrics,
+                  TcpEventLoop.Worker worker) throws IOException {
+        this.channel = channel;
+        this.handler = handler;
+        this.metrics = metrics;
+        this.worker = worker;
+        this.remoteAddress = channel.getRemoteAddress();
+        this.id = remoteAddress instanceof InetSocketAddress inet
+                ? inet.getAddress().getHostAddress() + ":" + inet.getPort()
+                : String.valueOf(remoteAddress);
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /** {@code host:port} of the peer, used as the source id of what it sends. */
+    public String getId() {
+        return id;
+    }
+
+    /** Device id the peer registered with {@code HELLO}, or null. */
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    /** Registered device id if any, otherwise {@link #getId()}. */
+    public String getName() {
+        String device = deviceId;
+        return device != null ? device : id;
+    }
+
+    /** Optional protocol features the peer announced, e.g. {@code ACK}. */
+    public boolean hasCapability(String capability) {
+        return capabilities.contains(capability);
+    }
+
+    /** Adds to what the peer announced before; {@code CAPS} and {@code HELLO ... CAPS=} may come in any order. */
+    public synchronized void addCapabilities(Set<String> added) {
+        if (capabilities.containsAll(added)) return;
+        Set<String> merged = new HashSet<>(capabilities);
+        merged.addAll(added);
+        this.capabilities = Set.copyOf(merged);
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /** Encodes {@code text} plus a newline once so it can be shared across connections. */
+    public static ByteBuffer encodeLine(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(bytes.length + 1);
+        frame.put(bytes).put((byte) '\n').flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    public boolean send(String text) {
+        return send(encodeLine(text));
+    }
+
+    /**
+     * Queues a frame for writing. Returns false if the connection is closed or its
+     * peer has stopped reading; in the latter case the connection is closed.
+     */
+    public boolean send(ByteBuffer frame) {
+        if (!open) return false;
+        ByteBuffer own = frame.duplicate();
+        if (pendingBytes.addAndGet(own.remaining()) > MAX_PENDING_BYTES) {
+            close();
+            return false;
+        }
+        outbound.add(own);
+        if (flushScheduled.compareAndSet(false, true)) {
+            worker.execute(flushTask);
+        }
+        return true;
+    }
+
+    public void close() {
+        if (!open) return;
+        worker.execute(this::closeFromLoop);
+    }
+
+    void register(SelectionKey key) {
+        this.key = key;
+        metrics.connections.incrementAndGet();
+        handler.onOpen(this);
+    }
+
+    void onReadable(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int n = channel.read(buffer);
+        if (n < 0) {
+            closeFromLoop();
+            return;
+        }
+        consume(buffer.array(), n);
+    }
+
+    /** Frames bytes that arrived before the connection was registered, see {@link EarlyTcpListeners}. */
+    void replay(byte[] data, int n) {
+        if (n > 0) consume(data, n);
+    }
+
+    private void consume(byte[] data, int n) {
+        metrics.bytes.increment(n);
+        for (int i = 0; i < n; i++) {
+            byte b = data[i];
+            if (b == '\n') {
+                if (!discarding) {
+                    int len = lineLength;
+                    if (len > 0 && line[len - 1] == '\r') len--;
+                    metrics.lines.increment();
+                    handler.onLine(this, line, len);
+                }
+                lineLength = 0;
+                discarding = false;
+            } else if (!discarding) {
+                if (lineLength == line.length) {
+                    if (lineLength >= MAX_LINE) {
+                        discarding = true;
+                        continue;
+                    }
+                    line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE));
+                }
+                line[lineLength++] = b;
+            }
+        }
+    }
+
+    void onWritable() throws IOException {
+        flush();
+    }
+
+    private void flushFromLoop() {
+        flushScheduled.set(false);
+        if (!open) return;
+        try {
+            flush();
+        } catch (IOException e) {
+            closeFromLoop();
+        }
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer head;
+        while ((head = outbound.peek()) != null) {
+            int written = channel.write(head);
+            pendingBytes.addAndGet(-written);
+            if (head.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            outbound.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    void closeFromLoop() {
+        if (!open) return;
+        open = false;
+        if (key != null) key.cancel();
+        try { channel.close(); } catch (IOException ignored) {}
+        outbound.clear();
+        if (key != null) metrics.connections.decrementAndGet();
+        handler.onClose(this);
+    }
+}
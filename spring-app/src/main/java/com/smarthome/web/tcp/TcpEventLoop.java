@@ -0,0 +1,221 @@
+package com.smarthome.web.tcp;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector-based I/O for every TCP bridge port. Worker 0 accepts on all bound ports
+ * and hands new sockets round-robin to the workers, so connections cost a selection
+ * key and a line buffer instead of a thread. Ports that {@link EarlyTcpListeners}
+ * bound during startup are taken over instead of bound again.
+ */
+@Component
+public class TcpEventLoop {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Worker[] workers;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private volatile boolean started = false;
+    private EarlyTcpListeners early;
+    private Map<Integer, EarlyTcpListeners.Port> adopted = Map.of();
+
+    public TcpEventLoop(@Value("${smarthome.tcp.io-threads:1}") int ioThreads, MeterRegistry meterRegistry) {
+        this.workers = new Worker[Math.max(1, ioThreads)];
+        this.meterRegistry = meterRegistry;
+    }
+
+    /** Takes over the ports bound early; call before the servers {@link #bind} them. */
+    public synchronized void adopt(EarlyTcpListeners early) {
+        this.early = early;
+        this.adopted = early.handOver();
+    }
+
+    public void bind(int port, LineHandler handler) throws IOException {
+        startIfNeeded();
+        EarlyTcpListeners.Port early = takeAdopted(port);
+        ServerSocketChannel server = early != null ? early.server : ServerSocketChannel.open();
+        if (early == null) {
+            try {
+                server.configureBlocking(false);
+                server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                server.bind(new InetSocketAddress(port));
+            } catch (IOException e) {
+                server.close();
+                throw e;
+            }
+        }
+        Binding binding = new Binding(port, handler, new PortMetrics(meterRegistry, port, handler));
+        if (early != null) {
+            for (EarlyTcpListeners.Waiting waiting : early.waiting) adoptConnection(waiting, binding);
+        }
+        Worker acceptor = workers[0];
+        acceptor.execute(() -> {
+            try {
+                server.register(acceptor.selector, SelectionKey.OP_ACCEPT, binding);
+            } catch (IOException e) {
+                try { server.close(); } catch (IOException ignored) {}
+            }
+        });
+    }
+
+    private synchronized EarlyTcpListeners.Port takeAdopted(int port) {
+        return adopted.get(port);
+    }
+
+    /** Registers a connection accepted during startup and frames what it sent meanwhile. */
+    private void adoptConnection(EarlyTcpListeners.Waiting waiting, Binding binding) {
+        Worker target = pickWorker();
+        try {
+            TcpConnection connection = new TcpConnection(waiting.channel, binding.handler(), binding.metrics(), target);
+            target.execute(() -> {
+                target.register(waiting.channel, connection);
+                if (connection.isOpen()) connection.replay(waiting.data, waiting.length);
+            });
+        } catch (IOException e) {
+            try { waiting.channel.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private synchronized void startIfNeeded() throws IOException {
+        if (started) return;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(Selector.open());
+            Thread t = new Thread(workers[i], "tcp-io-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        started = true;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (!started) return;
+        for (Worker worker : workers) {
+            worker.running = false;
+            worker.selector.wakeup();
+        }
+        started = false;
+    }
+
+    private Worker pickWorker() {
+        return workers[Math.floorMod(nextWorker.getAndIncrement(), workers.length)];
+    }
+
+    private record Binding(int port, LineHandler handler, PortMetrics metrics) {
+    }
+
+    final class Worker implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private volatile boolean running = true;
+
+        Worker(Selector selector) {
+            this.selector = selector;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    break;
+                }
+                runTasks();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    handle(key);
+                }
+            }
+            closeAll();
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException ignored) {
+                }
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            if (!key.isValid()) return;
+            if (key.attachment() instanceof Binding binding) {
+                accept((ServerSocketChannel) key.channel(), binding);
+                return;
+            }
+            TcpConnection connection = (TcpConnection) key.attachment();
+            try {
+                if (key.isReadable()) connection.onReadable(readBuffer);
+                if (key.isValid() && key.isWritable()) connection.onWritable();
+            } catch (IOException | RuntimeException e) {
+                // also covers CancelledKeyException and handler failures, which must not kill the I/O thread
+                connection.closeFromLoop();
+            }
+        }
+
+        private void accept(ServerSocketChannel server, Binding binding) {
+            try {
+                SocketChannel channel;
+                while ((channel = server.accept()) != null) {
+                    if (early != null) early.accepted(binding.port());
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    Worker target = pickWorker();
+                    TcpConnection connection = new TcpConnection(channel, binding.handler(), binding.metrics(), target);
+                    SocketChannel accepted = channel;
+                    target.execute(() -> target.register(accepted, connection));
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void register(SocketChannel channel, TcpConnection connection) {
+            try {
+                connection.register(channel.register(selector, SelectionKey.OP_READ, connection));
+            } catch (IOException e) {
+                try { channel.close(); } catch (IOException ignored) {}
+            }
+        }
+
+        private void closeAll() {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof TcpConnection connection) {
+                    connection.closeFromLoop();
+                } else {
+                    try { key.channel().close(); } catch (IOException ignored) {}
+                }
+            }
+            try { selector.close(); } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.smarthome.web.ws;
+
+import com.smarthome.web.sensor.SensorReading;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Fixed-layout frames for sessions that negotiate the {@value #SUBPROTOCOL}
+ * subprotocol. The hot message types go as binary frames; everything else
+ * ({@code info}, {@code aggregate}, {@code shadow_snapshot}, ...) stays a JSON text
+ * frame on the same socket. Big-endian; {@code str8}/{@code str16} are a u8/u16 byte
+ * count followed by UTF-8, clipped to fit.
+ * <pre>
+ * server to client
+ *   sensor       u8 1, u16 n, n readings, newest first
+ *     reading    u8 fieldMask, i64 ts, i32 gas, i32 methan, f32 temp, f32 humi,
+ *                i32 pm1, i32 pm25, i32 pm10, u8 pir, str8 source
+ *   door_event   u8 2, str8 source, str16 text
+ *   from_python  u8 3, str8 source, str16 text
+ * client to server
+ *   command      u8 16, str8 target (empty for capability routing), str8 command
+ *   rgb          u8 17, str8 target, u8 r, u8 g, u8 b
+ * </pre>
+ * Delta mode does not apply; a sensor reading is 39 bytes plus the source's UTF-8.
+ */
+public final class BinaryProtocol {
+
+    public static final String SUBPROTOCOL = "smarthome.binary.v1";
+
+    public static final byte SENSOR = 1;
+    public static final byte DOOR_EVENT = 2;
+    public static final byte FROM_PYTHON = 3;
+    public static final byte COMMAND = 16;
+    public static final byte RGB = 17;
+
+    /** A reading without its source string. */
+    private static final int READING_BYTES = 38;
+
+    private BinaryProtocol() {
+    }
+
+    /** The binary kind for a message type, or 0 when the type is sent as JSON text. */
+    static byte kind(String type) {
+        if (type == null) return 0;
+        return switch (type) {
+            case "sensor" -> SENSOR;
+            case "door_event" -> DOOR_EVENT;
+            case "from_python" -> FROM_PYTHON;
+            default -> 0;
+        };
+    }
+
+    /** Encodes a sensor frame; {@code newest} goes first. */
+    public static PooledFrame sensor(FramePool pool, Map<String, SensorReading> bySource, SensorReading newest) {
+        int n = Math.min(bySource.size(), 0xFFFF);
+        byte[][] sources = new byte[n][];
+        SensorReading[] readings = new SensorReading[n];
+        readings[0] = newest;
+        int i = 1;
+        for (SensorReading reading : bySource.values()) {
+            if (reading == newest) continue;
+            if (i == n) break;
+            readings[i++] = reading;
+        }
+        int size = 3;
+        for (i = 0; i < n; i++) {
+            sources[i] = utf8(readings[i].getSource(), 0xFF);
+            size += READING_BYTES + 1 + sources[i].length;
+        }
+        PooledFrame frame = pool.acquire(size);
+        ByteBuffer out = frame.buffer();
+        out.put(SENSOR).putShort((short) n);
+        for (i = 0; i < n; i++) {
+            SensorReading r = readings[i];
+            out.put((byte) r.getFieldMask())
+                    .putLong(r.getTs())
+                    .putInt(r.getGas())
+                    .putInt(r.getMethan())
+                    .putFloat((float) r.getTemp())
+                    .putFloat((float) r.getHumi())
+                    .putInt(r.getPm1())
+                    .putInt(r.getPm25())
+                    .putInt(r.getPm10())
+                    .put((byte) r.getPir())
+                    .put((byte) sources[i].length)
+                    .put(sources[i]);
+        }
+        out.flip();
+        return frame;
+    }
+
+    /** Encodes a {@code door_event} or {@code from_python} frame. */
+    public static PooledFrame text(FramePool pool, byte kind, String source, String text) {
+        byte[] s = utf8(source, 0xFF);
+        byte[] t = utf8(text, 0xFFFF);
+        PooledFrame frame = pool.acquire(4 + s.length + t.length);
+        ByteBuffer out = frame.buffer();
+        out.put(kind).put((byte) s.length).put(s).putShort((short) t.length).put(t);
+        out.flip();
+        return frame;
+    }
+
+    /**
+     * Reads the next reading of a sensor frame into {@code into}; {@code in} must be
+     * past the kind and count. For clients and benchmarks, the server only writes them.
+     */
+    public static void readReading(ByteBuffer in, SensorReading into) {
+        int mask = in.get() & 0xFF;
+        long ts = in.getLong();
+        int gas = in.getInt();
+        int methan = in.getInt();
+        double temp = in.getFloat();
+        double humi = in.getFloat();
+        int pm1 = in.getInt();
+        int pm25 = in.getInt();
+        int pm10 = in.getInt();
+        int pir = in.get() & 0xFF;
+        into.restore(mask, gas, methan, temp, humi, pm1, pm25, pm10, pir);
+        into.setOrigin(readStr8(in), ts);
+    }
+
+    /** A command from a client frame; {@code target} is null for capability routing. */
+    public record Command(byte kind, String target, String command, int r, int g, int b) {
+    }
+
+    /** Decodes a client frame; throws {@link IllegalArgumentException} for anything else. */
+    public static Command readCommand(ByteBuffer in) {
+        try {
+            byte kind = in.get();
+            String target = readStr8(in);
+            if (target.isEmpty()) target = null;
+            return switch (kind) {
+                case COMMAND -> new Command(kind, target, readStr8(in), 0, 0, 0);
+                case RGB -> new Command(kind, target, null, in.get() & 0xFF, in.get() & 0xFF, in.get() & 0xFF);
+                default -> throw new IllegalArgumentException("unknown binary frame kind " + kind);
+            };
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated binary frame");
+        }
+    }
+
+    /** Encodes a client frame, the inverse of {@link #readCommand}. */
+    public static ByteBuffer command(String target, String command) {
+        byte[] t = utf8(target, 0xFF);
+        byte[] c = utf8(command, 0xFF);
+        ByteBuffer out = ByteBuffer.allocate(3 + t.length + c.length);
+        out.put(COMMAND).put((byte) t.length).put(t).put((byte) c.length).put(c);
+        return out.flip();
+    }
+
+    private static String readStr8(ByteBuffer in) {
+        int length = in.get() & 0xFF;
+        if (in.remaining() < length) throw new BufferUnderflowException();
+        if (!in.hasArray()) {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    private static byte[] utf8(String s, int max) {
+        if (s == null) return new byte[0];
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= max) return bytes;
+        byte[] clipped = new byte[max];
+        System.arraycopy(bytes, 0, clipped, 0, max);
+        return clipped;
+    }
+}
@@ -3,52 +3,91 @@ package com.smarthome.web.ws;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smarthome.web.service.CommandService;
+import com.smarthome.web.shadow.DeviceShadow;
 import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Component
-public class ControlWebSocketHandler extends TextWebSocketHandler {
+public class ControlWebSocketHandler extends AbstractWebSocketHandler {
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final CommandService commandService;
     private final WebSocketBroadcaster broadcaster;
+    private final DeviceShadow shadow;
 
-    public ControlWebSocketHandler(CommandService commandService, WebSocketBroadcaster broadcaster) {
+    public ControlWebSocketHandler(CommandService commandService, WebSocketBroadcaster broadcaster, DeviceShadow shadow) {
         this.commandService = commandService;
         this.broadcaster = broadcaster;
+        this.shadow = shadow;
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
-        broadcaster.register(session);
+        MultiValueMap<String, String> query = query(session);
+        broadcaster.register(session, delta(query.getFirst("delta")));
+        // register first so no delta newer than the snapshot can be missed; ws://host/ws?epoch=E&since=N resumes
+        broadcaster.sendTo(session, "shadow_snapshot", shadow.snapshot(query.getFirst("epoch"), sinceVersion(query)));
         broadcaster.broadcast("info", "Web client connected");
     }
 
+    private static MultiValueMap<String, String> query(WebSocketSession session) {
+        if (session.getUri() == null) return new LinkedMultiValueMap<>();
+        return UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+    }
+
+    /** {@code ws://host/ws?delta=1} asks for changed-fields-only sensor frames. */
+    private static boolean delta(String value) {
+        return value != null && (value.equals("1") || value.equalsIgnoreCase("true"));
+    }
+
+    private static long sinceVersion(MultiValueMap<String, String> query) {
+        String since = query.getFirst("since");
+        try {
+            return since == null ? 0 : Long.parseLong(since);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) {
         try {
             JsonNode root = mapper.readTree(message.getPayload());
             String type = root.path("type").asText("");
+            String target = root.hasNonNull("target") ? root.get("target").asText() : null;
 
             switch (type) {
                 case "command" -> {
                     String cmd = root.path("command").asText("");
-                    if (!cmd.isBlank()) commandService.sendCommand(cmd);
+                    if (!cmd.isBlank()) commandService.sendCommand(target, cmd);
                 }
                 case "rgb" -> {
                     int r = root.path("r").asInt(0);
                     int g = root.path("g").asInt(0);
                     int b = root.path("b").asInt(0);
-                    commandService.sendRgb(r, g, b);
+                    commandService.sendRgb(target, r, g, b);
                 }
                 case "voice" -> {
                     String action = root.path("action").asText("");
                     if ("start".equalsIgnoreCase(action)) commandService.voiceStart();
                     else if ("stop".equalsIgnoreCase(action)) commandService.voiceStop();
                 }
+                case "subscribe" -> broadcaster.sendTo(session, "subscription",
+                        broadcaster.subscribe(session, strings(root.path("topics")), strings(root.path("sources"))));
+                case "unsubscribe" -> broadcaster.sendTo(session, "subscription",
+                        broadcaster.unsubscribe(session, strings(root.path("topics")), strings(root.path("sources"))));
+                case "resume" -> broadcaster.sendTo(session, "shadow_snapshot",
+                        shadow.snapshot(root.path("epoch").asText(null), root.path("version").asLong(0)));
                 default -> broadcaster.broadcast("warn", "Unknown message type: " + type);
             }
         } catch (Exception e) {
@@ -56,6 +95,32 @@ public class ControlWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
+    /** {@code command} and {@code rgb} from {@link BinaryProtocol} sessions; everything else comes as JSON. */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        try {
+            BinaryProtocol.Command command = BinaryProtocol.readCommand(message.getPayload());
+            if (command.kind() == BinaryProtocol.RGB) {
+                commandService.sendRgb(command.target(), command.r(), command.g(), command.b());
+            } else if (!command.command().isBlank()) {
+                commandService.sendCommand(command.target(), command.command());
+            }
+        } catch (Exception e) {
+            broadcaster.broadcast("error", "Failed to handle message: " + e.getMessage());
+        }
+    }
+
+    /** A JSON array of strings, or a single string, as a list. */
+    private static List<String> strings(JsonNode node) {
+        List<String> out = new ArrayList<>();
+        if (node.isArray()) {
+            node.forEach(n -> out.add(n.asText()));
+        } else if (node.isTextual()) {
+            out.add(node.asText());
+        }
+        return out;
+    }
+
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
         broadcaster.unregister(session);
@@ -0,0 +1,51 @@
+package com.smarthome.web.ws;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Reusable buffers for binary frames. A frame is encoded once per broadcast and
+ * shared by every binary session it is queued for; it comes back here when the
+ * last of them has written or dropped it. Frames larger than the buffer size get
+ * a buffer of their own that is simply left to the GC.
+ */
+public final class FramePool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<PooledFrame> free = new ArrayDeque<>();
+    private long allocated;
+
+    public FramePool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /** A cleared frame of at least {@code size} bytes with one reference, the caller's. */
+    public PooledFrame acquire(int size) {
+        if (size > bufferSize) return new PooledFrame(null, ByteBuffer.allocate(size));
+        PooledFrame frame;
+        synchronized (this) {
+            frame = free.pollFirst();
+            if (frame == null) allocated++;
+        }
+        if (frame == null) frame = new PooledFrame(this, ByteBuffer.allocate(bufferSize));
+        frame.reset();
+        return frame;
+    }
+
+    void recycle(PooledFrame frame) {
+        synchronized (this) {
+            if (free.size() < maxPooled) free.addLast(frame);
+        }
+    }
+
+    public synchronized int available() {
+        return free.size();
+    }
+
+    /** Buffers created for the pool since start; stays flat once the pool is warm. */
+    public synchronized long allocated() {
+        return allocated;
+    }
+}
@@ -0,0 +1,16 @@
+package com.smarthome.web.ws;
+
+/**
+ * What a {@link SessionOutbound} does when its queue is full.
+ */
+public enum OverflowPolicy {
+    /** Evict the oldest queued frame. */
+    DROP_OLDEST,
+    /**
+     * Replace a queued {@code sensor} or {@code aggregate} frame for the same sources,
+     * else evict the oldest. Event frames are never merged.
+     */
+    CONFLATE,
+    /** Close the session; the client is expected to reconnect. */
+    DISCONNECT
+}
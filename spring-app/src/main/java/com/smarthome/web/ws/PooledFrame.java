@@ -0,0 +1,56 @@
+package com.smarthome.web.ws;
+
+import org.springframework.web.socket.BinaryMessage;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An encoded binary frame with a reference count. Whoever queues it takes a
+ * reference with {@link #retain()} and gives it back with {@link #release()} once
+ * the frame is written or dropped; the last release returns the buffer to its pool.
+ */
+public final class PooledFrame {
+
+    private final FramePool pool;
+    private final ByteBuffer buffer;
+    private final AtomicInteger refs = new AtomicInteger();
+
+    PooledFrame(FramePool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+        refs.set(1);
+    }
+
+    void reset() {
+        buffer.clear();
+        refs.set(1);
+    }
+
+    /** The buffer to write into; flipped by {@link BinaryProtocol} when the frame is complete. */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /** The encoded bytes; every call gets its own position, the contents are shared. */
+    public ByteBuffer payload() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    public int length() {
+        return buffer.limit();
+    }
+
+    /** Writable view so the container can hand the backing array to the deflater without a copy. */
+    BinaryMessage message() {
+        return new BinaryMessage(buffer.duplicate());
+    }
+
+    void retain() {
+        refs.incrementAndGet();
+    }
+
+    public void release() {
+        if (refs.decrementAndGet() == 0 && pool != null) pool.recycle(this);
+    }
+}
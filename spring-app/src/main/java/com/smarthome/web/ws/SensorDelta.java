@@ -0,0 +1,106 @@
+package com.smarthome.web.ws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delta state of one session that asked for {@code ws://host/ws?delta=1}. Sensor
+ * frames for such a session carry, per source, only the fields that differ from
+ * what this session was last sent for that source:
+ * <pre>
+ * {"type":"sensor","delta":true,"source":"&lt;newest&gt;","sources":{"&lt;source&gt;":{"ts":..,"gas":..}}}
+ * </pre>
+ * The client merges each entry into what it holds for the source; a null field was
+ * dropped. A source's first entry and one every {@code keyframeMs} carry every field.
+ * Deltas are taken when the frame is written, not when it is queued, so frames the
+ * queue drops or conflates never leave the client behind. A source's state goes
+ * when its board disconnects, or once it is due a keyframe anyway.
+ */
+final class SensorDelta {
+
+    private final ObjectMapper mapper;
+    private final long keyframeMs;
+    private final Map<String, Sent> sent = new ConcurrentHashMap<>();
+    private long sweptAt;
+
+    SensorDelta(ObjectMapper mapper, long keyframeMs) {
+        this.mapper = mapper;
+        this.keyframeMs = keyframeMs;
+    }
+
+    /** Called from the session's drain only, one frame at a time. */
+    TextMessage encode(Update update) throws IOException {
+        long now = System.currentTimeMillis();
+        ObjectNode frame = mapper.createObjectNode();
+        frame.put("type", "sensor");
+        frame.put("delta", true);
+        frame.put("source", update.newest());
+        ObjectNode sources = frame.putObject("sources");
+        for (Map.Entry<String, ObjectNode> e : update.bySource().entrySet()) {
+            ObjectNode current = e.getValue();
+            Sent last = sent.get(e.getKey());
+            if (last == null || now - last.keyAt >= keyframeMs) {
+                sources.set(e.getKey(), current);
+                sent.put(e.getKey(), new Sent(current, now));
+                continue;
+            }
+            ObjectNode changed = diff(last.fields, current);
+            if (changed.isEmpty()) continue;
+            sources.set(e.getKey(), changed);
+            last.fields = current;
+        }
+        if (now - sweptAt >= keyframeMs) {
+            sweptAt = now;
+            // their next entry is a keyframe whatever is kept; covers a frame written after forget()
+            sent.values().removeIf(last -> now - last.keyAt >= keyframeMs);
+        }
+        return new TextMessage(mapper.writeValueAsString(frame));
+    }
+
+    /** Drops a closed source; any thread. */
+    void forget(String source) {
+        sent.remove(source);
+    }
+
+    int sources() {
+        return sent.size();
+    }
+
+    private ObjectNode diff(ObjectNode before, ObjectNode after) {
+        ObjectNode changed = mapper.createObjectNode();
+        for (Iterator<Map.Entry<String, JsonNode>> it = after.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            if (!field.getValue().equals(before.get(field.getKey()))) changed.set(field.getKey(), field.getValue());
+        }
+        for (Iterator<String> it = before.fieldNames(); it.hasNext(); ) {
+            String name = it.next();
+            if (!after.has(name)) changed.putNull(name);
+        }
+        return changed;
+    }
+
+    /**
+     * A sensor frame as trees per source, built once per broadcast and shared by every
+     * delta session; nobody modifies the trees.
+     */
+    record Update(String newest, Map<String, ObjectNode> bySource) {
+    }
+
+    private static final class Sent {
+
+        ObjectNode fields;
+        final long keyAt;
+
+        Sent(ObjectNode fields, long keyAt) {
+            this.fields = fields;
+            this.keyAt = keyAt;
+        }
+    }
+}
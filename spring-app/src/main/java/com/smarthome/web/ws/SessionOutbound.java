@@ -0,0 +1,271 @@
+package com.smarthome.web.ws;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Bounded outbound queue for one WebSocket session. Producers never touch the
+ * socket; a single drain task at a time writes queued frames, so a slow client
+ * only backs up its own queue and {@code sendMessage} is never called concurrently.
+ */
+public class SessionOutbound {
+
+    /** Types whose frames only carry the latest value per source, so a newer one may replace them. */
+    private static final Set<String> LATEST_VALUE = Set.of("sensor", "aggregate");
+
+    private final WebSocketSession session;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Executor executor;
+    private final SensorDelta delta;
+    private final boolean binary;
+
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    private final Runnable drainTask = this::drain;
+    private volatile Subscription subscription = Subscription.EVERYTHING;
+    private boolean draining;
+    private boolean closed;
+
+    private long sent;
+    private long dropped;
+    private long conflated;
+    private long failures;
+    private long bytes;
+
+    public SessionOutbound(WebSocketSession session, int capacity, OverflowPolicy policy, Executor executor) {
+        this(session, capacity, policy, executor, null, false);
+    }
+
+    /**
+     * {@code delta} is null for sessions that take full sensor frames; {@code binary}
+     * sessions negotiated {@link BinaryProtocol#SUBPROTOCOL}.
+     */
+    SessionOutbound(WebSocketSession session, int capacity, OverflowPolicy policy, Executor executor,
+                    SensorDelta delta, boolean binary) {
+        this.session = session;
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+        this.executor = executor;
+        this.delta = delta;
+        this.binary = binary;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    void setSubscription(Subscription subscription) {
+        this.subscription = subscription;
+    }
+
+    boolean isDelta() {
+        return delta != null;
+    }
+
+    boolean isBinary() {
+        return binary;
+    }
+
+    /** Forgets the delta state of a source whose board disconnected. */
+    void forgetSource(String source) {
+        if (delta != null) delta.forget(source);
+    }
+
+    /** Queues a frame; {@code type} may be null. */
+    public void offer(String type, WebSocketMessage<?> message) {
+        offer(type, null, message);
+    }
+
+    /** Queues a frame about {@code sources} (null if none), which {@code CONFLATE} uses to match frames. */
+    void offer(String type, Collection<String> sources, WebSocketMessage<?> message) {
+        enqueue(new Frame(type, sources, message, null, null));
+    }
+
+    /** Queues a sensor frame this delta session encodes against what it sent before. */
+    void offer(String type, Collection<String> sources, SensorDelta.Update update) {
+        enqueue(new Frame(type, sources, null, update, null));
+    }
+
+    /** Queues a shared binary frame, holding a reference until it is written or dropped. */
+    void offer(String type, Collection<String> sources, PooledFrame pooled) {
+        pooled.retain();
+        enqueue(new Frame(type, sources, null, null, pooled));
+    }
+
+    private void enqueue(Frame frame) {
+        boolean schedule = false;
+        boolean disconnect = false;
+        synchronized (this) {
+            if (closed) {
+                frame.release();
+                return;
+            }
+            if (queue.size() >= capacity) {
+                switch (policy) {
+                    case DROP_OLDEST -> {
+                        queue.pollFirst().release();
+                        dropped++;
+                    }
+                    case CONFLATE -> {
+                        if (replaceSuperseded(frame)) {
+                            conflated++;
+                            return;
+                        }
+                        queue.pollFirst().release();
+                        dropped++;
+                    }
+                    case DISCONNECT -> {
+                        dropped += queue.size() + 1;
+                        clear();
+                        frame.release();
+                        closed = true;
+                        disconnect = true;
+                    }
+                }
+            }
+            if (!disconnect) {
+                queue.addLast(frame);
+                if (!draining) {
+                    draining = true;
+                    schedule = true;
+                }
+            }
+        }
+        if (disconnect) {
+            executor.execute(() -> {
+                try { session.close(CloseStatus.SESSION_NOT_RELIABLE); } catch (IOException ignored) {}
+            });
+        } else if (schedule) {
+            executor.execute(drainTask);
+        }
+    }
+
+    /**
+     * Replaces the newest queued frame of the same latest-value type whose sources
+     * {@code replacement} all covers; events and frames from other sources are never merged.
+     */
+    private boolean replaceSuperseded(Frame replacement) {
+        if (!LATEST_VALUE.contains(replacement.type) || replacement.sources == null) return false;
+        for (Iterator<Frame> it = queue.descendingIterator(); it.hasNext(); ) {
+            Frame frame = it.next();
+            if (replacement.type.equals(frame.type) && frame.sources != null
+                    && replacement.sources.containsAll(frame.sources)) {
+                it.remove();
+                frame.release();
+                queue.addLast(replacement);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        while (true) {
+            Frame next;
+            synchronized (this) {
+                next = queue.pollFirst();
+                if (next == null || closed) {
+                    if (next != null) next.release();
+                    draining = false;
+                    return;
+                }
+            }
+            try {
+                if (session.isOpen()) {
+                    WebSocketMessage<?> message = next.message();
+                    session.sendMessage(message);
+                    synchronized (this) {
+                        sent++;
+                        bytes += message.getPayloadLength();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                synchronized (this) { failures++; }
+            } finally {
+                next.release();
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            clear();
+        }
+    }
+
+    private void clear() {
+        for (Frame frame : queue) frame.release();
+        queue.clear();
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(session.getId(), queue.size(), capacity, sent, dropped, conflated, failures,
+                bytes, delta != null, delta != null ? delta.sources() : 0, binary, deflate(session));
+    }
+
+    private static boolean deflate(WebSocketSession session) {
+        for (WebSocketExtension extension : session.getExtensions()) {
+            if ("permessage-deflate".equals(extension.getName())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@code bytes} counts message payloads before per-message deflate; {@code deflate}
+     * says whether the session negotiated it, in which case the wire carries less.
+     * {@code deltaSources} is how many sources a delta session keeps state for.
+     */
+    public record Stats(String sessionId, int queueDepth, int capacity,
+                        long sent, long dropped, long conflated, long failures,
+                        long bytes, boolean delta, int deltaSources, boolean binary, boolean deflate) {
+    }
+
+    /**
+     * A ready message, the sensor trees a delta session encodes, or a shared binary
+     * frame; exactly one is set.
+     */
+    private final class Frame {
+
+        final String type;
+        final Collection<String> sources;
+        final WebSocketMessage<?> message;
+        final SensorDelta.Update update;
+        final PooledFrame pooled;
+
+        Frame(String type, Collection<String> sources, WebSocketMessage<?> message, SensorDelta.Update update,
+              PooledFrame pooled) {
+            this.type = type;
+            this.sources = sources;
+            this.message = message;
+            this.update = update;
+            this.pooled = pooled;
+        }
+
+        WebSocketMessage<?> message() throws IOException {
+            if (message != null) return message;
+            return update != null ? delta.encode(update) : pooled.message();
+        }
+
+        void release() {
+            if (pooled != null) pooled.release();
+        }
+    }
+}
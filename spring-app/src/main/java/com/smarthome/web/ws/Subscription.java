@@ -0,0 +1,85 @@
+package com.smarthome.web.ws;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * What one session wants to receive. A new session gets every type from every
+ * source; the first {@code subscribe} with topics narrows it to those topics and
+ * later ones add to the set. {@code "*"} restores everything. Instances are
+ * immutable; the broadcaster swaps them and re-indexes the session.
+ *
+ * @param types    message types, or null for all types
+ * @param excluded types removed with {@code unsubscribe} while {@code types} is null
+ * @param sources  source ids (board address or registered device id), or null for all;
+ *                 once emptied by {@code unsubscribe} only source-less frames pass
+ */
+public record Subscription(Set<String> types, Set<String> excluded, Set<String> sources) {
+
+    public static final String ALL = "*";
+    public static final Subscription EVERYTHING = new Subscription(null, Set.of(), null);
+
+    public boolean wantsType(String type) {
+        if (type == null) return true;
+        return types == null ? !excluded.contains(type) : types.contains(type);
+    }
+
+    /** Frames without sources always match; otherwise any one listed source must be wanted. */
+    public boolean wantsAnySource(Collection<String> frameSources) {
+        if (sources == null || frameSources == null || frameSources.isEmpty()) return true;
+        for (String source : frameSources) {
+            if (sources.contains(source)) return true;
+        }
+        return false;
+    }
+
+    public Subscription subscribe(Collection<String> addTypes, Collection<String> addSources) {
+        Set<String> t = types;
+        Set<String> ex = excluded;
+        if (addTypes != null && !addTypes.isEmpty()) {
+            if (addTypes.contains(ALL)) {
+                t = null;
+                ex = Set.of();
+            } else {
+                Set<String> next = t == null ? new HashSet<>() : new HashSet<>(t);
+                next.addAll(addTypes);
+                t = Set.copyOf(next);
+            }
+        }
+        Set<String> s = sources;
+        if (addSources != null && !addSources.isEmpty()) {
+            if (addSources.contains(ALL)) {
+                s = null;
+            } else {
+                Set<String> next = s == null ? new HashSet<>() : new HashSet<>(s);
+                next.addAll(addSources);
+                s = Set.copyOf(next);
+            }
+        }
+        return new Subscription(t, ex, s);
+    }
+
+    public Subscription unsubscribe(Collection<String> removeTypes, Collection<String> removeSources) {
+        Set<String> t = types;
+        Set<String> ex = excluded;
+        if (removeTypes != null && !removeTypes.isEmpty()) {
+            if (t == null) {
+                Set<String> next = new HashSet<>(ex);
+                next.addAll(removeTypes);
+                ex = Set.copyOf(next);
+            } else {
+                Set<String> next = new HashSet<>(t);
+                next.removeAll(removeTypes);
+                t = Set.copyOf(next);
+            }
+        }
+        Set<String> s = sources;
+        if (s != null && removeSources != null && !removeSources.isEmpty()) {
+            Set<String> next = new HashSet<>(s);
+            next.removeAll(removeSources);
+            s = Set.copyOf(next);
+        }
+        return new Subscription(t, ex, s);
+    }
+}
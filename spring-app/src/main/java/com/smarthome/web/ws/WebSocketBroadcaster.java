@@ -1,43 +1,308 @@
 package com.smarthome.web.ws;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.smarthome.web.sensor.SensorReading;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
 @Component
 public class WebSocketBroadcaster {
 
-    private final Set<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    private final Map<String, SessionOutbound> sessions = new ConcurrentHashMap<>();
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long keyframeMs;
+    private final FramePool framePool = new FramePool(4096, 1024);
+    private final ExecutorService senders;
+    private final MeterRegistry meterRegistry;
+    private final Timer broadcastTimer;
+    private final Map<String, List<Meter>> sessionMeters = new ConcurrentHashMap<>();
+
+    // subscription index: sessions taking every type, and sessions per explicit type
+    private final Set<SessionOutbound> allTypes = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<SessionOutbound>> byType = new ConcurrentHashMap<>();
+
+    public WebSocketBroadcaster(
+            @Value("${smarthome.ws.queue-capacity:256}") int queueCapacity,
+            @Value("${smarthome.ws.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+            @Value("${smarthome.ws.delta.keyframe-ms:5000}") long keyframeMs,
+            @Value("${smarthome.ws.sender-threads:4}") int senderThreads,
+            MeterRegistry meterRegistry
+    ) {
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.keyframeMs = keyframeMs;
+        this.meterRegistry = meterRegistry;
+        this.broadcastTimer = Timer.builder("smarthome.ws.broadcast")
+                .description("Serializing a frame and queueing it for every session")
+                .register(meterRegistry);
+        Gauge.builder("smarthome.ws.sessions", sessions, Map::size)
+                .description("Open WebSocket sessions").register(meterRegistry);
+        FunctionCounter.builder("smarthome.ws.binary.buffers", framePool, FramePool::allocated)
+                .description("Binary frame buffers allocated for the pool").register(meterRegistry);
+        AtomicInteger ids = new AtomicInteger();
+        // each session has at most one drain task queued, so the queue is bounded by the sessions
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread t = new Thread(r, "ws-sender-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
 
     public void register(WebSocketSession session) {
-        sessions.add(session);
+        register(session, false);
+    }
+
+    /**
+     * {@code delta} selects changed-fields-only sensor frames for this session, see
+     * {@link SensorDelta}. Sessions that negotiated {@link BinaryProtocol#SUBPROTOCOL}
+     * get binary frames for the types it covers instead, and no deltas.
+     */
+    public void register(WebSocketSession session, boolean delta) {
+        boolean binary = BinaryProtocol.SUBPROTOCOL.equals(session.getAcceptedProtocol());
+        SessionOutbound outbound = new SessionOutbound(session, queueCapacity, overflowPolicy, senders,
+                delta && !binary ? new SensorDelta(objectMapper, keyframeMs) : null, binary);
+        sessions.put(session.getId(), outbound);
+        index(outbound, null, Subscription.EVERYTHING);
+        sessionMeters.put(session.getId(), List.of(
+                FunctionCounter.builder("smarthome.ws.session.send.failures", outbound, o -> o.stats().failures())
+                        .tag("session", session.getId()).register(meterRegistry),
+                FunctionCounter.builder("smarthome.ws.session.dropped", outbound, o -> o.stats().dropped())
+                        .tag("session", session.getId()).register(meterRegistry),
+                Gauge.builder("smarthome.ws.session.queue", outbound, SessionOutbound::getQueueDepth)
+                        .tag("session", session.getId()).register(meterRegistry)));
     }
 
     public void unregister(WebSocketSession session) {
-        sessions.remove(session);
+        SessionOutbound outbound = sessions.remove(session.getId());
+        if (outbound != null) {
+            outbound.close();
+            index(outbound, outbound.getSubscription(), null);
+        }
+        List<Meter> meters = sessionMeters.remove(session.getId());
+        if (meters != null) meters.forEach(meterRegistry::remove);
+    }
+
+    /** A board disconnected; delta sessions stop tracking what they last sent for it. */
+    public void forgetSource(String source) {
+        for (SessionOutbound outbound : sessions.values()) outbound.forgetSource(source);
     }
 
     public void broadcast(String type, Object payload) {
-        send(Map.of("type", type, "payload", payload));
+        send(type, Map.of("type", type, "payload", payload));
+    }
+
+    /** Broadcast of an event that came from one source, for sessions filtering by source. */
+    public void broadcast(String type, String source, Object payload) {
+        dispatch(new Outgoing(type, source == null ? null : List.of(source),
+                Map.of("type", type, "payload", payload), null, null, payload));
     }
 
     public void send(Object obj) {
+        send(null, obj);
+    }
+
+    /** Sends a pre-built frame; {@code type} selects subscribers and is used for queue conflation. */
+    public void send(String type, Object obj) {
+        send(type, null, obj);
+    }
+
+    /**
+     * Sends a pre-built frame to the sessions subscribed to {@code type} and to at least
+     * one of {@code sources} (null when the frame has no source). The frame is
+     * serialized once, and not at all when nobody is interested.
+     */
+    public void send(String type, Collection<String> sources, Object obj) {
+        dispatch(new Outgoing(type, sources, obj, null, null, null));
+    }
+
+    /**
+     * Sends a {@code sensor} frame built from {@code bySource} (source to reading,
+     * {@code newest} among them). Sessions in delta mode get only what changed for
+     * them, binary sessions a {@link BinaryProtocol} frame, and the rest get
+     * {@code frame}, serialized once as usual.
+     */
+    public void sendSensor(Map<String, SensorReading> bySource, SensorReading newest, Object frame) {
+        dispatch(new Outgoing("sensor", bySource.keySet(), frame, bySource, newest, null));
+    }
+
+    private void dispatch(Outgoing out) {
+        long start = System.nanoTime();
         try {
-            String json = objectMapper.writeValueAsString(obj);
-            TextMessage message = new TextMessage(json);
-            for (WebSocketSession session : sessions) {
-                if (session.isOpen()) {
-                    session.sendMessage(message);
+            if (out.type == null) {
+                deliver(sessions.values(), out);
+                return;
+            }
+            deliver(allTypes, out);
+            Set<SessionOutbound> typed = byType.get(out.type);
+            if (typed != null) deliver(typed, out);
+        } catch (IOException ignored) {
+        } finally {
+            out.releaseBinary();
+            broadcastTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void deliver(Collection<SessionOutbound> targets, Outgoing out) throws IOException {
+        for (SessionOutbound outbound : targets) {
+            Subscription sub = outbound.getSubscription();
+            if (!sub.wantsType(out.type) || !sub.wantsAnySource(out.sources)) continue;
+            PooledFrame binary = outbound.isBinary() ? out.binary() : null;
+            if (binary != null) {
+                outbound.offer(out.type, out.sources, binary);
+            } else if (out.bySource != null && outbound.isDelta()) {
+                outbound.offer(out.type, out.sources, out.update());
+            } else {
+                outbound.offer(out.type, out.sources, out.text());
+            }
+        }
+    }
+
+    public Subscription subscribe(WebSocketSession session, Collection<String> types, Collection<String> sources) {
+        return updateSubscription(session, sub -> sub.subscribe(types, sources));
+    }
+
+    public Subscription unsubscribe(WebSocketSession session, Collection<String> types, Collection<String> sources) {
+        return updateSubscription(session, sub -> sub.unsubscribe(types, sources));
+    }
+
+    private synchronized Subscription updateSubscription(WebSocketSession session,
+                                                         UnaryOperator<Subscription> change) {
+        SessionOutbound outbound = sessions.get(session.getId());
+        if (outbound == null) return Subscription.EVERYTHING;
+        Subscription before = outbound.getSubscription();
+        Subscription after = change.apply(before);
+        outbound.setSubscription(after);
+        index(outbound, before, after);
+        return after;
+    }
+
+    private synchronized void index(SessionOutbound outbound, Subscription before, Subscription after) {
+        if (before != null) {
+            if (before.types() == null) {
+                allTypes.remove(outbound);
+            } else {
+                for (String type : before.types()) {
+                    Set<SessionOutbound> set = byType.get(type);
+                    if (set != null && set.remove(outbound) && set.isEmpty()) byType.remove(type);
+                }
+            }
+        }
+        if (after != null) {
+            if (after.types() == null) {
+                allTypes.add(outbound);
+            } else {
+                for (String type : after.types()) {
+                    byType.computeIfAbsent(type, t -> ConcurrentHashMap.newKeySet()).add(outbound);
                 }
             }
+        }
+    }
+
+    /** Sends a frame to one session only, e.g. the state snapshot after it connects. */
+    public void sendTo(WebSocketSession session, String type, Object payload) {
+        SessionOutbound outbound = sessions.get(session.getId());
+        if (outbound == null) return;
+        try {
+            outbound.offer(type, new TextMessage(objectMapper.writeValueAsString(Map.of("type", type, "payload", payload))));
         } catch (IOException ignored) {
         }
     }
+
+    public List<SessionOutbound.Stats> sessionStats() {
+        List<SessionOutbound.Stats> stats = new ArrayList<>(sessions.size());
+        for (SessionOutbound outbound : sessions.values()) {
+            stats.add(outbound.stats());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    /** One frame on its way to the sessions, serialized at most once in each form. */
+    private final class Outgoing {
+
+        final String type;
+        final Collection<String> sources;
+        final Object obj;
+        final Map<String, SensorReading> bySource;
+        final SensorReading newest;
+        /** The payload of a {@code broadcast}, for binary text frames. */
+        final Object payload;
+        private TextMessage text;
+        private SensorDelta.Update update;
+        private PooledFrame binary;
+        private boolean binaryDone;
+
+        Outgoing(String type, Collection<String> sources, Object obj, Map<String, SensorReading> bySource,
+                 SensorReading newest, Object payload) {
+            this.type = type;
+            this.sources = sources;
+            this.obj = obj;
+            this.bySource = bySource;
+            this.newest = newest;
+            this.payload = payload;
+        }
+
+        TextMessage text() throws IOException {
+            if (text == null) text = new TextMessage(objectMapper.writeValueAsString(obj));
+            return text;
+        }
+
+        SensorDelta.Update update() {
+            if (update == null) {
+                Map<String, ObjectNode> trees = new LinkedHashMap<>();
+                bySource.forEach((source, reading) -> trees.put(source, objectMapper.valueToTree(reading)));
+                update = new SensorDelta.Update(newest.getSource(), trees);
+            }
+            return update;
+        }
+
+        /** The binary form, or null when this frame is sent as text to every session. */
+        PooledFrame binary() {
+            if (binaryDone) return binary;
+            binaryDone = true;
+            byte kind = BinaryProtocol.kind(type);
+            if (kind == BinaryProtocol.SENSOR && bySource != null) {
+                binary = BinaryProtocol.sensor(framePool, bySource, newest);
+            } else if ((kind == BinaryProtocol.DOOR_EVENT || kind == BinaryProtocol.FROM_PYTHON)
+                    && payload instanceof String text) {
+                String source = sources == null || sources.isEmpty() ? null : sources.iterator().next();
+                binary = BinaryProtocol.text(framePool, kind, source, text);
+            }
+            return binary;
+        }
+
+        /** Drops the broadcaster's own reference once every session has taken its own. */
+        void releaseBinary() {
+            if (binary != null) binary.release();
+        }
+    }
 }